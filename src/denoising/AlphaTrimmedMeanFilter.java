@@ -1,13 +1,8 @@
 package denoising;
 
-import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.function.ToIntFunction;
 
-import processing.Processor;
-
-public class AlphaTrimmedMeanFilter implements DenoisingFilter
+public class AlphaTrimmedMeanFilter implements RankFilter
 {
 	private int d;
 	
@@ -21,49 +16,15 @@ public class AlphaTrimmedMeanFilter implements DenoisingFilter
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	public ToIntFunction<SlidingHistogram> getStatistic()
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
+		// Average the values of the neighborhood size m x n of every pixel remaining after trimming d/2 lowest and d/2 highest ones,
+		// summed from the sliding histogram of the neighborhood instead of sorting it
+		return histogram ->
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
-				List<int[]> rgbValues = Processor.getRGBs(image, x, y, subimageWidth, subimageHeight);
-						
-				// Store each color intensity in an associated list
-				List<Integer> red = new ArrayList<Integer>();
-				List<Integer> green = new ArrayList<Integer>();
-				List<Integer> blue = new ArrayList<Integer>();			
-				for(int i = 0; i < rgbValues.size(); i++)
-				{	
-					red.add(rgbValues.get(i)[0]);
-					green.add(rgbValues.get(i)[1]);
-					blue.add(rgbValues.get(i)[2]);
-				}
-				
-				// Sort the lists
-				Collections.sort(red);
-				Collections.sort(green);
-				Collections.sort(blue);
-				
-				// Initialize array to store RGB value of the pixel at the center of the mask
-				int rgb[] = new int[3];
-				for(int i = this.d/2; i < rgbValues.size() - this.d/2; i++)
-				{
-					rgb[0] += (red.get(i) / (rgbValues.size() - d));
-					rgb[1] += (green.get(i) / (rgbValues.size() - d));
-					rgb[2] += (blue.get(i) / (rgbValues.size() - d));
-				}
-
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
-			}
-		}
-		
-		return processedImage;
+			int count = histogram.getCount();
+			long sum = histogram.getSum(this.d/2, count - this.d/2);
+			return count - this.d > 0 ? (int) (sum / (count - this.d)) : 0;
+		};
 	}
 }
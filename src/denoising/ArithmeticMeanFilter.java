@@ -1,9 +1,6 @@
 package denoising;
 
-import java.awt.image.BufferedImage;
-import java.util.List;
-
-import processing.Processor;
+import processing.PlanarImage;
 
 public class ArithmeticMeanFilter implements DenoisingFilter
 {
@@ -17,35 +14,29 @@ public class ArithmeticMeanFilter implements DenoisingFilter
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
+		process(new WindowStatistics(image, subimageWidth, subimageHeight), processedImage);
+	}
+	
+	
+	@Override
+	public void process(WindowStatistics statistics, PlanarImage processedImage)
+	{
+		// The image is summed once in the shared statistics, so that the sum of any neighborhood takes constant time whatever its size
+		// Neighborhoods are clipped to the image's edges
+		for(int band = 0; band < processedImage.getBands(); band++)
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			int[] dst = processedImage.getPlane(band);
+			
+			for(int y = 0; y < processedImage.getHeight(); y++) 
 			{
-				// Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
-				List<int[]> rgbValues = Processor.getRGBs(image, x, y, subimageWidth, subimageHeight);
-						
-				// Initialize array to store RGB value of the pixel at the center of the mask
-				int rgb[] = new int[3];
-				
-				for(int i = 0; i < rgbValues.size(); i++)
+				for(int x = 0; x < processedImage.getWidth(); x++) 
 				{
-					for(int k = 0; k < 3; k++)
-					{
-						rgb[k] += (rgbValues.get(i)[k]/rgbValues.size());
-					}
+					// Set the mean of the neighborhood size m x n of the pixel(x, y) to the pixel(x, y)
+					dst[processedImage.getIndex(x, y)] = (int) (statistics.getSum(x, y, band) / statistics.getCount(x, y));
 				}
-				
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
 			}
 		}
-		
-		return processedImage;
 	}
-}
+}
\ No newline at end of file
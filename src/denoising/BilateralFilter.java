@@ -0,0 +1,431 @@
+package denoising;
+
+import java.util.stream.IntStream;
+
+import processing.BufferPool;
+import processing.ImageStore;
+import processing.PlanarImage;
+import processing.TiledImage;
+
+public class BilateralFilter implements DenoisingFilter
+{
+	/**
+	 * The ways the bilateral filter may be computed
+	 * EXACT sums the whole neighborhood size m x n of every pixel, with the spatial and range weights looked up in tables;
+	 * GRID approximates the filter on a bilateral grid downsampled by the sigmas, whose cost does not grow with the spatial
+	 * sigma and which ignores the neighborhood size, the Gaussian of the spatial sigma being its neighborhood
+	 */
+	public enum Mode
+	{
+		EXACT, GRID
+	}
+
+
+	// Number of sample differences whose range weights are looked up in the table
+	private static final int TABLE_SIZE = 256;
+
+	// Number of cells the grid is padded by on each side, the radius of its blur
+	private static final int GRID_PADDING = 2;
+
+	// Binomial approximation of the Gaussian of sigma 1 cell the grid is blurred by along each axis
+	private static final double[] GRID_KERNEL = {1/16.0, 4/16.0, 6/16.0, 4/16.0, 1/16.0};
+
+	private double spatialSigma;
+	private double rangeSigma;
+	private Mode mode;
+
+
+	/**
+	 * Class constructor
+	 * The filter is computed exactly
+	 * @param spatialSigma the standard deviation of the Gaussian of the distance between pixels, in pixels
+	 * @param rangeSigma the standard deviation of the Gaussian of the difference between values
+	 */
+	public BilateralFilter(double spatialSigma, double rangeSigma)
+	{
+		this(spatialSigma, rangeSigma, Mode.EXACT);
+	}
+
+
+	/**
+	 * Class constructor
+	 * @param spatialSigma the standard deviation of the Gaussian of the distance between pixels, in pixels
+	 * @param rangeSigma the standard deviation of the Gaussian of the difference between values
+	 * @param mode the way the filter is computed
+	 */
+	public BilateralFilter(double spatialSigma, double rangeSigma, Mode mode)
+	{
+		if(spatialSigma <= 0 || rangeSigma <= 0)
+		{
+			throw new IllegalArgumentException("The sigmas must be positive: " + spatialSigma + ", " + rangeSigma);
+		}
+
+		this.spatialSigma = spatialSigma;
+		this.rangeSigma = rangeSigma;
+		this.mode = mode;
+	}
+
+
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
+	{
+		if(this.mode == Mode.GRID)
+		{
+			processGrid(image, processedImage, 0, 0);
+		}
+		else
+		{
+			processExact(image, processedImage, subimageWidth, subimageHeight);
+		}
+	}
+
+
+	@Override
+	public void process(ImageStore image, ImageStore processedImage, int subimageWidth, int subimageHeight, int tileSize)
+	{
+		TiledImage tiledImage = new TiledImage(image, tileSize, tileSize);
+		if(this.mode != Mode.GRID)
+		{
+			tiledImage.process(processedImage, subimageWidth/2, subimageHeight/2, (tile, processedTile) -> processExact(tile, processedTile, subimageWidth, subimageHeight));
+			return;
+		}
+
+		// A pixel reads the cells within one cell of it, which the blur spreads over GRID_PADDING more cells on each side,
+		// and each cell holds the pixels within half a cell of it, whatever the neighborhood size
+		int halo = (int) Math.ceil((GRID_PADDING + 1.5) * this.spatialSigma);
+
+		// Anchor the grid of every tile at the coordinates of its pixels in the whole image, so that the tiles lay out
+		// the same cells as the whole image and give the same result
+		tiledImage.forEachTile(halo, halo, tile ->
+		{
+			PlanarImage processedTile = BufferPool.acquireCompatible(tile.getPixels());
+			processGrid(tile.getPixels(), processedTile, tile.getX() - tile.getOffsetX(), tile.getY() - tile.getOffsetY());
+			tile.write(processedImage, processedTile);
+			BufferPool.release(processedTile);
+		});
+	}
+
+
+	/**
+	 * Set the bilateral mean of the neighborhood size m x n of every pixel to the pixel, rows in parallel
+	 * Every sample of the neighborhood is weighted by the Gaussian of its distance to the pixel, from a table over the
+	 * neighborhood, times the Gaussian of its difference to the pixel's value, from a table over the differences,
+	 * so no exponential is taken per sample
+	 * As in the other denoising filters, the neighborhood is clipped to the image's edges
+	 * @param image the original image
+	 * @param processedImage the image to store the result, another image than the original one
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	private void processExact(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int radiusX = subimageWidth/2;
+		int radiusY = subimageHeight/2;
+		int windowWidth = radiusX * 2 + 1;
+
+		// Look up the spatial weights of the neighborhood, and the range weights of the sample differences
+		double[] spatialWeights = new double[windowWidth * (radiusY * 2 + 1)];
+		for(int j = -radiusY; j <= radiusY; j++)
+		{
+			for(int i = -radiusX; i <= radiusX; i++)
+			{
+				spatialWeights[(j + radiusY) * windowWidth + i + radiusX] = Math.exp(-(i * i + j * j)/(2 * this.spatialSigma * this.spatialSigma));
+			}
+		}
+
+		double[] rangeWeights = new double[TABLE_SIZE];
+		for(int d = 0; d < TABLE_SIZE; d++)
+		{
+			rangeWeights[d] = getRangeWeight(d);
+		}
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			IntStream.range(0, height).parallel().forEach(y ->
+			{
+				int yMin = Math.max(y - radiusY, 0);
+				int yMax = Math.min(y + radiusY, height - 1);
+
+				for(int x = 0; x < width; x++)
+				{
+					int xMin = Math.max(x - radiusX, 0);
+					int xMax = Math.min(x + radiusX, width - 1);
+					int value = src[image.getIndex(x, y)];
+
+					// Sum the weighted samples of the neighborhood, and their weights
+					double sum = 0;
+					double weights = 0;
+					for(int h = yMin; h <= yMax; h++)
+					{
+						int index = image.getIndex(0, h);
+						int spatialIndex = (h - y + radiusY) * windowWidth - x + radiusX;
+						for(int w = xMin; w <= xMax; w++)
+						{
+							int sample = src[index + w];
+							int difference = Math.abs(sample - value);
+							double weight = spatialWeights[spatialIndex + w] * (difference < TABLE_SIZE ? rangeWeights[difference] : getRangeWeight(difference));
+							sum += weight * sample;
+							weights += weight;
+						}
+					}
+
+					// The pixel's own weight is 1, so the weights never sum to 0
+					dst[processedImage.getIndex(x, y)] = (int) (sum/weights + 0.5);
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Set the bilateral mean of every pixel to the pixel from a bilateral grid, one color channel at a time
+	 * Every pixel adds its value and a weight of 1 to the grid cell nearest to (x, y, value) divided by the spatial and
+	 * range sigmas; the grid is blurred by a Gaussian of sigma 1 cell along its three axes, and the value of every pixel
+	 * is the ratio of the blurred sums to the blurred weights interpolated at its position in the grid
+	 * The grid has (width/spatialSigma) x (height/spatialSigma) x (range/rangeSigma) cells, so the cost of its blur
+	 * falls as the spatial sigma grows, and the cost of the rest is that of two passes over the image, with the
+	 * positions in the grid of every column and value looked up in tables
+	 * The cells lie on the multiples of the sigmas from the coordinate and the value 0, so that a part of an image with
+	 * a wide enough halo lays out the same cells around its pixels, with the same pixels in them, as the whole image
+	 * @param image the original image
+	 * @param processedImage the image to store the result, which may be the original image
+	 * @param originX the x-coordinate of the image in the whole image it is a part of
+	 * @param originY the y-coordinate of the image in the whole image it is a part of
+	 */
+	private void processGrid(PlanarImage image, PlanarImage processedImage, int originX, int originY)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		GridAxis axisX = new GridAxis(originX, originX + width - 1, this.spatialSigma);
+		GridAxis axisY = new GridAxis(originY, originY + height - 1, this.spatialSigma);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			// Span the range of the channel's values
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for(int y = 0; y < height; y++)
+			{
+				for(int i = image.getIndex(0, y), end = i + width; i < end; i++)
+				{
+					min = Math.min(min, src[i]);
+					max = Math.max(max, src[i]);
+				}
+			}
+			int minimum = min;
+			GridAxis axisZ = new GridAxis(min, max, this.rangeSigma);
+
+			// Splat every pixel into the nearest cell; the sum and weight of cell (i, j, k) are at index
+			// 2 * ((k * gridHeight + j) * gridWidth + i) of the grid and the next one
+			int gridWidth = axisX.getSize();
+			int planeSize = gridWidth * axisY.getSize();
+			double[] grid = new double[2 * planeSize * axisZ.getSize()];
+			for(int y = 0; y < height; y++)
+			{
+				int row = axisY.getNearest(y) * gridWidth;
+				for(int x = 0, index = image.getIndex(0, y); x < width; x++)
+				{
+					int sample = src[index + x];
+					int cell = 2 * (axisZ.getNearest(sample - minimum) * planeSize + row + axisX.getNearest(x));
+					grid[cell] += sample;
+					grid[cell + 1]++;
+				}
+			}
+
+			// Blur the grid along its x, y and range axes
+			int[] sizes = {gridWidth, axisY.getSize(), axisZ.getSize()};
+			for(int axis = 0; axis < sizes.length; axis++)
+			{
+				blur(grid, sizes, axis);
+			}
+
+			// Slice the grid at the position of every pixel, interpolating the eight cells around it
+			IntStream.range(0, height).parallel().forEach(y ->
+			{
+				int row = axisY.getLower(y) * gridWidth;
+				double fy = axisY.getFraction(y);
+
+				for(int x = 0, index = image.getIndex(0, y); x < width; x++)
+				{
+					int sample = src[index + x];
+					int value = sample - minimum;
+					int cell = 2 * (axisZ.getLower(value) * planeSize + row + axisX.getLower(x));
+					double fx = axisX.getFraction(x);
+					double fz = axisZ.getFraction(value);
+
+					// Interpolate along x on the four edges of the cube, then along y, then along the range
+					double sum = interpolate(grid, cell, cell + 2 * gridWidth, fx, fy, 0);
+					double weight = interpolate(grid, cell, cell + 2 * gridWidth, fx, fy, 1);
+					double upperSum = interpolate(grid, cell + 2 * planeSize, cell + 2 * (planeSize + gridWidth), fx, fy, 0);
+					double upperWeight = interpolate(grid, cell + 2 * planeSize, cell + 2 * (planeSize + gridWidth), fx, fy, 1);
+					sum += fz * (upperSum - sum);
+					weight += fz * (upperWeight - weight);
+
+					dst[processedImage.getIndex(x, y)] = weight > 0 ? (int) (sum/weight + 0.5) : sample;
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Interpolate the sums or the weights of a square of four cells of the grid, bilinearly
+	 * @param grid the grid
+	 * @param cell the index of the top left cell
+	 * @param lowerCell the index of the bottom left cell
+	 * @param fx the fraction of the distance along x
+	 * @param fy the fraction of the distance along y
+	 * @param component 0 for the sums, 1 for the weights
+	 * @return the interpolated value
+	 */
+	private static double interpolate(double[] grid, int cell, int lowerCell, double fx, double fy, int component)
+	{
+		double top = grid[cell + component] + fx * (grid[cell + 2 + component] - grid[cell + component]);
+		double bottom = grid[lowerCell + component] + fx * (grid[lowerCell + 2 + component] - grid[lowerCell + component]);
+		return top + fy * (bottom - top);
+	}
+
+
+	/**
+	 * Blur the sums and weights of the grid along one of its axes by the binomial kernel, lines in parallel
+	 * The kernel is cut at the ends of every line, where the grid's padding cells are empty
+	 * @param grid the sums and weights of the grid, blurred in place
+	 * @param sizes the number of cells along the x, y and range axes
+	 * @param axis the axis to blur along, 0 for x, 1 for y and 2 for range
+	 */
+	private static void blur(double[] grid, int[] sizes, int axis)
+	{
+		int[] steps = {2, 2 * sizes[0], 2 * sizes[0] * sizes[1]};
+		int length = sizes[axis];
+		int step = steps[axis];
+		int first = axis == 0 ? 1 : 0;
+		int second = axis == 2 ? 1 : 2;
+		int radius = GRID_KERNEL.length/2;
+
+		IntStream.range(0, sizes[first] * sizes[second]).parallel().forEach(line ->
+		{
+			int start = line % sizes[first] * steps[first] + line/sizes[first] * steps[second];
+
+			// Take the thread's scratch array to store the blurred line, sums and weights interleaved
+			double[] blurred = BufferPool.getDoubleScratch(0, 2 * length);
+
+			for(int c = 0; c < length; c++)
+			{
+				double sum = 0;
+				double weight = 0;
+				for(int t = Math.max(0, radius - c); t < Math.min(GRID_KERNEL.length, length + radius - c); t++)
+				{
+					int cell = start + (c + t - radius) * step;
+					sum += GRID_KERNEL[t] * grid[cell];
+					weight += GRID_KERNEL[t] * grid[cell + 1];
+				}
+				blurred[2 * c] = sum;
+				blurred[2 * c + 1] = weight;
+			}
+
+			for(int c = 0; c < length; c++)
+			{
+				grid[start + c * step] = blurred[2 * c];
+				grid[start + c * step + 1] = blurred[2 * c + 1];
+			}
+		});
+	}
+
+
+	/**
+	 * Get the range weight of a difference between two values
+	 * @param difference the absolute difference
+	 * @return the Gaussian of the difference
+	 */
+	private double getRangeWeight(int difference)
+	{
+		return Math.exp(-(double) difference * difference/(2 * this.rangeSigma * this.rangeSigma));
+	}
+
+
+	/**
+	 * The positions in the bilateral grid of the coordinates or values along one of its axes, looked up in tables
+	 * The coordinate or value v, from the first to the last one, lies at v/sigma - floor(first/sigma) + GRID_PADDING cells,
+	 * so the cells lie on the multiples of sigma whatever the first coordinate or value
+	 */
+	private static class GridAxis
+	{
+		private int size;
+		private int[] nearest;
+		private int[] lower;
+		private double[] fractions;
+
+
+		/**
+		 * Class constructor
+		 * @param first the first coordinate or value
+		 * @param last the last coordinate or value
+		 * @param sigma the number of coordinates or values per cell
+		 */
+		GridAxis(int first, int last, double sigma)
+		{
+			int count = last - first + 1;
+			int firstCell = (int) Math.floor(first/sigma);
+			this.size = (int) Math.floor(last/sigma) - firstCell + 1 + 2 * GRID_PADDING;
+			this.nearest = new int[count];
+			this.lower = new int[count];
+			this.fractions = new double[count];
+
+			for(int v = 0; v < count; v++)
+			{
+				double position = (first + v)/sigma;
+				double cell = Math.floor(position);
+				this.nearest[v] = (int) Math.round(position) - firstCell + GRID_PADDING;
+				this.lower[v] = (int) cell - firstCell + GRID_PADDING;
+				this.fractions[v] = position - cell;
+			}
+		}
+
+
+		public int getSize()
+		{
+			return this.size;
+		}
+
+
+		/**
+		 * Get the cell nearest to a coordinate or value
+		 * @param offset the coordinate or value, minus the first one
+		 * @return the index of the cell along the axis
+		 */
+		public int getNearest(int offset)
+		{
+			return this.nearest[offset];
+		}
+
+
+		/**
+		 * Get the cell at or before a coordinate or value
+		 * @param offset the coordinate or value, minus the first one
+		 * @return the index of the cell along the axis
+		 */
+		public int getLower(int offset)
+		{
+			return this.lower[offset];
+		}
+
+
+		/**
+		 * Get the distance from the cell at or before a coordinate or value to the coordinate or value
+		 * @param offset the coordinate or value, minus the first one
+		 * @return the fraction of a cell, from 0 to 1
+		 */
+		public double getFraction(int offset)
+		{
+			return this.fractions[offset];
+		}
+	}
+}
@@ -2,16 +2,122 @@ package denoising;
 
 import java.awt.image.BufferedImage;
 
+import processing.BufferPool;
+import processing.ImageStore;
+import processing.PlanarImage;
 import processing.Processor;
+import processing.RasterStore;
+import processing.TiledImage;
 
 public interface DenoisingFilter extends Processor
 {
 	/**
 	 * Remove noise from a given image
 	 * @param image the original image
-	 * @param kernelWidth the width of the kernel
-	 * @param kernelHeight the height of the kernel
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
 	 * @return the denoised image
 	 */
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight);
+	public default BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	{
+		// Create a new image with the same image type as the original image
+		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), Processor.getImageType(image));
+		
+		process(image, processedImage, subimageWidth, subimageHeight);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Remove noise from a given image and store the result in a caller-supplied image
+	 * The planar working copies are taken from the buffer pool, so denoising a stream of same-sized images
+	 * into the same destination allocates no pixels once the pool is warm
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	public default void process(BufferedImage image, BufferedImage processedImage, int subimageWidth, int subimageHeight)
+	{
+		PlanarImage planarImage = BufferPool.acquire(image);
+		PlanarImage processedPlanarImage = BufferPool.acquireCompatible(planarImage);
+		
+		process(planarImage, processedPlanarImage, subimageWidth, subimageHeight);
+		processedPlanarImage.write(processedImage.getRaster(), 0, 0, 0, 0, image.getWidth(), image.getHeight());
+		
+		BufferPool.release(planarImage);
+		BufferPool.release(processedPlanarImage);
+	}
+	
+	
+	/**
+	 * Remove noise from a given planar image
+	 * @param image the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @return the denoised image
+	 */
+	public default PlanarImage process(PlanarImage image, int subimageWidth, int subimageHeight)
+	{
+		PlanarImage processedImage = PlanarImage.createCompatible(image);
+		process(image, processedImage, subimageWidth, subimageHeight);
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Remove noise from a given planar image and store the result in a caller-supplied image
+	 * Every pixel of the processed image is overwritten, so it may hold stale pixels (such as a pooled image)
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight);
+	
+	
+	/**
+	 * Remove noise from an image whose neighborhood statistics may be shared with other filters
+	 * Filters that finish from the shared statistics override this; the others process the image on their own
+	 * @param statistics the statistics of the neighborhoods of the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 */
+	public default void process(WindowStatistics statistics, PlanarImage processedImage)
+	{
+		process(statistics.getImage(), processedImage, statistics.getSubimageWidth(), statistics.getSubimageHeight());
+	}
+	
+	
+	/**
+	 * Remove noise from a given image tile by tile, so that only a few tiles are held in memory at a time
+	 * @param image the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param tileSize the width and height of the tiles
+	 * @return the denoised image
+	 */
+	public default BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight, int tileSize)
+	{
+		// Create a new image with the same image type as the original image
+		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), Processor.getImageType(image));
+		
+		process(new RasterStore(image), new RasterStore(processedImage), subimageWidth, subimageHeight, tileSize);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Remove noise from a stored image tile by tile and store the result in the destination
+	 * @param image the storage of the original image
+	 * @param processedImage the storage of the denoised image, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param tileSize the width and height of the tiles
+	 */
+	public default void process(ImageStore image, ImageStore processedImage, int subimageWidth, int subimageHeight, int tileSize)
+	{
+		new TiledImage(image, tileSize, tileSize).process(processedImage, subimageWidth/2, subimageHeight/2, (tile, processedTile) -> process(tile, processedTile, subimageWidth, subimageHeight));
+	}
 }
@@ -1,9 +1,8 @@
 package denoising;
 
-import java.awt.image.BufferedImage;
-import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 
-import processing.Processor;
+import processing.PlanarImage;
 
 public class HarmonicMeanFilter implements DenoisingFilter
 {
@@ -17,40 +16,9 @@ public class HarmonicMeanFilter implements DenoisingFilter
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
-		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
-				List<int[]> rgbValues = Processor.getRGBs(image, x, y, subimageWidth, subimageHeight);
-						
-				// Initialize array to store RGB value of the pixel at the center of the mask
-				double rgb[] = new double[3];
-				
-				for(int i = 0; i < rgbValues.size(); i++)
-				{
-					for(int k = 0; k < 3; k++)
-					{
-						rgb[k] += (1.0/(rgbValues.get(i)[k]));
-					}
-				}
-				
-				for(int i = 0; i < 3; i++)
-				{
-					rgb[i] = rgbValues.size() / rgb[i];
-				}
-				
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
-			}
-		}
-		
-		return processedImage;
+		// Set the harmonic mean of the neighborhood size m x n of every pixel, from the sum of the reciprocals of its values
+		RunningSumEngine.filter(image, processedImage, subimageWidth, subimageHeight, new DoubleUnaryOperator[] {value -> 1.0/value}, (sums, count) -> count/sums[0]);
 	}
 }
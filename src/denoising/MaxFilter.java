@@ -1,9 +1,7 @@
 package denoising;
 
-import java.awt.image.BufferedImage;
-import java.util.List;
-
-import processing.Processor;
+import processing.PlanarImage;
+import processing.RunningExtrema;
 
 public class MaxFilter implements DenoisingFilter
 {
@@ -17,35 +15,17 @@ public class MaxFilter implements DenoisingFilter
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
-		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
-				List<int[]> rgbValues = Processor.getRGBs(image, x, y, subimageWidth, subimageHeight);
-				
-				// Initialize array to store RGB value of the pixel at the center of the mask
-				int rgb[] = new int[3];
-				
-				for(int i = 0; i < rgbValues.size(); i++)
-				{
-					for(int k = 0; k < 3; k++)
-					{
-						rgb[k] = rgbValues.get(i)[k] > rgb[k] ? rgbValues.get(i)[k] : rgb[k];
-					}
-				}
-				
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
-			}
-		}
-		
-		return processedImage;
+		// Find the maximum value in the neighborhood size m x n of every pixel, with running maximums along the rows then the columns
+		RunningExtrema.filter(image, processedImage, subimageWidth/2, subimageHeight/2, false);
+	}
+	
+	
+	@Override
+	public void process(WindowStatistics statistics, PlanarImage processedImage)
+	{
+		// Take the maximums of the shared statistics
+		WindowStatistics.copy(statistics.getMaximums(), processedImage);
 	}
 }
@@ -1,9 +1,8 @@
 package denoising;
 
-import java.awt.image.BufferedImage;
-import java.util.List;
-
-import processing.Processor;
+import processing.BufferPool;
+import processing.PlanarImage;
+import processing.RunningExtrema;
 
 public class MidpointFilter implements DenoisingFilter
 {
@@ -17,49 +16,52 @@ public class MidpointFilter implements DenoisingFilter
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int subimageWidth, int subimageHeight)
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+		// Find the maximum and minimum values in the neighborhood size m x n of every pixel
+		PlanarImage maximums = BufferPool.acquireCompatible(image);
+		RunningExtrema.filter(image, processedImage, subimageWidth/2, subimageHeight/2, true);
+		RunningExtrema.filter(image, maximums, subimageWidth/2, subimageHeight/2, false);
+		
+		setMidpoints(processedImage, maximums, processedImage);
 		
-		for(int x = 0; x < image.getWidth(); x++) 
+		BufferPool.release(maximums);
+	}
+	
+	
+	@Override
+	public void process(WindowStatistics statistics, PlanarImage processedImage)
+	{
+		// Take the maximums and minimums of the shared statistics
+		setMidpoints(statistics.getMinimums(), statistics.getMaximums(), processedImage);
+	}
+	
+	
+	/**
+	 * Set the midpoint of the maximum and minimum of every pixel's neighborhood to the pixel
+	 * @param minimums the minimums of the neighborhoods
+	 * @param maximums the maximums of the neighborhoods
+	 * @param processedImage the image to store the result, which may be the image of the minimums
+	 */
+	private void setMidpoints(PlanarImage minimums, PlanarImage maximums, PlanarImage processedImage)
+	{
+		for(int band = 0; band < processedImage.getBands(); band++)
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			int[] min = minimums.getPlane(band);
+			int[] max = maximums.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			
+			for(int y = 0; y < processedImage.getHeight(); y++) 
 			{
-				// Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
-				List<int[]> rgbValues = Processor.getRGBs(image, x, y, subimageWidth, subimageHeight);
-							
-				int max[] = new int[3];
-				for(int i = 0; i < rgbValues.size(); i++)
+				int minIndex = minimums.getIndex(0, y);
+				int maxIndex = maximums.getIndex(0, y);
+				int index = processedImage.getIndex(0, y);
+				for(int x = 0; x < processedImage.getWidth(); x++)
 				{
-					for(int k = 0; k < 3; k++)
-					{
-						max[k] = rgbValues.get(i)[k] > max[k] ? rgbValues.get(i)[k] : max[k];
-					}
+					// Set the midpoint of the maximum and minimum to the pixel(x, y)
+					dst[index + x] = (int) (0.5 * (max[maxIndex + x] + min[minIndex + x]));
 				}
-				
-				int min[] = new int[] {255, 255, 255};
-				for(int i = 0; i < rgbValues.size(); i++)
-				{
-					for(int k = 0; k < 3; k++)
-					{
-						min[k] = rgbValues.get(i)[k] < min[k] ? rgbValues.get(i)[k] : min[k];
-					}
-				}
-				
-				// Initialize array to store RGB value of the pixel at the center of the mask
-				int rgb[] = new int[3];
-				for(int i = 0; i < 3; i++)
-				{
-					rgb[i] = (int) (0.5 * (max[i] + min[i]));
-				}
-				
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
 			}
 		}
-		
-		return processedImage;
 	}
 }
@@ -0,0 +1,246 @@
+package denoising;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import processing.BufferPool;
+import processing.ImageStore;
+import processing.PlanarImage;
+import processing.TiledImage;
+
+public class NonLocalMeansFilter implements DenoisingFilter
+{
+	// Number of rows each parallel task denoises
+	private static final int BAND_HEIGHT = 32;
+
+	// Largest distance, relative to the square of the filtering parameter, whose weight is not taken as 0
+	private static final int MAX_DISTANCE = 16;
+
+	// Number of entries of the table of weights per unit of distance
+	private static final int TABLE_STEPS = 64;
+
+	// Weights exp(-d) of the distances d from 0 to MAX_DISTANCE, interpolated linearly between the entries
+	private static final double[] WEIGHTS = new double[MAX_DISTANCE * TABLE_STEPS + 2];
+
+	static
+	{
+		for(int i = 0; i < WEIGHTS.length; i++)
+		{
+			WEIGHTS[i] = Math.exp(-(double) i/TABLE_STEPS);
+		}
+	}
+
+	private int patchRadius;
+	private double h;
+
+
+	/**
+	 * Class constructor
+	 * The patches are 7 x 7 and the filtering parameter is 10, which fit 8-bit grayscale images with moderate noise
+	 */
+	public NonLocalMeansFilter()
+	{
+		this(3, 10);
+	}
+
+
+	/**
+	 * Class constructor
+	 * @param patchRadius the radius of the patches compared, which are (2 * patchRadius + 1) x (2 * patchRadius + 1)
+	 * @param h the filtering parameter: a pixel whose patch differs from the patch of the denoised pixel by a mean square
+	 * of h^2 has a weight of 1/e
+	 */
+	public NonLocalMeansFilter(int patchRadius, double h)
+	{
+		if(patchRadius < 0 || h <= 0)
+		{
+			throw new IllegalArgumentException("Invalid patch radius " + patchRadius + " or filtering parameter " + h);
+		}
+
+		this.patchRadius = patchRadius;
+		this.h = h;
+	}
+
+
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
+	{
+		int height = image.getHeight();
+		int bands = (height + BAND_HEIGHT - 1)/BAND_HEIGHT;
+
+		// Denoise the bands of rows of every color channel in parallel, each from the integral images of its own rows
+		IntStream.range(0, image.getBands() * bands).parallel().forEach(task ->
+		{
+			int first = task % bands * BAND_HEIGHT;
+			denoise(image, processedImage, task/bands, first, Math.min(first + BAND_HEIGHT, height), subimageWidth/2, subimageHeight/2);
+		});
+	}
+
+
+	@Override
+	public void process(ImageStore image, ImageStore processedImage, int subimageWidth, int subimageHeight, int tileSize)
+	{
+		// The pixels of the search window read their patches too
+		new TiledImage(image, tileSize, tileSize).process(processedImage, subimageWidth/2 + this.patchRadius, subimageHeight/2 + this.patchRadius, (tile, processedTile) -> process(tile, processedTile, subimageWidth, subimageHeight));
+	}
+
+
+	/**
+	 * Denoise a band of rows of a color channel
+	 * Every pixel takes the weighted mean of the pixels of its search window size m x n, each pixel weighted by exp(-d/h^2),
+	 * where d is the mean square difference between its patch and the patch of the denoised pixel; the pixel itself takes
+	 * the largest weight of the others rather than 1, so that it does not outweigh them
+	 * The distances are computed per offset of the search window rather than per pixel: the squared differences between
+	 * the rows of the band and the rows shifted by the offset are summed in an integral image, from which the distance
+	 * of every patch is 4 lookups, so every pixel costs O(m x n) whatever the size of the patches
+	 * As in the other denoising filters, the search window and the patches are clipped to the image's edges
+	 * @param image the original image
+	 * @param processedImage the image to store the result, another image than the original one
+	 * @param band the color channel
+	 * @param first the first row of the band
+	 * @param last the row after the last one of the band
+	 * @param searchRadiusX the horizontal radius of the search window
+	 * @param searchRadiusY the vertical radius of the search window
+	 */
+	private void denoise(PlanarImage image, PlanarImage processedImage, int band, int first, int last, int searchRadiusX, int searchRadiusY)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] src = image.getPlane(band);
+		double scale = 1/(this.h * this.h);
+
+		// The rows whose squared differences the patches of the band read
+		int top = Math.max(first - this.patchRadius, 0);
+		int bottom = Math.min(last + this.patchRadius, height);
+		int integralWidth = width + 1;
+
+		// Take the thread's scratch arrays to store the integral image of the squared differences, and the weighted
+		// sums, the sums of the weights and the largest weights of the pixels of the band
+		int pixels = (last - first) * width;
+		double[] integral = BufferPool.getDoubleScratch(0, (bottom - top + 1) * integralWidth);
+		double[] sums = BufferPool.getDoubleScratch(1, pixels);
+		double[] weights = BufferPool.getDoubleScratch(2, pixels);
+		double[] maxWeights = BufferPool.getDoubleScratch(3, pixels);
+		Arrays.fill(sums, 0, pixels, 0);
+		Arrays.fill(weights, 0, pixels, 0);
+		Arrays.fill(maxWeights, 0, pixels, 0);
+		Arrays.fill(integral, 0, integralWidth, 0);
+
+		for(int dy = -searchRadiusY; dy <= searchRadiusY; dy++)
+		{
+			for(int dx = -searchRadiusX; dx <= searchRadiusX; dx++)
+			{
+				if((dx == 0 && dy == 0) || Math.abs(dx) >= width || Math.abs(dy) >= height)
+				{
+					continue;
+				}
+
+				// The pixels q whose shifted pixel q + (dx, dy) is inside the image, the only ones compared
+				int xMin = Math.max(0, -dx);
+				int xMax = Math.min(width, width - dx);
+				int yMin = Math.max(0, -dy);
+				int yMax = Math.min(height, height - dy);
+
+				// Sum the squared differences between the image and the shifted image, 0 outside the compared pixels
+				for(int y = top; y < bottom; y++)
+				{
+					int row = (y - top + 1) * integralWidth;
+					int previousRow = row - integralWidth;
+					integral[row] = 0;
+
+					if(y < yMin || y >= yMax)
+					{
+						System.arraycopy(integral, previousRow + 1, integral, row + 1, width);
+						continue;
+					}
+
+					int index = image.getIndex(0, y);
+					int shifted = image.getIndex(0, y + dy) + dx;
+					for(int x = 0; x < xMin; x++)
+					{
+						integral[row + x + 1] = integral[previousRow + x + 1];
+					}
+
+					double rowSum = 0;
+					for(int x = xMin; x < xMax; x++)
+					{
+						int difference = src[index + x] - src[shifted + x];
+						rowSum += difference * difference;
+						integral[row + x + 1] = integral[previousRow + x + 1] + rowSum;
+					}
+
+					for(int x = xMax; x < width; x++)
+					{
+						integral[row + x + 1] = integral[previousRow + x + 1] + rowSum;
+					}
+				}
+
+				// Weight the shifted pixel of every pixel of the band by the distance between their patches
+				for(int y = Math.max(first, yMin); y < Math.min(last, yMax); y++)
+				{
+					int patchTop = Math.max(y - this.patchRadius, yMin);
+					int patchBottom = Math.min(y + this.patchRadius + 1, yMax);
+					int upper = (patchTop - top) * integralWidth;
+					int lower = (patchBottom - top) * integralWidth;
+					int shifted = image.getIndex(0, y + dy) + dx;
+					int pixel = (y - first) * width;
+
+					// The patches of the columns away from the edges of the compared pixels all have the same area
+					int innerLeft = Math.min(xMin + this.patchRadius, xMax);
+					int innerRight = Math.max(xMax - this.patchRadius, innerLeft);
+					double innerScale = scale/((patchBottom - patchTop) * (this.patchRadius * 2 + 1));
+
+					for(int x = xMin; x < xMax; x++)
+					{
+						int patchLeft;
+						int patchRight;
+						double patchScale;
+						if(x >= innerLeft && x < innerRight)
+						{
+							patchLeft = x - this.patchRadius;
+							patchRight = x + this.patchRadius + 1;
+							patchScale = innerScale;
+						}
+						else
+						{
+							patchLeft = Math.max(x - this.patchRadius, xMin);
+							patchRight = Math.min(x + this.patchRadius + 1, xMax);
+							patchScale = scale/((patchBottom - patchTop) * (patchRight - patchLeft));
+						}
+
+						double distance = (integral[lower + patchRight] - integral[lower + patchLeft] - integral[upper + patchRight] + integral[upper + patchLeft]) * patchScale;
+						if(distance < MAX_DISTANCE)
+						{
+							// Look up the weight rather than take an exponential, which would cost as much as the rest
+							double entry = distance * TABLE_STEPS;
+							int i = (int) entry;
+							double weight = WEIGHTS[i] + (entry - i) * (WEIGHTS[i + 1] - WEIGHTS[i]);
+							sums[pixel + x] += weight * src[shifted + x];
+							weights[pixel + x] += weight;
+							if(weight > maxWeights[pixel + x])
+							{
+								maxWeights[pixel + x] = weight;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// Add the pixel itself with the largest weight of the others, and set the weighted mean to the pixel
+		int[] dst = processedImage.getPlane(band);
+		for(int y = first; y < last; y++)
+		{
+			int index = image.getIndex(0, y);
+			int processedIndex = processedImage.getIndex(0, y);
+			int pixel = (y - first) * width;
+
+			for(int x = 0; x < width; x++)
+			{
+				int sample = src[index + x];
+				double weight = weights[pixel + x] + maxWeights[pixel + x];
+				dst[processedIndex + x] = weight > 0 ? (int) ((sums[pixel + x] + maxWeights[pixel + x] * sample)/weight + 0.5) : sample;
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package denoising;
+
+import java.util.function.ToIntFunction;
+
+public class PercentileFilter implements RankFilter
+{
+	private double percentile;
+
+	/**
+	 * Class constructor
+	 * The 0th percentile is the minimum of the neighborhood, the 50th its median and the 100th its maximum
+	 * @param percentile the percentile of the neighborhood given to each pixel, from 0 to 100
+	 */
+	public PercentileFilter(double percentile)
+	{
+		if(!(percentile >= 0 && percentile <= 100))
+		{
+			throw new IllegalArgumentException("The percentile must lie between 0 and 100, got " + percentile);
+		}
+
+		this.percentile = percentile;
+	}
+
+
+	@Override
+	public ToIntFunction<SlidingHistogram> getStatistic()
+	{
+		// Set the value of the given percentile of the neighborhood size m x n to every pixel, the sample of the nearest rank
+		return histogram ->
+		{
+			int rank = (int) Math.round(this.percentile/100 * (histogram.getCount() - 1));
+			return histogram.getRank(rank);
+		};
+	}
+}
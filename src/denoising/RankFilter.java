@@ -0,0 +1,27 @@
+package denoising;
+
+import java.util.function.ToIntFunction;
+
+import processing.PlanarImage;
+
+public interface RankFilter extends DenoisingFilter
+{
+	/**
+	 * Get the function giving the value of a pixel from the histogram of its neighborhood
+	 * @return the statistic of the histogram
+	 */
+	public ToIntFunction<SlidingHistogram> getStatistic();
+	
+	
+	/**
+	 * Remove noise from a given planar image with the sliding histograms of the rank filter engine
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	public default void process(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight)
+	{
+		RankFilterEngine.filter(image, processedImage, subimageWidth, subimageHeight, getStatistic());
+	}
+}
@@ -0,0 +1,199 @@
+package denoising;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import processing.NeighborhoodCursor;
+import processing.PlanarImage;
+
+/**
+ * Engine of the filters computed from the order statistics of a neighborhood, such as percentiles and trimmed means
+ * The histogram of the neighborhood follows a neighborhood cursor along a row, adding the column entering it and removing
+ * the column leaving it, then steps down a row the same way and slides back, so every pixel costs O(m + n) updates instead of a sort of m x n values
+ * As in the other denoising filters, the neighborhood is clipped to the image's edges
+ */
+public final class RankFilterEngine
+{
+	// Number of levels of the histograms of 8-bit and of 16-bit channels
+	private static final int LEVELS_8_BIT = 256;
+	private static final int LEVELS_16_BIT = 65536;
+
+
+	private RankFilterEngine()
+	{
+
+	}
+
+
+	/**
+	 * Compute a statistic of the histogram of the neighborhood of every pixel of the given image
+	 * @param image the original image, with samples from 0 to 65535
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param statistic the function giving the value of a pixel from the histogram of its neighborhood
+	 */
+	public static void filter(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight, ToIntFunction<SlidingHistogram> statistic)
+	{
+		filter(image, List.of(processedImage), subimageWidth, subimageHeight, List.of(statistic));
+	}
+
+
+	/**
+	 * Compute several statistics of the histogram of the neighborhood of every pixel of the given image, in one traversal
+	 * @param image the original image, with samples from 0 to 65535
+	 * @param processedImages the images to store the results of every statistic, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param statistics the functions giving the value of a pixel from the histogram of its neighborhood
+	 */
+	public static void filter(PlanarImage image, List<PlanarImage> processedImages, int subimageWidth, int subimageHeight, List<ToIntFunction<SlidingHistogram>> statistics)
+	{
+		NeighborhoodCursor cursor = new NeighborhoodCursor(image, subimageWidth, subimageHeight);
+		SlidingHistogram histogram = null;
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+
+			// Take the smallest histogram the channel fits in, kept for the next channel if it fits too
+			int levels = getLevels(image, band);
+			if(histogram == null || histogram.getLevels() < levels)
+			{
+				histogram = new SlidingHistogram(levels);
+			}
+			else
+			{
+				histogram.clear();
+			}
+
+			// Fill the histogram with the neighborhood of pixel(0, 0)
+			cursor.moveTo(0, 0);
+			for(int y = cursor.getYMin(); y <= cursor.getYMax(); y++)
+			{
+				addRow(histogram, src, image.getIndex(0, y), cursor.getXMin(), cursor.getXMax(), 1);
+			}
+
+			while(true)
+			{
+				// Slide right along the even rows and left along the odd ones
+				boolean forward = cursor.getY() % 2 == 0;
+				while(true)
+				{
+					for(int i = 0; i < statistics.size(); i++)
+					{
+						PlanarImage processedImage = processedImages.get(i);
+						processedImage.getPlane(band)[processedImage.getIndex(cursor.getX(), cursor.getY())] = statistics.get(i).applyAsInt(histogram);
+					}
+
+					// Move the neighborhood to the next pixel of the row, unless this is the last one
+					if(!(forward ? cursor.moveRight() : cursor.moveLeft()))
+					{
+						break;
+					}
+					if(cursor.getLeavingColumn() >= 0)
+					{
+						addColumn(histogram, src, image, cursor.getLeavingColumn(), cursor.getYMin(), cursor.getYMax(), -1);
+					}
+					if(cursor.getEnteringColumn() >= 0)
+					{
+						addColumn(histogram, src, image, cursor.getEnteringColumn(), cursor.getYMin(), cursor.getYMax(), 1);
+					}
+				}
+
+				// Move the neighborhood down a row, at the column the row ended on, unless this is the last row
+				if(!cursor.moveDown())
+				{
+					break;
+				}
+				if(cursor.getLeavingRow() >= 0)
+				{
+					addRow(histogram, src, image.getIndex(0, cursor.getLeavingRow()), cursor.getXMin(), cursor.getXMax(), -1);
+				}
+				if(cursor.getEnteringRow() >= 0)
+				{
+					addRow(histogram, src, image.getIndex(0, cursor.getEnteringRow()), cursor.getXMin(), cursor.getXMax(), 1);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Add or remove the samples of a segment of a row to or from the histogram
+	 * @param histogram the histogram
+	 * @param src the plane of the image
+	 * @param row the index of the first pixel of the row in the plane
+	 * @param xMin the first column of the segment
+	 * @param xMax the last column of the segment, inclusive
+	 * @param delta 1 to add the samples, -1 to remove them
+	 */
+	private static void addRow(SlidingHistogram histogram, int[] src, int row, int xMin, int xMax, int delta)
+	{
+		for(int x = xMin; x <= xMax; x++)
+		{
+			if(delta > 0)
+			{
+				histogram.add(src[row + x]);
+			}
+			else
+			{
+				histogram.remove(src[row + x]);
+			}
+		}
+	}
+
+
+	/**
+	 * Add or remove the samples of a segment of a column to or from the histogram
+	 * @param histogram the histogram
+	 * @param src the plane of the image
+	 * @param image the image
+	 * @param x the column
+	 * @param yMin the first row of the segment
+	 * @param yMax the last row of the segment, inclusive
+	 * @param delta 1 to add the samples, -1 to remove them
+	 */
+	private static void addColumn(SlidingHistogram histogram, int[] src, PlanarImage image, int x, int yMin, int yMax, int delta)
+	{
+		int stride = image.getStride();
+		for(int y = yMin, index = image.getIndex(x, yMin); y <= yMax; y++, index += stride)
+		{
+			if(delta > 0)
+			{
+				histogram.add(src[index]);
+			}
+			else
+			{
+				histogram.remove(src[index]);
+			}
+		}
+	}
+
+
+	/**
+	 * Find the number of levels of the histograms of a color channel
+	 * @param image the image
+	 * @param band the color channel
+	 * @return 256 if every sample is an 8-bit value, 65536 if every sample is a 16-bit value
+	 */
+	private static int getLevels(PlanarImage image, int band)
+	{
+		int[] plane = image.getPlane(band);
+		int levels = LEVELS_8_BIT;
+		for(int y = 0; y < image.getHeight(); y++)
+		{
+			for(int x = 0, index = image.getIndex(0, y); x < image.getWidth(); x++)
+			{
+				int value = plane[index + x];
+				if(value < 0 || value >= LEVELS_16_BIT)
+				{
+					throw new IllegalArgumentException("Rank filters take samples from 0 to " + (LEVELS_16_BIT - 1) + ", got " + value);
+				}
+				levels = value >= LEVELS_8_BIT ? LEVELS_16_BIT : levels;
+			}
+		}
+
+		return levels;
+	}
+}
@@ -0,0 +1,323 @@
+package denoising;
+
+import java.util.function.DoubleUnaryOperator;
+
+import processing.NeighborhoodCursor;
+import processing.PlanarImage;
+
+/**
+ * Engine of the means computed from sums of a transform of the samples of a neighborhood, such as the sums of log(x), 1/x or x^Q
+ * The transforms of the sample values are looked up in tables, and the sums slide with the neighborhood: the sums of
+ * every column are updated as the neighborhood moves down a row, and the sum of the neighborhood as it moves along the row,
+ * so every pixel costs O(1) whatever the size of the neighborhood
+ * The tables hold the transforms in fixed point, as longs scaled by a power of two that keeps every sum of a neighborhood
+ * from overflowing, so the running sums are exact: a sum returns to exactly 0 once the samples it added have left it,
+ * where floating-point sums would keep rounding residues (which made the mean of an all-black neighborhood garbage)
+ * A transform spanning too many orders of magnitude for the fixed point, such as x^Q for a large |Q|, falls back to
+ * summing every neighborhood directly in floating point
+ * Infinite transforms, such as log(0) or 1/0, are counted rather than summed, so they do not spoil the running sums;
+ * the sums handed to the mean are infinite, as they would be if summed directly
+ * As in the other denoising filters, the neighborhood is clipped to the image's edges
+ */
+public final class RunningSumEngine
+{
+	// Smallest range of sample values whose transforms are looked up in the tables, that of 8-bit samples
+	private static final int TABLE_SIZE = 256;
+
+	// Bound of the fixed-point sums of a neighborhood, leaving a bit of headroom below Long.MAX_VALUE
+	private static final double MAX_SUM = 0x1p62;
+
+	// Smallest fixed-point value of a non-zero transform, below which its rounding would show in the means
+	private static final double MIN_FIXED = 0x1p24;
+
+
+	/**
+	 * The mean of a neighborhood from the sums of the transforms of its samples
+	 */
+	public interface Mean
+	{
+		/**
+		 * Calculate the mean
+		 * @param sums the sum of every transform over the neighborhood
+		 * @param count the number of samples of the neighborhood
+		 * @return the mean, which the engine truncates to the value of the pixel
+		 */
+		public double apply(double[] sums, int count);
+	}
+
+
+	private RunningSumEngine()
+	{
+
+	}
+
+
+	/**
+	 * Compute a mean of the neighborhood of every pixel of the given image from the sums of transforms of its samples
+	 * Means within 1e-9 of an integer are taken as that integer, so that a flat neighborhood keeps its value
+	 * despite the rounding of the transforms
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param transforms the functions whose values over the neighborhood are summed
+	 * @param mean the function giving the value of a pixel from the sums
+	 */
+	public static void filter(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight, DoubleUnaryOperator[] transforms, Mean mean)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int radiusY = subimageHeight/2;
+
+		// Span the sample values of the image, at least the 8-bit values
+		int first = 0;
+		int last = TABLE_SIZE - 1;
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			for(int y = 0; y < height; y++)
+			{
+				for(int i = image.getIndex(0, y), end = i + width; i < end; i++)
+				{
+					first = Math.min(first, src[i]);
+					last = Math.max(last, src[i]);
+				}
+			}
+		}
+
+		// Look up the transforms of the sample values, and their fixed-point values scaled so that the sum of the
+		// largest neighborhood fits in a long, as long as every non-zero transform keeps enough bits
+		int maxCount = Math.min(subimageWidth, width) * Math.min(subimageHeight, height);
+		double[][] tables = new double[transforms.length][last - first + 1];
+		long[][] fixedTables = new long[transforms.length][last - first + 1];
+		double[] scales = new double[transforms.length];
+		boolean fixed = true;
+		for(int t = 0; t < transforms.length; t++)
+		{
+			double maxValue = 0;
+			for(int v = first; v <= last; v++)
+			{
+				double value = transforms[t].applyAsDouble(v);
+				tables[t][v - first] = value;
+				maxValue = Double.isInfinite(value) ? maxValue : Math.max(maxValue, Math.abs(value));
+			}
+
+			scales[t] = maxValue == 0 ? 1 : Math.scalb(1.0, Math.getExponent(MAX_SUM/(maxValue * maxCount)));
+			for(int v = 0; v < tables[t].length; v++)
+			{
+				double value = tables[t][v];
+				if(!Double.isInfinite(value))
+				{
+					fixedTables[t][v] = Math.round(value * scales[t]);
+					fixed &= value == 0 || Math.abs(value) * scales[t] >= MIN_FIXED;
+				}
+			}
+		}
+
+		// A transform spanning too many orders of magnitude, such as x^Q for a large |Q|, would round its small values
+		// to nothing, so the neighborhoods are summed directly instead
+		if(!fixed)
+		{
+			filterDirect(image, processedImage, subimageWidth, subimageHeight, first, tables, mean);
+			return;
+		}
+
+		// The exact fixed-point sums of the finite transforms of the columns, and their numbers of positive and
+		// negative infinite transforms
+		long[][] columnSums = new long[transforms.length][width];
+		int[][] columnPositives = new int[transforms.length][width];
+		int[][] columnNegatives = new int[transforms.length][width];
+		long[] sums = new long[transforms.length];
+		int[] positives = new int[transforms.length];
+		int[] negatives = new int[transforms.length];
+		double[] windowSums = new double[transforms.length];
+		NeighborhoodCursor cursor = new NeighborhoodCursor(image, subimageWidth, subimageHeight);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			for(int t = 0; t < transforms.length; t++)
+			{
+				for(int x = 0; x < width; x++)
+				{
+					columnSums[t][x] = 0;
+					columnPositives[t][x] = 0;
+					columnNegatives[t][x] = 0;
+				}
+			}
+
+			// Sum the columns over the rows of the neighborhood of the first row
+			for(int y = 0; y <= Math.min(radiusY, height - 1); y++)
+			{
+				addRow(src, image.getIndex(0, y), width, first, tables, fixedTables, columnSums, columnPositives, columnNegatives, 1);
+			}
+
+			for(int y = 0; y < height; y++)
+			{
+				// Sum the columns of the neighborhood of the first pixel of the row
+				cursor.moveTo(0, y);
+				for(int t = 0; t < transforms.length; t++)
+				{
+					sums[t] = 0;
+					positives[t] = 0;
+					negatives[t] = 0;
+					for(int x = cursor.getXMin(); x <= cursor.getXMax(); x++)
+					{
+						sums[t] += columnSums[t][x];
+						positives[t] += columnPositives[t][x];
+						negatives[t] += columnNegatives[t][x];
+					}
+				}
+
+				int index = processedImage.getIndex(0, y);
+				while(true)
+				{
+					// Hand the sums to the mean, infinite if any transform in the neighborhood is
+					for(int t = 0; t < transforms.length; t++)
+					{
+						windowSums[t] = sums[t]/scales[t] + (positives[t] > 0 ? Double.POSITIVE_INFINITY : 0) + (negatives[t] > 0 ? Double.NEGATIVE_INFINITY : 0);
+					}
+					dst[index + cursor.getX()] = toSample(mean.apply(windowSums, cursor.getCount()));
+
+					// Slide the neighborhood along the row, adding the column entering it and removing the column leaving it
+					if(!cursor.moveRight())
+					{
+						break;
+					}
+					int entering = cursor.getEnteringColumn();
+					int leaving = cursor.getLeavingColumn();
+					for(int t = 0; t < transforms.length; t++)
+					{
+						if(entering >= 0)
+						{
+							sums[t] += columnSums[t][entering];
+							positives[t] += columnPositives[t][entering];
+							negatives[t] += columnNegatives[t][entering];
+						}
+						if(leaving >= 0)
+						{
+							sums[t] -= columnSums[t][leaving];
+							positives[t] -= columnPositives[t][leaving];
+							negatives[t] -= columnNegatives[t][leaving];
+						}
+					}
+				}
+
+				// Slide the columns down a row, adding the row entering the neighborhood and removing the row leaving it
+				if(y + radiusY + 1 < height)
+				{
+					addRow(src, image.getIndex(0, y + radiusY + 1), width, first, tables, fixedTables, columnSums, columnPositives, columnNegatives, 1);
+				}
+				if(y - radiusY >= 0)
+				{
+					addRow(src, image.getIndex(0, y - radiusY), width, first, tables, fixedTables, columnSums, columnPositives, columnNegatives, -1);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Compute a mean of the neighborhood of every pixel of the given image from the sums of transforms of its samples,
+	 * summing every neighborhood in floating point anew
+	 * Every pixel costs O(m x n), but the sums keep the full range of the transforms and carry no residue from
+	 * the samples of other neighborhoods
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 * @param first the sample value of the first entry of the tables
+	 * @param tables the transforms of the sample values
+	 * @param mean the function giving the value of a pixel from the sums
+	 */
+	private static void filterDirect(PlanarImage image, PlanarImage processedImage, int subimageWidth, int subimageHeight, int first, double[][] tables, Mean mean)
+	{
+		double[] windowSums = new double[tables.length];
+		NeighborhoodCursor cursor = new NeighborhoodCursor(image, subimageWidth, subimageHeight);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				int index = processedImage.getIndex(0, y);
+				for(int x = 0; x < image.getWidth(); x++)
+				{
+					// Sum the transforms of the samples of the neighborhood, infinite if any of them is
+					cursor.moveTo(x, y);
+					for(int t = 0; t < tables.length; t++)
+					{
+						double[] table = tables[t];
+						double sum = 0;
+						for(int j = cursor.getYMin(); j <= cursor.getYMax(); j++)
+						{
+							for(int i = image.getIndex(cursor.getXMin(), j), end = i + cursor.getXMax() - cursor.getXMin(); i <= end; i++)
+							{
+								sum += table[src[i] - first];
+							}
+						}
+						windowSums[t] = sum;
+					}
+					dst[index + x] = toSample(mean.apply(windowSums, cursor.getCount()));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Add or remove the transforms of the samples of a row to or from the sums of the columns
+	 * @param src the plane of the image
+	 * @param row the index of the first pixel of the row in the plane
+	 * @param width the width of the image
+	 * @param first the sample value of the first entry of the tables
+	 * @param tables the transforms of the sample values
+	 * @param fixedTables the fixed-point transforms of the sample values
+	 * @param columnSums the fixed-point sums of the finite transforms of the columns
+	 * @param columnPositives the numbers of positive infinite transforms of the columns
+	 * @param columnNegatives the numbers of negative infinite transforms of the columns
+	 * @param delta 1 to add the transforms, -1 to remove them
+	 */
+	private static void addRow(int[] src, int row, int width, int first, double[][] tables, long[][] fixedTables, long[][] columnSums, int[][] columnPositives, int[][] columnNegatives, int delta)
+	{
+		for(int t = 0; t < tables.length; t++)
+		{
+			double[] table = tables[t];
+			long[] fixedTable = fixedTables[t];
+			for(int x = 0; x < width; x++)
+			{
+				int entry = src[row + x] - first;
+				double value = table[entry];
+
+				if(value == Double.POSITIVE_INFINITY)
+				{
+					columnPositives[t][x] += delta;
+				}
+				else if(value == Double.NEGATIVE_INFINITY)
+				{
+					columnNegatives[t][x] += delta;
+				}
+				else
+				{
+					columnSums[t][x] += delta * fixedTable[entry];
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Truncate a mean to a sample, taking means within 1e-9 of an integer, relative to their size, as that integer
+	 * @param mean the mean
+	 * @return the sample
+	 */
+	private static int toSample(double mean)
+	{
+		double nearest = Math.rint(mean);
+		return Math.abs(mean - nearest) <= 1e-9 * Math.max(1, Math.abs(mean)) ? (int) nearest : (int) mean;
+	}
+}
@@ -0,0 +1,157 @@
+package denoising;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of the samples under a sliding window, updated one sample at a time as the window moves (Huang, 1979)
+ * The bins are grouped in coarse bins of sqrt(levels) fine bins that also keep the sum of their samples,
+ * so order statistics and sums of ranks are found by walking sqrt(levels) coarse bins then at most sqrt(levels) fine bins
+ */
+public final class SlidingHistogram
+{
+	private int levels;
+	private int shift;
+	private int[] fine;
+	private int[] coarse;
+	private long[] coarseSums;
+	private int count;
+
+
+	/**
+	 * Class constructor
+	 * @param levels the number of sample values, 0 to levels - 1, a power of four such as 256 or 65536
+	 */
+	public SlidingHistogram(int levels)
+	{
+		if(Integer.bitCount(levels) != 1 || Integer.numberOfTrailingZeros(levels) % 2 != 0)
+		{
+			throw new IllegalArgumentException("The number of levels must be a power of four, got " + levels);
+		}
+
+		this.levels = levels;
+		this.shift = Integer.numberOfTrailingZeros(levels)/2;
+		this.fine = new int[levels];
+		this.coarse = new int[levels >> this.shift];
+		this.coarseSums = new long[levels >> this.shift];
+	}
+
+
+	public int getLevels()
+	{
+		return this.levels;
+	}
+
+
+	/**
+	 * Get the number of samples in the histogram
+	 * @return the number of samples
+	 */
+	public int getCount()
+	{
+		return this.count;
+	}
+
+
+	/**
+	 * Add a sample to the histogram
+	 * @param value the sample, from 0 to levels - 1
+	 */
+	public void add(int value)
+	{
+		this.fine[value]++;
+		this.coarse[value >> this.shift]++;
+		this.coarseSums[value >> this.shift] += value;
+		this.count++;
+	}
+
+
+	/**
+	 * Remove a sample from the histogram
+	 * @param value the sample, which must have been added
+	 */
+	public void remove(int value)
+	{
+		this.fine[value]--;
+		this.coarse[value >> this.shift]--;
+		this.coarseSums[value >> this.shift] -= value;
+		this.count--;
+	}
+
+
+	/**
+	 * Remove every sample from the histogram
+	 */
+	public void clear()
+	{
+		Arrays.fill(this.fine, 0);
+		Arrays.fill(this.coarse, 0);
+		Arrays.fill(this.coarseSums, 0);
+		this.count = 0;
+	}
+
+
+	/**
+	 * Find the sample of the given rank, as if the samples were sorted
+	 * @param rank the rank, from 0 for the smallest sample to getCount() - 1 for the largest
+	 * @return the sample
+	 */
+	public int getRank(int rank)
+	{
+		// Find the coarse bin holding the rank, then the fine bin within it
+		int c = 0;
+		int below = 0;
+		while(below + this.coarse[c] <= rank)
+		{
+			below += this.coarse[c++];
+		}
+
+		int value = c << this.shift;
+		while(below + this.fine[value] <= rank)
+		{
+			below += this.fine[value++];
+		}
+
+		return value;
+	}
+
+
+	/**
+	 * Sum the samples whose ranks lie in a range, as if the samples were sorted
+	 * @param from the lowest rank, inclusive
+	 * @param to the highest rank, exclusive
+	 * @return the sum of the samples
+	 */
+	public long getSum(int from, int to)
+	{
+		return to > from ? getLowestSum(to) - getLowestSum(from) : 0;
+	}
+
+
+	/**
+	 * Sum the given number of smallest samples
+	 * @param n the number of samples
+	 * @return the sum of the samples
+	 */
+	private long getLowestSum(int n)
+	{
+		// Take whole coarse bins while they fit
+		int c = 0;
+		int taken = 0;
+		long sum = 0;
+		while(c < this.coarse.length && taken + this.coarse[c] <= n)
+		{
+			taken += this.coarse[c];
+			sum += this.coarseSums[c++];
+		}
+
+		// Take the samples of the next coarse bin's fine bins, from the smallest, until there are n
+		for(int value = c << this.shift; taken < n; value++)
+		{
+			int samples = Math.min(this.fine[value], n - taken);
+			taken += samples;
+			sum += (long) samples * value;
+		}
+
+		return sum;
+	}
+}
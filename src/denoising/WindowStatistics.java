@@ -0,0 +1,227 @@
+package denoising;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import processing.IntegralImage;
+import processing.PlanarImage;
+import processing.RunningExtrema;
+
+/**
+ * Statistics of the neighborhood size m x n of every pixel of an image, shared by the denoising filters that finish from them:
+ * the sum and sum of squares from a summed-area table, the minimum and maximum from running extrema, and the order
+ * statistics from one traversal of a sliding histogram for all the rank filters at once
+ * Every statistic is computed the first time it is asked for, so a filter pays only for what it reads, and filtering
+ * the same image with several filters walks the neighborhoods once per kind of statistic instead of once per filter
+ * As in the denoising filters, the neighborhoods are clipped to the image's edges
+ * The statistics are not safe to compute from several threads at the same time
+ */
+public class WindowStatistics
+{
+	private PlanarImage image;
+	private int subimageWidth;
+	private int subimageHeight;
+	private IntegralImage integralImage;
+	private boolean hasSquares;
+	private PlanarImage minimums;
+	private PlanarImage maximums;
+
+
+	/**
+	 * Class constructor
+	 * @param image the image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	public WindowStatistics(PlanarImage image, int subimageWidth, int subimageHeight)
+	{
+		this.image = image;
+		this.subimageWidth = subimageWidth;
+		this.subimageHeight = subimageHeight;
+	}
+
+
+	public PlanarImage getImage()
+	{
+		return this.image;
+	}
+
+
+	public int getSubimageWidth()
+	{
+		return this.subimageWidth;
+	}
+
+
+	public int getSubimageHeight()
+	{
+		return this.subimageHeight;
+	}
+
+
+	/**
+	 * Get the number of pixels of the neighborhood of a pixel, inside the image
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the number of pixels
+	 */
+	public int getCount(int x, int y)
+	{
+		return getIntegralImage(false).getCount(x - this.subimageWidth/2, y - this.subimageHeight/2, x + this.subimageWidth/2, y + this.subimageHeight/2);
+	}
+
+
+	/**
+	 * Sum the values of the neighborhood of a pixel
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param band the color channel
+	 * @return the sum
+	 */
+	public long getSum(int x, int y, int band)
+	{
+		return getIntegralImage(false).getSum(band, x - this.subimageWidth/2, y - this.subimageHeight/2, x + this.subimageWidth/2, y + this.subimageHeight/2);
+	}
+
+
+	/**
+	 * Sum the squares of the values of the neighborhood of a pixel
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param band the color channel
+	 * @return the sum of squares
+	 */
+	public long getSumOfSquares(int x, int y, int band)
+	{
+		return getIntegralImage(true).getSumOfSquares(band, x - this.subimageWidth/2, y - this.subimageHeight/2, x + this.subimageWidth/2, y + this.subimageHeight/2);
+	}
+
+
+	/**
+	 * Get the variance of the values of the neighborhood of a pixel
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param band the color channel
+	 * @return the variance
+	 */
+	public double getVariance(int x, int y, int band)
+	{
+		return getIntegralImage(true).getVariance(band, x - this.subimageWidth/2, y - this.subimageHeight/2, x + this.subimageWidth/2, y + this.subimageHeight/2);
+	}
+
+
+	/**
+	 * Get the minimum of the neighborhood of every pixel
+	 * @return the image of the minimums, which must not be modified
+	 */
+	public PlanarImage getMinimums()
+	{
+		if(this.minimums == null)
+		{
+			this.minimums = PlanarImage.createCompatible(this.image);
+			RunningExtrema.filter(this.image, this.minimums, this.subimageWidth/2, this.subimageHeight/2, true);
+		}
+
+		return this.minimums;
+	}
+
+
+	/**
+	 * Get the maximum of the neighborhood of every pixel
+	 * @return the image of the maximums, which must not be modified
+	 */
+	public PlanarImage getMaximums()
+	{
+		if(this.maximums == null)
+		{
+			this.maximums = PlanarImage.createCompatible(this.image);
+			RunningExtrema.filter(this.image, this.maximums, this.subimageWidth/2, this.subimageHeight/2, false);
+		}
+
+		return this.maximums;
+	}
+
+
+	/**
+	 * Compute several statistics of the histogram of the neighborhood of every pixel in one traversal
+	 * @param statistics the functions giving the value of a pixel from the histogram of its neighborhood
+	 * @param processedImages the images to store the results of every statistic, with the same size as the image
+	 */
+	public void computeRanks(List<ToIntFunction<SlidingHistogram>> statistics, List<PlanarImage> processedImages)
+	{
+		RankFilterEngine.filter(this.image, processedImages, this.subimageWidth, this.subimageHeight, statistics);
+	}
+
+
+	/**
+	 * Remove noise from the image with every given filter
+	 * The rank filters share one traversal of the sliding histogram, and the other filters finish from the shared statistics
+	 * @param filters the filters
+	 * @return the denoised image of every filter, in the same order
+	 */
+	public PlanarImage[] process(DenoisingFilter... filters)
+	{
+		PlanarImage[] processedImages = new PlanarImage[filters.length];
+		List<ToIntFunction<SlidingHistogram>> statistics = new ArrayList<ToIntFunction<SlidingHistogram>>();
+		List<PlanarImage> rankImages = new ArrayList<PlanarImage>();
+
+		for(int i = 0; i < filters.length; i++)
+		{
+			processedImages[i] = PlanarImage.createCompatible(this.image);
+
+			// Put the rank filters aside, to be computed together
+			if(filters[i] instanceof RankFilter)
+			{
+				statistics.add(((RankFilter) filters[i]).getStatistic());
+				rankImages.add(processedImages[i]);
+			}
+			else
+			{
+				filters[i].process(this, processedImages[i]);
+			}
+		}
+
+		if(!statistics.isEmpty())
+		{
+			computeRanks(statistics, rankImages);
+		}
+
+		return processedImages;
+	}
+
+
+	/**
+	 * Get the summed-area table of the image
+	 * The table is built once, again only if the sums of squares are asked for after a table without them
+	 * @param withSquares true if the sums of squares are needed
+	 * @return the summed-area table
+	 */
+	public IntegralImage getIntegralImage(boolean withSquares)
+	{
+		if(this.integralImage == null || (withSquares && !this.hasSquares))
+		{
+			this.integralImage = new IntegralImage(this.image, withSquares);
+			this.hasSquares = withSquares;
+		}
+
+		return this.integralImage;
+	}
+
+
+	/**
+	 * Copy an image of statistics to a processed image
+	 * @param statistics the image of statistics
+	 * @param processedImage the image to store the copy, with the same size
+	 */
+	static void copy(PlanarImage statistics, PlanarImage processedImage)
+	{
+		for(int band = 0; band < statistics.getBands(); band++)
+		{
+			for(int y = 0; y < statistics.getHeight(); y++)
+			{
+				System.arraycopy(statistics.getPlane(band), statistics.getIndex(0, y), processedImage.getPlane(band), processedImage.getIndex(0, y), statistics.getWidth());
+			}
+		}
+	}
+}
@@ -1,62 +1,152 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
 import java.util.Arrays;
 
-import processing.Processor;
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.IntegralImage;
+import processing.PlanarImage;
 
 public class AveragingFilter implements SpatialFilter
 {
+	private BorderMode borderMode;
+	
+	
 	/**
 	 * Class constructor
+	 * The image is extended beyond its edges by the default border mode
 	 */
 	public AveragingFilter()
 	{
-		
+		this(BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public AveragingFilter(BorderMode borderMode)
+	{
+		this.borderMode = borderMode;
 	}
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
+	public BorderMode getBorderMode()
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		// Generate the averaging kernel with given radius
-		double[][] kernel = generateAveragingKernel(kernelRadius);
+		return this.borderMode;
+	}
+	
+	
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		// Sum the image extended by the border mode, so that every window is a full (2r + 1) x (2r + 1) square
+		IntegralImage integralImage = new IntegralImage(image, kernelRadius, kernelRadius, this.borderMode, false);
+		int kernelSize = (kernelRadius * 2 + 1) * (kernelRadius * 2 + 1);
 		
-		for(int x = 0; x < image.getWidth(); x++) 
+		for(int band = 0; band < image.getBands(); band++)
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			int[] dst = processedImage.getPlane(band);
+			
+			for(int y = 0; y < image.getHeight(); y++)
 			{
-				// Calculate the RGB value of the centered pixel(x, y) by performing convolution on the pixels under the mask
-				int[] rgb = SpatialFilter.convolve(image, x, y, kernel);
-						
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
+				for(int x = 0, index = processedImage.getIndex(0, y); x < image.getWidth(); x++)
+				{
+					// Set the mean of the window, taken in constant time from the summed-area table, to the pixel(x, y)
+					dst[index + x] = (int) (integralImage.getSum(band, x - kernelRadius, y - kernelRadius, x + kernelRadius, y + kernelRadius) / kernelSize);
+				}
 			}
 		}
-		
-		return processedImage;
 	}
 	
 	
 	/**
-	 * Generate an averaging kernel with given size
-	 * @param kernelWidth the width of the kernel
-	 * @param kernelHeight the height of the kernel
-	 * @return the averaging kernel
+	 * Filter a given planar image, handing every row of means to the next stage as soon as it is found
+	 * Every column of the padded image keeps the sum of its kernelSize samples around the current row, and the
+	 * window's sum slides along the row by adding the column entering the mask and removing the column leaving it,
+	 * so every pixel costs O(1) whatever the kernel radius, as with the summed-area table, but the next stage gets
+	 * its first rows before the whole image is summed
+	 * The means are the same as those of process(PlanarImage, PlanarImage, int)
+	 * The rows are produced in order, one color channel after the other; the image is read from a padded copy,
+	 * so the next stage may overwrite it
+	 * @param image the original image
+	 * @param kernelRadius the radius of the kernel
+	 * @param sink the stage taking the rows of means
 	 */
-	private double[][] generateAveragingKernel(int kernelRadius)
+	void process(PlanarImage image, int kernelRadius, RowSink sink)
 	{
-		double[][] kernel = new double[kernelRadius * 2 + 1][kernelRadius * 2 + 1];
+		int width = image.getWidth();
+		int kernelSize = kernelRadius * 2 + 1;
+		int area = kernelSize * kernelSize;
 		
-		int kernelSize = (kernelRadius * 2 + 1) * (kernelRadius * 2 + 1);
+		// Pad the image by the border mode, so that every window is a full (2r + 1) x (2r + 1) square
+		PlanarImage paddedImage = image.pad(kernelRadius, kernelRadius, this.borderMode);
+		int paddedWidth = paddedImage.getWidth();
+		
+		// Take the thread's scratch arrays to store the sums of the columns and a row of means
+		int[] columnSums = BufferPool.getIntScratch(2, paddedWidth);
+		int[] row = BufferPool.getIntScratch(3, width);
 		
-		// Fill all the values in the kernel with 1/(sum of coefficients)
-		Arrays.stream(kernel).forEach(i -> Arrays.fill(i, 1.0/kernelSize));
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+			
+			// Sum the columns over the rows under the mask of the first row but its last one
+			Arrays.fill(columnSums, 0, paddedWidth, 0);
+			for(int j = 0; j < kernelSize - 1; j++)
+			{
+				addRow(src, paddedImage.getIndex(0, j), paddedWidth, columnSums, 1);
+			}
+			
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				// Slide the column sums down: add the row entering the mask, and remove the one that left it
+				addRow(src, paddedImage.getIndex(0, y + kernelSize - 1), paddedWidth, columnSums, 1);
+				if(y > 0)
+				{
+					addRow(src, paddedImage.getIndex(0, y - 1), paddedWidth, columnSums, -1);
+				}
+				
+				long sum = 0;
+				for(int c = 0; c < kernelSize - 1; c++)
+				{
+					sum += columnSums[c];
+				}
+				
+				for(int x = 0; x < width; x++)
+				{
+					// Slide the window's sum to the mask whose left column is x
+					sum += columnSums[x + kernelSize - 1];
+					
+					// Set the mean of the window to the pixel(x, y)
+					row[x] = (int) (sum / area);
+					
+					sum -= columnSums[x];
+				}
+				
+				sink.accept(band, y, row);
+			}
+		}
 		
-		return kernel;
+		BufferPool.release(paddedImage);
+	}
+	
+	
+	/**
+	 * Add or remove a row of the padded image to or from the sums of the columns
+	 * @param src the plane of the padded image
+	 * @param index the index of the first pixel of the row in the plane
+	 * @param paddedWidth the width of the padded image
+	 * @param columnSums the sums of the columns
+	 * @param delta 1 to add the row, -1 to remove it
+	 */
+	private void addRow(int[] src, int index, int paddedWidth, int[] columnSums, int delta)
+	{
+		for(int c = 0; c < paddedWidth; c++)
+		{
+			columnSums[c] += delta * src[index + c];
+		}
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,232 @@
+package filtering;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import processing.BorderMode;
+import processing.PlanarImage;
+
+public class CannyFilter implements SpatialFilter
+{
+	// States of a pixel after the non-maximum suppression
+	private static final byte NONE = 0;
+	private static final byte WEAK = 1;
+	private static final byte STRONG = 2;
+
+	// Bounds of the sectors of the gradient direction, as ratios of |gy| to |gx|
+	private static final double TAN_22_5 = Math.tan(Math.PI/8);
+	private static final double TAN_67_5 = Math.tan(Math.PI * 3/8);
+
+	private double sigma;
+	private double lowThreshold;
+	private double highThreshold;
+	private GradientOperator operator;
+	private BorderMode borderMode;
+
+
+	/**
+	 * Class constructor
+	 * The gradient is estimated by the Sobel operator, and the image is extended beyond its edges by the default border mode
+	 * @param sigma the standard deviation of the Gaussian function, or 0 for no smoothing
+	 * @param lowThreshold the gradient magnitude a pixel connected to an edge must exceed to be an edge
+	 * @param highThreshold the gradient magnitude a pixel must exceed to be an edge
+	 */
+	public CannyFilter(double sigma, double lowThreshold, double highThreshold)
+	{
+		this(sigma, lowThreshold, highThreshold, GradientOperator.SOBEL, BorderMode.DEFAULT);
+	}
+
+
+	/**
+	 * Class constructor
+	 * @param sigma the standard deviation of the Gaussian function, or 0 for no smoothing
+	 * @param lowThreshold the gradient magnitude a pixel connected to an edge must exceed to be an edge
+	 * @param highThreshold the gradient magnitude a pixel must exceed to be an edge
+	 * @param operator the operator estimating the gradient
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public CannyFilter(double sigma, double lowThreshold, double highThreshold, GradientOperator operator, BorderMode borderMode)
+	{
+		if(lowThreshold > highThreshold)
+		{
+			throw new IllegalArgumentException("The low threshold " + lowThreshold + " exceeds the high threshold " + highThreshold);
+		}
+
+		this.sigma = sigma;
+		this.lowThreshold = lowThreshold;
+		this.highThreshold = highThreshold;
+		this.operator = operator;
+		this.borderMode = borderMode;
+	}
+
+
+	@Override
+	public BorderMode getBorderMode()
+	{
+		return this.borderMode;
+	}
+
+
+	@Override
+	public int getHalo(int kernelRadius)
+	{
+		// The operator widens the Gaussian kernel by one pixel, and the suppression reads the neighbors of every pixel
+		// Edges are traced within the tile and its halo only, so an edge may break where it crosses the tile edges
+		return (this.sigma > 0 ? kernelRadius : 0) + 2;
+	}
+
+
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		double[][] kernels = this.operator.getKernels(kernelRadius, this.sigma);
+
+		// Store the gradient magnitude of every pixel, and the sector of its direction:
+		// 0 horizontal, 1 along the diagonal from top left to bottom right, 2 vertical, 3 along the other diagonal
+		double[][] magnitudes = new double[image.getBands()][width * height];
+		byte[][] sectors = new byte[image.getBands()][width * height];
+		GradientEngine.filter(image, kernels[0], kernels[1], this.borderMode, (band, y, gradientX, gradientY) ->
+		{
+			for(int x = 0, i = y * width; x < width; x++, i++)
+			{
+				double absoluteX = Math.abs(gradientX[x]);
+				double absoluteY = Math.abs(gradientY[x]);
+				magnitudes[band][i] = Math.sqrt(gradientX[x] * gradientX[x] + gradientY[x] * gradientY[x]);
+
+				if(absoluteY <= absoluteX * TAN_22_5)
+				{
+					sectors[band][i] = 0;
+				}
+				else if(absoluteY >= absoluteX * TAN_67_5)
+				{
+					sectors[band][i] = 2;
+				}
+				else
+				{
+					sectors[band][i] = (byte) ((gradientX[x] > 0) == (gradientY[x] > 0) ? 1 : 3);
+				}
+			}
+		});
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			byte[] states = suppressNonMaxima(magnitudes[band], sectors[band], width, height);
+			traceEdges(states, width, height);
+
+			int[] dst = processedImage.getPlane(band);
+			for(int y = 0; y < height; y++)
+			{
+				for(int x = 0, index = processedImage.getIndex(0, y); x < width; x++)
+				{
+					dst[index + x] = states[y * width + x] == STRONG ? 255 : 0;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Keep the pixels whose gradient magnitude is a maximum along the direction of their gradient, rows in parallel,
+	 * and classify them by the thresholds
+	 * A pixel must exceed its neighbor on one side and at least equal the one on the other, so that a ridge two pixels
+	 * wide keeps one of them; neighbors outside the image count as 0
+	 * @param magnitudes the gradient magnitude of every pixel
+	 * @param sectors the sector of the gradient direction of every pixel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the state of every pixel: STRONG above the high threshold, WEAK above the low one, NONE otherwise
+	 */
+	private byte[] suppressNonMaxima(double[] magnitudes, byte[] sectors, int width, int height)
+	{
+		byte[] states = new byte[width * height];
+
+		IntStream.range(0, height).parallel().forEach(y ->
+		{
+			for(int x = 0, i = y * width; x < width; x++, i++)
+			{
+				double magnitude = magnitudes[i];
+				if(magnitude <= this.lowThreshold)
+				{
+					continue;
+				}
+
+				// The offsets of the neighbors across the edge, along the gradient
+				int dx = sectors[i] == 2 ? 0 : 1;
+				int dy = sectors[i] == 0 ? 0 : (sectors[i] == 3 ? -1 : 1);
+
+				if(magnitude > getMagnitude(magnitudes, x - dx, y - dy, width, height) && magnitude >= getMagnitude(magnitudes, x + dx, y + dy, width, height))
+				{
+					states[i] = magnitude > this.highThreshold ? STRONG : WEAK;
+				}
+			}
+		});
+
+		return states;
+	}
+
+
+	/**
+	 * Promote every weak pixel 8-connected to a strong pixel through weak pixels to a strong pixel (hysteresis)
+	 * @param states the state of every pixel, updated in place
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 */
+	private void traceEdges(byte[] states, int width, int height)
+	{
+		// Start from every strong pixel, and grow the edges from the pixels taken off the stack
+		int[] stack = new int[64];
+		int size = 0;
+		for(int i = 0; i < states.length; i++)
+		{
+			if(states[i] == STRONG)
+			{
+				if(size == stack.length)
+				{
+					stack = Arrays.copyOf(stack, size * 2);
+				}
+				stack[size++] = i;
+			}
+		}
+
+		while(size > 0)
+		{
+			int i = stack[--size];
+			int x = i % width;
+			int y = i/width;
+
+			for(int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++)
+			{
+				for(int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++)
+				{
+					int neighbor = ny * width + nx;
+					if(states[neighbor] == WEAK)
+					{
+						states[neighbor] = STRONG;
+						if(size == stack.length)
+						{
+							stack = Arrays.copyOf(stack, size * 2);
+						}
+						stack[size++] = neighbor;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Get the gradient magnitude of a pixel, 0 outside the image
+	 * @param magnitudes the gradient magnitude of every pixel
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the magnitude
+	 */
+	private double getMagnitude(double[] magnitudes, int x, int y, int width, int height)
+	{
+		return x < 0 || x >= width || y < 0 || y >= height ? 0 : magnitudes[y * width + x];
+	}
+}
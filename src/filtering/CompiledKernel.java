@@ -0,0 +1,261 @@
+package filtering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A kernel compiled to a flat list of (offset, weight) taps, ready to be applied to whole rows of a padded plane
+ * Zero weights are dropped; taps of equal weight, such as the mirrored taps of a symmetric kernel, are grouped and
+ * their samples added in pairs before the multiplication by their weight, which halves the multiplications of a
+ * symmetric kernel; and a kernel whose weights are all integers is applied with int accumulation, which is exact
+ * and needs no conversion to floating point
+ * The offset of a tap is its index in the plane relative to the top left corner of the kernel window
+ */
+final class CompiledKernel
+{
+	// Largest sample the integer accumulation must hold without overflowing, that of a 16-bit channel
+	private static final int MAX_SAMPLE = 65535;
+
+	private int[] offsets;
+	private int[] groupEnds;
+	private double[] weights;
+	private int[] integerWeights;
+
+
+	/**
+	 * Class constructor
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @param stride the distance between two rows of the plane the kernel is applied to
+	 */
+	CompiledKernel(double[][] kernel, int stride)
+	{
+		// Group the offsets of the non-zero taps by weight, in the order the weights are first met
+		Map<Double, List<Integer>> groups = new LinkedHashMap<Double, List<Integer>>();
+		for(int i = 0; i < kernel.length; i++)
+		{
+			for(int j = 0; j < kernel[0].length; j++)
+			{
+				if(kernel[i][j] != 0)
+				{
+					groups.computeIfAbsent(kernel[i][j], weight -> new ArrayList<Integer>()).add(j * stride + i);
+				}
+			}
+		}
+
+		int taps = 0;
+		for(List<Integer> group : groups.values())
+		{
+			taps += group.size();
+		}
+
+		this.offsets = new int[taps];
+		this.groupEnds = new int[groups.size()];
+		this.weights = new double[groups.size()];
+
+		// Flatten the groups, and check if every weight is an integer small enough for int sums
+		int tap = 0;
+		int group = 0;
+		double absoluteSum = 0;
+		boolean integer = true;
+		for(Map.Entry<Double, List<Integer>> entry : groups.entrySet())
+		{
+			for(int offset : entry.getValue())
+			{
+				this.offsets[tap++] = offset;
+			}
+			this.groupEnds[group] = tap;
+			this.weights[group++] = entry.getKey();
+
+			absoluteSum += Math.abs(entry.getKey()) * entry.getValue().size();
+			integer &= entry.getKey() == Math.rint(entry.getKey());
+		}
+
+		if(integer && absoluteSum * MAX_SAMPLE <= Integer.MAX_VALUE)
+		{
+			this.integerWeights = new int[this.weights.length];
+			for(int g = 0; g < this.weights.length; g++)
+			{
+				this.integerWeights[g] = (int) this.weights[g];
+			}
+		}
+	}
+
+
+	/**
+	 * Class constructor
+	 * The offset of every tap is its index in the kernel, so the kernel may be applied along a row or down a column of rows
+	 * @param kernel the one-dimensional kernel
+	 */
+	CompiledKernel(double[] kernel)
+	{
+		this(new double[][] {kernel}, 1);
+	}
+
+
+	/**
+	 * Check if the kernel is applied with int accumulation
+	 * @return true if every weight is an integer and no sum can overflow an int
+	 */
+	public boolean isInteger()
+	{
+		return this.integerWeights != null;
+	}
+
+
+	/**
+	 * Get the number of groups of taps of equal weight
+	 * @return the number of groups
+	 */
+	public int getGroups()
+	{
+		return this.weights.length;
+	}
+
+
+	/**
+	 * Get the first tap of a group
+	 * @param group the group
+	 * @return the index of the tap
+	 */
+	public int getStart(int group)
+	{
+		return group == 0 ? 0 : this.groupEnds[group - 1];
+	}
+
+
+	/**
+	 * Get the tap after the last one of a group
+	 * @param group the group
+	 * @return the index of the tap
+	 */
+	public int getEnd(int group)
+	{
+		return this.groupEnds[group];
+	}
+
+
+	/**
+	 * Get the offset of a tap
+	 * @param tap the index of the tap
+	 * @return the index in the plane relative to the top left corner of the kernel window
+	 */
+	public int getOffset(int tap)
+	{
+		return this.offsets[tap];
+	}
+
+
+	/**
+	 * Get the weight shared by the taps of a group
+	 * @param group the group
+	 * @return the weight
+	 */
+	public double getWeight(int group)
+	{
+		return this.weights[group];
+	}
+
+
+	/**
+	 * Count the multiply-adds over a row that applying the kernel takes, one per tap or pair of taps of equal weight
+	 * @return the number of multiply-adds
+	 */
+	public int getPasses()
+	{
+		int passes = 0;
+		for(int g = 0; g < this.weights.length; g++)
+		{
+			passes += (getEnd(g) - getStart(g) + 1)/2;
+		}
+
+		return passes;
+	}
+
+
+	/**
+	 * Apply an integer kernel to a row, storing the exact sums
+	 * @param src the padded plane
+	 * @param index the index in the plane of the top left corner of the kernel window of the first pixel of the row
+	 * @param sums the array to store the sums, from index 0
+	 * @param width the number of pixels of the row
+	 * @param accumulator the multiply-add of a weight over a row
+	 */
+	public void apply(int[] src, int index, int[] sums, int width, ConvolutionEngine.RowAccumulator accumulator)
+	{
+		Arrays.fill(sums, 0, width, 0);
+		for(int g = 0; g < this.weights.length; g++)
+		{
+			// Add the taps of the group in pairs, each pair costing a single multiplication
+			int tap = getStart(g);
+			for(; tap + 1 < this.groupEnds[g]; tap += 2)
+			{
+				accumulator.accumulate(src, index + this.offsets[tap], index + this.offsets[tap + 1], this.integerWeights[g], sums, 0, width);
+			}
+			if(tap < this.groupEnds[g])
+			{
+				accumulator.accumulate(src, index + this.offsets[tap], this.integerWeights[g], sums, 0, width);
+			}
+		}
+	}
+
+
+	/**
+	 * Apply the kernel to a row, storing the sums in floating point
+	 * @param src the padded plane
+	 * @param index the index in the plane of the top left corner of the kernel window of the first pixel of the row
+	 * @param sums the array to store the sums, from index 0
+	 * @param width the number of pixels of the row
+	 * @param accumulator the multiply-add of a weight over a row
+	 */
+	public void apply(int[] src, int index, double[] sums, int width, ConvolutionEngine.RowAccumulator accumulator)
+	{
+		Arrays.fill(sums, 0, width, 0);
+		for(int g = 0; g < this.weights.length; g++)
+		{
+			// Add the taps of the group in pairs, each pair costing a single multiplication
+			int tap = getStart(g);
+			for(; tap + 1 < this.groupEnds[g]; tap += 2)
+			{
+				accumulator.accumulate(src, index + this.offsets[tap], index + this.offsets[tap + 1], this.weights[g], sums, 0, width);
+			}
+			if(tap < this.groupEnds[g])
+			{
+				accumulator.accumulate(src, index + this.offsets[tap], this.weights[g], sums, 0, width);
+			}
+		}
+	}
+
+
+	/**
+	 * Apply a one-dimensional kernel down a column of rows kept in a ring of slots, row p being stored in slot p % slots
+	 * @param rows the ring of rows
+	 * @param start the index in rows of the first slot
+	 * @param slots the number of slots of the ring, at least the length of the kernel
+	 * @param y the index of the row the first tap reads
+	 * @param sums the array to store the sums, from index 0
+	 * @param width the number of samples of a row
+	 * @param accumulator the multiply-add of a weight over a row
+	 */
+	public void apply(double[] rows, int start, int slots, int y, double[] sums, int width, ConvolutionEngine.RowAccumulator accumulator)
+	{
+		Arrays.fill(sums, 0, width, 0);
+		for(int g = 0; g < this.weights.length; g++)
+		{
+			// Add the taps of the group in pairs, each pair costing a single multiplication
+			int tap = getStart(g);
+			for(; tap + 1 < this.groupEnds[g]; tap += 2)
+			{
+				int row = start + (y + this.offsets[tap]) % slots * width;
+				int otherRow = start + (y + this.offsets[tap + 1]) % slots * width;
+				accumulator.accumulate(rows, row, otherRow, this.weights[g], sums, 0, width);
+			}
+			if(tap < this.groupEnds[g])
+			{
+				accumulator.accumulate(rows, start + (y + this.offsets[tap]) % slots * width, this.weights[g], sums, 0, width);
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package filtering;
+
+import java.util.Arrays;
+
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
+
+/**
+ * Convolution of planar images, one output row at a time
+ * The kernels are compiled first (see CompiledKernel): zero taps are dropped, taps of equal weight are added in pairs
+ * before being multiplied, and integer kernels are summed exactly in ints
+ * Every tap or pair of taps is applied to a whole row as a multiply-add over contiguous samples, which runs on the
+ * JDK Vector API when the jdk.incubator.vector module is available (--add-modules jdk.incubator.vector)
+ * and on a plain loop otherwise
+ * Both give exactly the same results
+ * Results are stored unclipped and truncated; sums within 1e-6 of an integer are taken as that integer, so that
+ * the rounding of a normalized kernel does not push the exact sum of a flat area one level below it, and so that
+ * every strategy of the convolution planner gives the same pixels
+ */
+public final class ConvolutionEngine
+{
+	/**
+	 * Multiply-add of one kernel tap over part of a row
+	 */
+	interface RowAccumulator
+	{
+		/**
+		 * Add weight * src[offset + x] to sums[x] for every x from the first to the last column
+		 * @param src the plane of the original image
+		 * @param offset the index in the plane added to every column
+		 * @param weight the weight of the kernel tap
+		 * @param sums the sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(int[] src, int offset, double weight, double[] sums, int from, int to);
+
+
+		/**
+		 * Add weight * src[offset + x] to sums[x] for every x from the first to the last column
+		 * @param src the intermediate results of a previous pass
+		 * @param offset the index in the results added to every column
+		 * @param weight the weight of the kernel tap
+		 * @param sums the sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(double[] src, int offset, double weight, double[] sums, int from, int to);
+
+
+		/**
+		 * Add weight * (src[offset + x] + src[otherOffset + x]) to sums[x] for every x from the first to the last column
+		 * @param src the plane of the original image
+		 * @param offset the index in the plane of the first tap added to every column
+		 * @param otherOffset the index in the plane of the second tap added to every column
+		 * @param weight the weight shared by both kernel taps
+		 * @param sums the sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(int[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to);
+
+
+		/**
+		 * Add weight * (src[offset + x] + src[otherOffset + x]) to sums[x] for every x from the first to the last column
+		 * @param src the intermediate results of a previous pass
+		 * @param offset the index in the results of the first tap added to every column
+		 * @param otherOffset the index in the results of the second tap added to every column
+		 * @param weight the weight shared by both kernel taps
+		 * @param sums the sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(double[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to);
+
+
+		/**
+		 * Add weight * src[offset + x] to sums[x] for every x from the first to the last column, in exact int arithmetic
+		 * @param src the plane of the original image
+		 * @param offset the index in the plane added to every column
+		 * @param weight the integer weight of the kernel tap
+		 * @param sums the integer sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(int[] src, int offset, int weight, int[] sums, int from, int to);
+
+
+		/**
+		 * Add weight * (src[offset + x] + src[otherOffset + x]) to sums[x] for every x from the first to the last column,
+		 * in exact int arithmetic
+		 * @param src the plane of the original image
+		 * @param offset the index in the plane of the first tap added to every column
+		 * @param otherOffset the index in the plane of the second tap added to every column
+		 * @param weight the integer weight shared by both kernel taps
+		 * @param sums the integer sums of the row
+		 * @param from the first column
+		 * @param to the column after the last one
+		 */
+		public void accumulate(int[] src, int offset, int otherOffset, int weight, int[] sums, int from, int to);
+	}
+
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final RowAccumulator accumulator = createAccumulator();
+
+
+	private ConvolutionEngine()
+	{
+
+	}
+
+
+	/**
+	 * Check if the rows are accumulated with the Vector API
+	 * @return true if the Vector API is used, false if the scalar loop is used
+	 */
+	public static boolean isVectorized()
+	{
+		return !(accumulator instanceof ScalarAccumulator);
+	}
+
+
+	/**
+	 * Get the row accumulator, for the other engines applying compiled kernels
+	 * @return the row accumulator on the Vector API if it is used, on the scalar loop otherwise
+	 */
+	static RowAccumulator getAccumulator()
+	{
+		return accumulator;
+	}
+
+
+	/**
+	 * Perform the convolution on every pixel of the given image
+	 * The image is extended beyond its edges by the border mode, and the results are stored unclipped in the processed image
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolve(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode)
+	{
+		int radiusX = kernel.length/2;
+		int radiusY = kernel[0].length/2;
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		// Pad the image, so that every tap of every row lies inside the padded image
+		PlanarImage paddedImage = image.pad(radiusX, radiusY, borderMode);
+		CompiledKernel compiledKernel = new CompiledKernel(kernel, paddedImage.getStride());
+
+		// Take the thread's scratch arrays to store the sums of one row, in floating point or exactly
+		double[] sums = BufferPool.getDoubleScratch(0, width);
+		int[] integerSums = BufferPool.getIntScratch(0, width);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			for(int y = 0; y < height; y++)
+			{
+				// The kernel window of pixel(x, y) of the image starts at pixel(x, y) of the padded image
+				int row = paddedImage.getIndex(0, y);
+				int index = processedImage.getIndex(0, y);
+
+				if(compiledKernel.isInteger())
+				{
+					compiledKernel.apply(src, row, integerSums, width, accumulator);
+					System.arraycopy(integerSums, 0, dst, index, width);
+					continue;
+				}
+
+				compiledKernel.apply(src, row, sums, width, accumulator);
+				for(int x = 0; x < width; x++)
+				{
+					dst[index + x] = toSample(sums[x]);
+				}
+			}
+		}
+
+		BufferPool.release(paddedImage);
+	}
+
+
+	/**
+	 * Perform the convolution with a separable kernel on every pixel of the given image
+	 * The kernel is the outer product kernelX[i] * kernelY[j], applied as a horizontal pass followed by a vertical pass,
+	 * so each pixel costs kernelX.length + kernelY.length taps instead of kernelX.length * kernelY.length
+	 * The image is extended beyond its edges by the border mode, and the results are stored unclipped in the processed image
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolveSeparable(PlanarImage image, PlanarImage processedImage, double[] kernelX, double[] kernelY, BorderMode borderMode)
+	{
+		convolveSeparable(image, kernelX, kernelY, borderMode, (band, y, row) ->
+			System.arraycopy(row, 0, processedImage.getPlane(band), processedImage.getIndex(0, y), image.getWidth()));
+	}
+
+
+	/**
+	 * Perform the convolution with a separable kernel on every pixel of the given image, handing every output row to the next stage
+	 * The rows are produced in order, one color channel after the other, and truncated as convolveSeparable stores them
+	 * The image is extended beyond its edges by the border mode, and read from a padded copy, so the next stage may overwrite it
+	 * @param image the original image
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @param sink the stage taking the output rows
+	 */
+	static void convolveSeparable(PlanarImage image, double[] kernelX, double[] kernelY, BorderMode borderMode, RowSink sink)
+	{
+		int radiusX = kernelX.length/2;
+		int radiusY = kernelY.length/2;
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		PlanarImage paddedImage = image.pad(radiusX, radiusY, borderMode);
+		CompiledKernel compiledKernelX = new CompiledKernel(kernelX);
+		CompiledKernel compiledKernelY = new CompiledKernel(kernelY);
+
+		// Take the thread's scratch arrays to store a horizontally filtered row, the last kernelY.length of these rows
+		// (row p of the padded image in slot p % kernelY.length), and the sums of an output row
+		double[] rowSums = BufferPool.getDoubleScratch(0, width);
+		double[] rows = BufferPool.getDoubleScratch(1, kernelY.length * width);
+		double[] sums = BufferPool.getDoubleScratch(2, width);
+		int[] output = BufferPool.getIntScratch(3, width);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+
+			// Filter the rows needed by the first output row but its last one
+			for(int row = 0; row < kernelY.length - 1; row++)
+			{
+				filterRow(src, paddedImage.getIndex(0, row), compiledKernelX, rowSums, rows, (row % kernelY.length) * width, width);
+			}
+
+			for(int y = 0; y < height; y++)
+			{
+				// Filter the only new row the output row needs, which replaces the one no longer needed
+				int row = y + kernelY.length - 1;
+				filterRow(src, paddedImage.getIndex(0, row), compiledKernelX, rowSums, rows, (row % kernelY.length) * width, width);
+
+				// Perform the vertical pass on the filtered rows y to y + kernelY.length - 1 of the padded image
+				compiledKernelY.apply(rows, 0, kernelY.length, y, sums, width, accumulator);
+
+				for(int x = 0; x < width; x++)
+				{
+					output[x] = toSample(sums[x]);
+				}
+				sink.accept(band, y, output);
+			}
+		}
+
+		BufferPool.release(paddedImage);
+	}
+
+
+	/**
+	 * Truncate a result to an integer sample, taking results within 1e-6 of an integer as that integer
+	 * @param value the result of the convolution
+	 * @return the sample
+	 */
+	static int toSample(double value)
+	{
+		double nearest = Math.rint(value);
+		return Math.abs(value - nearest) < 1e-6 ? (int) nearest : (int) value;
+	}
+
+
+	/**
+	 * Perform the horizontal pass on a row of the padded image and store it in its slot of the filtered rows
+	 * @param src the plane of the padded image
+	 * @param index the index of the first pixel of the row in the plane
+	 * @param kernelX the compiled horizontal kernel
+	 * @param rowSums the array to accumulate the row in
+	 * @param rows the filtered rows
+	 * @param slot the index of the slot of the row in the filtered rows
+	 * @param width the width of the original image
+	 */
+	private static void filterRow(int[] src, int index, CompiledKernel kernelX, double[] rowSums, double[] rows, int slot, int width)
+	{
+		kernelX.apply(src, index, rowSums, width, accumulator);
+		System.arraycopy(rowSums, 0, rows, slot, width);
+	}
+
+
+	/**
+	 * Use the Vector API if its module was loaded, the scalar loop otherwise
+	 * @return the row accumulator
+	 */
+	private static RowAccumulator createAccumulator()
+	{
+		if(ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent())
+		{
+			try
+			{
+				// Loaded by name, so that this class never links against the incubator module
+				return (RowAccumulator) Class.forName("filtering.VectorAccumulator").getDeclaredConstructor().newInstance();
+			}
+			catch(ReflectiveOperationException | LinkageError e)
+			{
+				// Fall back to the scalar loop
+			}
+		}
+
+		return new ScalarAccumulator();
+	}
+
+
+	private static class ScalarAccumulator implements RowAccumulator
+	{
+		@Override
+		public void accumulate(int[] src, int offset, double weight, double[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * src[offset + x];
+			}
+		}
+
+
+		@Override
+		public void accumulate(double[] src, int offset, double weight, double[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * src[offset + x];
+			}
+		}
+
+
+		@Override
+		public void accumulate(int[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+			}
+		}
+
+
+		@Override
+		public void accumulate(double[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+			}
+		}
+
+
+		@Override
+		public void accumulate(int[] src, int offset, int weight, int[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * src[offset + x];
+			}
+		}
+
+
+		@Override
+		public void accumulate(int[] src, int offset, int otherOffset, int weight, int[] sums, int from, int to)
+		{
+			for(int x = from; x < to; x++)
+			{
+				sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+			}
+		}
+	}
+}
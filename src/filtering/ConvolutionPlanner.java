@@ -0,0 +1,449 @@
+package filtering;
+
+import processing.BorderMode;
+import processing.IntegralImage;
+import processing.PlanarImage;
+
+/**
+ * Chooses how a kernel is convolved with an image, from the shape of the kernel and a cost model of every engine
+ * A kernel whose weights are all equal is a box, whose sums come from a summed-area table in constant time;
+ * a kernel that is the outer product of two vectors is separable, and costs kernelWidth + kernelHeight taps per pixel;
+ * any other kernel costs one pass per non-zero weight, or pair of equal weights, of its compiled form directly
+ * (see CompiledKernel), or O(log N) per pixel through the FFT
+ * The cost of every engine is estimated in nanoseconds per sample, with constants measured beforehand;
+ * calibrate() measures them again on the running machine
+ */
+public final class ConvolutionPlanner
+{
+	/**
+	 * The ways a kernel may be convolved with an image
+	 */
+	public enum Strategy
+	{
+		DIRECT, SEPARABLE, INTEGRAL_IMAGE, FFT
+	}
+
+
+	// Relative tolerance for taking a kernel as a box or as separable
+	private static final double TOLERANCE = 1e-9;
+
+	// Cost model, in nanoseconds per sample: per pass of the direct and separable engines, and per N^2 log2(N) of an FFT block
+	private static volatile double directTapCost = ConvolutionEngine.isVectorized() ? 0.15 : 0.6;
+	private static volatile double directBaseCost = 8;
+	private static volatile double separableTapCost = ConvolutionEngine.isVectorized() ? 0.22 : 0.5;
+	private static volatile double separableBaseCost = 4;
+	private static volatile double integralImageCost = 8;
+	private static volatile double fftCost = 4.5;
+
+
+	private ConvolutionPlanner()
+	{
+
+	}
+
+
+	/**
+	 * Perform the convolution on every pixel of the given image, with the strategy of the lowest estimated cost
+	 * The results are those of ConvolutionEngine.convolve, up to the rounding of the strategy
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolve(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode)
+	{
+		double[][] factors = factorize(kernel);
+		Strategy strategy = plan(kernel, factors, image.getWidth(), image.getHeight());
+
+		switch(strategy)
+		{
+			case INTEGRAL_IMAGE:
+				convolveBox(image, processedImage, kernel.length/2, kernel[0].length/2, kernel[0][0], borderMode);
+				break;
+
+			case SEPARABLE:
+				ConvolutionEngine.convolveSeparable(image, processedImage, factors[0], factors[1], borderMode);
+				break;
+
+			case FFT:
+				FFTConvolutionEngine.convolve(image, processedImage, kernel, borderMode);
+				break;
+
+			default:
+				ConvolutionEngine.convolve(image, processedImage, kernel, borderMode);
+		}
+	}
+
+
+	/**
+	 * Perform the convolution with a separable kernel, the outer product kernelX[i] * kernelY[j], on every pixel of the given image,
+	 * with the strategy of the lowest estimated cost
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolveSeparable(PlanarImage image, PlanarImage processedImage, double[] kernelX, double[] kernelY, BorderMode borderMode)
+	{
+		Strategy strategy = planSeparable(kernelX, kernelY, image.getWidth(), image.getHeight());
+
+		if(strategy == Strategy.INTEGRAL_IMAGE)
+		{
+			convolveBox(image, processedImage, kernelX.length/2, kernelY.length/2, kernelX[0] * kernelY[0], borderMode);
+		}
+		else if(strategy == Strategy.FFT)
+		{
+			FFTConvolutionEngine.convolve(image, processedImage, getOuterProduct(kernelX, kernelY), borderMode);
+		}
+		else
+		{
+			ConvolutionEngine.convolveSeparable(image, processedImage, kernelX, kernelY, borderMode);
+		}
+	}
+
+
+	/**
+	 * Choose the strategy of the lowest estimated cost for a kernel
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the strategy
+	 */
+	public static Strategy plan(double[][] kernel, int width, int height)
+	{
+		return plan(kernel, factorize(kernel), width, height);
+	}
+
+
+	/**
+	 * Choose the strategy of the lowest estimated cost for a separable kernel
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the strategy, other than DIRECT
+	 */
+	public static Strategy planSeparable(double[] kernelX, double[] kernelY, int width, int height)
+	{
+		Strategy strategy = Strategy.SEPARABLE;
+		double cost = getSeparableCost(kernelX, kernelY);
+
+		// A box costs the same whatever its size, but building the summed-area table costs more than a few taps
+		if(isConstant(kernelX) && isConstant(kernelY) && integralImageCost < cost)
+		{
+			strategy = Strategy.INTEGRAL_IMAGE;
+			cost = integralImageCost;
+		}
+
+		if(getFFTCost(kernelX.length, kernelY.length, width, height) < cost)
+		{
+			strategy = Strategy.FFT;
+		}
+
+		return strategy;
+	}
+
+
+	/**
+	 * Estimate the cost of every strategy on the running machine, by timing each engine on a synthetic image
+	 * Takes about a second; the estimates are used by every later plan
+	 */
+	public static void calibrate()
+	{
+		PlanarImage image = new PlanarImage(256, 256, 1);
+		for(int i = 0; i < image.getPlane(0).length; i++)
+		{
+			image.getPlane(0)[i] = (i * 7919) & 0xFF;
+		}
+		PlanarImage processedImage = PlanarImage.createCompatible(image);
+		double samples = image.getWidth() * image.getHeight();
+
+		// Time two kernel sizes per engine, and take the slope and intercept of the cost
+		double[][] small = getOuterProduct(new double[] {1, 2, 1}, new double[] {1, 2, 1});
+		double[] largeRow = new double[31];
+		for(int i = 0; i < largeRow.length; i++)
+		{
+			largeRow[i] = 16 - Math.abs(i - 15);
+		}
+		double[][] large = getOuterProduct(largeRow, largeRow);
+		double directSmall = time(() -> ConvolutionEngine.convolve(image, processedImage, small, BorderMode.DEFAULT))/samples;
+		double directLarge = time(() -> ConvolutionEngine.convolve(image, processedImage, large, BorderMode.DEFAULT))/samples;
+		int smallPasses = getPasses(small);
+		int largePasses = getPasses(large);
+		directTapCost = Math.max((directLarge - directSmall)/(largePasses - smallPasses), 1e-3);
+		directBaseCost = Math.max(directSmall - smallPasses * directTapCost, 0);
+
+		double[] smallRow = {1, 2, 1};
+		double separableSmall = time(() -> ConvolutionEngine.convolveSeparable(image, processedImage, smallRow, smallRow, BorderMode.DEFAULT))/samples;
+		double separableLarge = time(() -> ConvolutionEngine.convolveSeparable(image, processedImage, largeRow, largeRow, BorderMode.DEFAULT))/samples;
+		separableTapCost = Math.max((separableLarge - separableSmall)/(getSeparablePasses(largeRow, largeRow) - getSeparablePasses(smallRow, smallRow)), 1e-3);
+		separableBaseCost = Math.max(separableSmall - getSeparablePasses(smallRow, smallRow) * separableTapCost, 0);
+
+		integralImageCost = time(() -> convolveBox(image, processedImage, 7, 7, 1.0/225, BorderMode.DEFAULT))/samples;
+
+		// The FFT cost is per N^2 log2(N) of every block, spread over the samples
+		double fft = time(() -> FFTConvolutionEngine.convolve(image, processedImage, large, BorderMode.DEFAULT))/samples;
+		fftCost = fft/getFFTWork(31, 31, image.getWidth(), image.getHeight());
+	}
+
+
+	/**
+	 * Choose the strategy of the lowest estimated cost for a kernel whose factors have been looked for
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @param factors the horizontal and vertical factors of the kernel, or null if it is not separable
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the strategy
+	 */
+	private static Strategy plan(double[][] kernel, double[][] factors, int width, int height)
+	{
+		// Zero weights are skipped by the direct engine, so sparse kernels stay direct
+		Strategy strategy = Strategy.DIRECT;
+		double cost = directBaseCost + directTapCost * getPasses(kernel);
+
+		if(factors != null && getSeparableCost(factors[0], factors[1]) < cost)
+		{
+			strategy = Strategy.SEPARABLE;
+			cost = getSeparableCost(factors[0], factors[1]);
+		}
+
+		if(factors != null && isConstant(factors[0]) && isConstant(factors[1]) && integralImageCost < cost)
+		{
+			strategy = Strategy.INTEGRAL_IMAGE;
+			cost = integralImageCost;
+		}
+
+		if(getFFTCost(kernel.length, kernel[0].length, width, height) < cost)
+		{
+			strategy = Strategy.FFT;
+		}
+
+		return strategy;
+	}
+
+
+	/**
+	 * Estimate the cost of the separable engine per sample
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @return the cost in nanoseconds
+	 */
+	private static double getSeparableCost(double[] kernelX, double[] kernelY)
+	{
+		return separableBaseCost + separableTapCost * getSeparablePasses(kernelX, kernelY);
+	}
+
+
+	/**
+	 * Count the passes over a row the direct engine takes for a kernel
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @return the number of passes of the compiled kernel
+	 */
+	private static int getPasses(double[][] kernel)
+	{
+		return new CompiledKernel(kernel, kernel.length).getPasses();
+	}
+
+
+	/**
+	 * Count the passes over a row the separable engine takes for a kernel
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @return the number of passes of both compiled kernels
+	 */
+	private static int getSeparablePasses(double[] kernelX, double[] kernelY)
+	{
+		return new CompiledKernel(kernelX).getPasses() + new CompiledKernel(kernelY).getPasses();
+	}
+
+
+	/**
+	 * Estimate the cost of the FFT engine per sample
+	 * @param kernelWidth the width of the kernel
+	 * @param kernelHeight the height of the kernel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the cost in nanoseconds
+	 */
+	private static double getFFTCost(int kernelWidth, int kernelHeight, int width, int height)
+	{
+		return fftCost * getFFTWork(kernelWidth, kernelHeight, width, height);
+	}
+
+
+	/**
+	 * Count the N^2 log2(N) of all the blocks the FFT engine transforms, per sample
+	 * The FFT is ruled out with an infinite work when the blocks are no larger than the kernel, or when the image is so
+	 * small that its blocks are cut below the engine's smallest worthwhile block
+	 * @param kernelWidth the width of the kernel
+	 * @param kernelHeight the height of the kernel
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return the work per sample
+	 */
+	private static double getFFTWork(int kernelWidth, int kernelHeight, int width, int height)
+	{
+		int blockSize = FFTConvolutionEngine.getBlockSize(kernelWidth, kernelHeight, width + kernelWidth/2 * 2, height + kernelHeight/2 * 2);
+		int kernelSize = Math.max(kernelWidth, kernelHeight);
+		if(blockSize <= kernelSize || blockSize < FFTConvolutionEngine.MIN_BLOCK_SIZE)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		int outputWidth = blockSize - kernelWidth + 1;
+		int outputHeight = blockSize - kernelHeight + 1;
+		int blocksX = (width + outputWidth - 1)/outputWidth;
+		int blocksY = (height + outputHeight - 1)/outputHeight;
+		double blockWork = (double) blockSize * blockSize * Integer.numberOfTrailingZeros(blockSize);
+		return blocksX * blocksY * blockWork/((double) width * height);
+	}
+
+
+	/**
+	 * Convolve a box kernel, whose weights all equal weight, from the window sums of a summed-area table
+	 * Sums within 1e-6 of an integer are taken as that integer, as the other engines do
+	 * @param image the original image
+	 * @param processedImage the image to store the results
+	 * @param radiusX the horizontal radius of the box
+	 * @param radiusY the vertical radius of the box
+	 * @param weight the weight of every pixel of the box
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	private static void convolveBox(PlanarImage image, PlanarImage processedImage, int radiusX, int radiusY, double weight, BorderMode borderMode)
+	{
+		IntegralImage integralImage = new IntegralImage(image, radiusX, radiusY, borderMode, false);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] dst = processedImage.getPlane(band);
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				for(int x = 0, index = processedImage.getIndex(0, y); x < image.getWidth(); x++)
+				{
+					dst[index + x] = ConvolutionEngine.toSample(weight * integralImage.getSum(band, x - radiusX, y - radiusY, x + radiusX, y + radiusY));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Find the vectors whose outer product is the kernel, if there are any
+	 * The column and row through the largest weight are the candidates, checked against every weight
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @return the horizontal and vertical factors, or null if the kernel is not separable
+	 */
+	private static double[][] factorize(double[][] kernel)
+	{
+		// Find the largest weight
+		int pivotX = 0;
+		int pivotY = 0;
+		for(int i = 0; i < kernel.length; i++)
+		{
+			for(int j = 0; j < kernel[0].length; j++)
+			{
+				if(Math.abs(kernel[i][j]) > Math.abs(kernel[pivotX][pivotY]))
+				{
+					pivotX = i;
+					pivotY = j;
+				}
+			}
+		}
+
+		double pivot = kernel[pivotX][pivotY];
+		if(pivot == 0)
+		{
+			return null;
+		}
+
+		// kernel[i][j] = kernelX[i] * kernelY[j], with kernelY[pivotY] = 1
+		double[] kernelX = new double[kernel.length];
+		double[] kernelY = new double[kernel[0].length];
+		for(int i = 0; i < kernel.length; i++)
+		{
+			kernelX[i] = kernel[i][pivotY];
+		}
+		for(int j = 0; j < kernel[0].length; j++)
+		{
+			kernelY[j] = kernel[pivotX][j]/pivot;
+		}
+
+		for(int i = 0; i < kernel.length; i++)
+		{
+			for(int j = 0; j < kernel[0].length; j++)
+			{
+				if(Math.abs(kernel[i][j] - kernelX[i] * kernelY[j]) > TOLERANCE * Math.abs(pivot))
+				{
+					return null;
+				}
+			}
+		}
+
+		return new double[][] {kernelX, kernelY};
+	}
+
+
+	/**
+	 * Check if all the weights of a kernel are equal
+	 * @param kernel the kernel
+	 * @return true if the weights are equal, up to the tolerance
+	 */
+	private static boolean isConstant(double[] kernel)
+	{
+		for(double weight : kernel)
+		{
+			if(Math.abs(weight - kernel[0]) > TOLERANCE * Math.abs(kernel[0]))
+			{
+				return false;
+			}
+		}
+
+		return kernel[0] != 0;
+	}
+
+
+	/**
+	 * Build the 2D kernel whose weights are kernelX[i] * kernelY[j]
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @return the kernel, indexed as kernel[x][y]
+	 */
+	private static double[][] getOuterProduct(double[] kernelX, double[] kernelY)
+	{
+		double[][] kernel = new double[kernelX.length][kernelY.length];
+		for(int i = 0; i < kernelX.length; i++)
+		{
+			for(int j = 0; j < kernelY.length; j++)
+			{
+				kernel[i][j] = kernelX[i] * kernelY[j];
+			}
+		}
+
+		return kernel;
+	}
+
+
+	/**
+	 * Time an operation, taking the fastest of five runs after warm-up runs that let the JIT compile it
+	 * @param operation the operation
+	 * @return the time in nanoseconds
+	 */
+	private static double time(Runnable operation)
+	{
+		for(int i = 0; i < 5; i++)
+		{
+			operation.run();
+		}
+
+		long best = Long.MAX_VALUE;
+		for(int i = 0; i < 5; i++)
+		{
+			long start = System.nanoTime();
+			operation.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		return best;
+	}
+}
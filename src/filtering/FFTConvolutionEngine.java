@@ -0,0 +1,355 @@
+package filtering;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
+
+/**
+ * Convolution of planar images in the frequency domain, for kernels too large for ConvolutionEngine
+ * The padded image is cut into overlapping blocks of N x N pixels (overlap-save): every block is transformed with
+ * a real-to-complex 2D FFT, multiplied by the spectrum of the kernel and transformed back, and the pixels whose
+ * mask lies inside the block are kept. Each pixel costs O(log N) whatever the size of the kernel
+ * The spectra of the last few kernels are cached, so that filtering a batch of images with the same kernel
+ * transforms the kernel only once
+ * Results are stored unclipped and truncated as ConvolutionEngine does; sums within 1e-6 of an integer are taken as
+ * that integer, so that the rounding errors of the transforms do not push exact sums below it
+ */
+public final class FFTConvolutionEngine
+{
+	// Number of kernel spectra kept for reuse
+	private static final int CACHED_SPECTRA = 16;
+
+	// Smallest block transformed, below which the transforms cost more than they save
+	static final int MIN_BLOCK_SIZE = 64;
+
+	// Smallest size of the blocks the real transform handles
+	private static final int MIN_TRANSFORM_SIZE = 2;
+
+	private static final Map<SpectrumKey, double[][]> spectra = new LinkedHashMap<SpectrumKey, double[][]>(CACHED_SPECTRA, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SpectrumKey, double[][]> eldest)
+		{
+			return size() > CACHED_SPECTRA;
+		}
+	};
+
+
+	private FFTConvolutionEngine()
+	{
+
+	}
+
+
+	/**
+	 * Perform the convolution on every pixel of the given image
+	 * The result is the same as ConvolutionEngine.convolve, up to the rounding of the transforms
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolve(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode)
+	{
+		int kernelWidth = kernel.length;
+		int kernelHeight = kernel[0].length;
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		PlanarImage paddedImage = image.pad(kernelWidth/2, kernelHeight/2, borderMode);
+		int paddedWidth = paddedImage.getWidth();
+		int paddedHeight = paddedImage.getHeight();
+
+		// Every block yields (N - kernelWidth + 1) x (N - kernelHeight + 1) pixels
+		int blockSize = getBlockSize(kernelWidth, kernelHeight, paddedWidth, paddedHeight);
+		int outputWidth = blockSize - kernelWidth + 1;
+		int outputHeight = blockSize - kernelHeight + 1;
+		double scale = 1.0/((double) blockSize * blockSize);
+
+		double[][] kernelSpectrum = getSpectrum(kernel, blockSize);
+
+		// The block, and its spectrum with the N/2 + 1 columns of non-negative frequencies (the others are their conjugates)
+		double[] block = new double[blockSize * blockSize];
+		int spectrumWidth = blockSize/2 + 1;
+		double[] re = new double[blockSize * spectrumWidth];
+		double[] im = new double[blockSize * spectrumWidth];
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			for(int blockY = 0; blockY < height; blockY += outputHeight)
+			{
+				for(int blockX = 0; blockX < width; blockX += outputWidth)
+				{
+					// Copy the block from the padded image, with zeros beyond its edges
+					for(int v = 0; v < blockSize; v++)
+					{
+						int row = v * blockSize;
+						int columns = blockY + v < paddedHeight ? Math.max(Math.min(blockSize, paddedWidth - blockX), 0) : 0;
+						for(int u = 0; u < columns; u++)
+						{
+							block[row + u] = src[paddedImage.getIndex(blockX + u, blockY + v)];
+						}
+						Arrays.fill(block, row + columns, row + blockSize, 0);
+					}
+
+					// Multiply the spectrum of the block by the spectrum of the kernel
+					forward(block, re, im, blockSize);
+					for(int i = 0; i < re.length; i++)
+					{
+						double r = re[i] * kernelSpectrum[0][i] - im[i] * kernelSpectrum[1][i];
+						im[i] = re[i] * kernelSpectrum[1][i] + im[i] * kernelSpectrum[0][i];
+						re[i] = r;
+					}
+					inverse(re, im, block, blockSize);
+
+					// Keep the pixels whose mask lies inside the block
+					for(int y = 0; y < Math.min(outputHeight, height - blockY); y++)
+					{
+						int index = processedImage.getIndex(blockX, blockY + y);
+						for(int x = 0; x < Math.min(outputWidth, width - blockX); x++)
+						{
+							dst[index + x] = ConvolutionEngine.toSample(block[y * blockSize + x] * scale);
+						}
+					}
+				}
+			}
+		}
+
+		BufferPool.release(paddedImage);
+	}
+
+
+	/**
+	 * Remove every cached kernel spectrum
+	 */
+	public static void clearCache()
+	{
+		synchronized(spectra)
+		{
+			spectra.clear();
+		}
+	}
+
+
+	/**
+	 * Choose the size of the blocks: a power of two at least twice the kernel, so that most of every block is kept,
+	 * but no larger than needed to hold the whole padded image
+	 * The block is never smaller than the kernel, so that it yields at least one pixel, nor than 2, the smallest
+	 * size the real transform handles
+	 * @param kernelWidth the width of the kernel
+	 * @param kernelHeight the height of the kernel
+	 * @param paddedWidth the width of the padded image
+	 * @param paddedHeight the height of the padded image
+	 * @return the width and height of the blocks
+	 */
+	static int getBlockSize(int kernelWidth, int kernelHeight, int paddedWidth, int paddedHeight)
+	{
+		int kernelSize = Integer.highestOneBit(Math.max(kernelWidth, kernelHeight) * 2 - 1);
+		int blockSize = Math.max(kernelSize * 2, MIN_BLOCK_SIZE);
+		int imageSize = Integer.highestOneBit(Math.max(paddedWidth, paddedHeight) * 2 - 1);
+		return Math.max(Math.min(blockSize, imageSize), Math.max(kernelSize, MIN_TRANSFORM_SIZE));
+	}
+
+
+	/**
+	 * Get the spectrum of a kernel for blocks of the given size, from the cache or by transforming it
+	 * The kernel is flipped and wrapped around the origin of the block, so that multiplying spectra gives
+	 * sum(kernel[i][j] * pixel(x + i, y + j)) at pixel(x, y) of the block
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @param blockSize the width and height of the blocks
+	 * @return the real and imaginary parts of the spectrum
+	 */
+	private static double[][] getSpectrum(double[][] kernel, int blockSize)
+	{
+		SpectrumKey key = new SpectrumKey(kernel, blockSize);
+		synchronized(spectra)
+		{
+			double[][] spectrum = spectra.get(key);
+			if(spectrum != null)
+			{
+				return spectrum;
+			}
+		}
+
+		double[] block = new double[blockSize * blockSize];
+		for(int i = 0; i < kernel.length; i++)
+		{
+			for(int j = 0; j < kernel[0].length; j++)
+			{
+				block[((blockSize - j) % blockSize) * blockSize + (blockSize - i) % blockSize] = kernel[i][j];
+			}
+		}
+
+		int spectrumWidth = blockSize/2 + 1;
+		double[][] spectrum = new double[2][blockSize * spectrumWidth];
+		forward(block, spectrum[0], spectrum[1], blockSize);
+
+		synchronized(spectra)
+		{
+			spectra.put(key, spectrum);
+		}
+
+		return spectrum;
+	}
+
+
+	/**
+	 * Transform a real block into the N/2 + 1 columns of non-negative horizontal frequencies of its spectrum
+	 * Pairs of rows are transformed together as the real and imaginary parts of one complex row, then separated by symmetry
+	 * @param block the real block, row by row
+	 * @param re the real parts of the spectrum, N rows of N/2 + 1 columns
+	 * @param im the imaginary parts of the spectrum
+	 * @param blockSize the width and height of the block
+	 */
+	private static void forward(double[] block, double[] re, double[] im, int blockSize)
+	{
+		FourierTransform transform = FourierTransform.of(blockSize);
+		int spectrumWidth = blockSize/2 + 1;
+		double[] rowRe = new double[blockSize];
+		double[] rowIm = new double[blockSize];
+
+		for(int y = 0; y < blockSize; y += 2)
+		{
+			System.arraycopy(block, y * blockSize, rowRe, 0, blockSize);
+			System.arraycopy(block, (y + 1) * blockSize, rowIm, 0, blockSize);
+			transform.transform(rowRe, rowIm, false);
+
+			// With Z = FFT(a + ib): FFT(a)[k] = (Z[k] + conj(Z[N - k]))/2 and FFT(b)[k] = (Z[k] - conj(Z[N - k]))/2i
+			for(int k = 0; k < spectrumWidth; k++)
+			{
+				int mirrored = (blockSize - k) % blockSize;
+				re[y * spectrumWidth + k] = (rowRe[k] + rowRe[mirrored])/2;
+				im[y * spectrumWidth + k] = (rowIm[k] - rowIm[mirrored])/2;
+				re[(y + 1) * spectrumWidth + k] = (rowIm[k] + rowIm[mirrored])/2;
+				im[(y + 1) * spectrumWidth + k] = (rowRe[mirrored] - rowRe[k])/2;
+			}
+		}
+
+		transformColumns(re, im, blockSize, transform, false);
+	}
+
+
+	/**
+	 * Transform the N/2 + 1 columns of a spectrum back into a real block, multiplied by N^2
+	 * @param re the real parts of the spectrum, overwritten
+	 * @param im the imaginary parts of the spectrum, overwritten
+	 * @param block the array to store the real block, row by row
+	 * @param blockSize the width and height of the block
+	 */
+	private static void inverse(double[] re, double[] im, double[] block, int blockSize)
+	{
+		FourierTransform transform = FourierTransform.of(blockSize);
+		int spectrumWidth = blockSize/2 + 1;
+		double[] rowRe = new double[blockSize];
+		double[] rowIm = new double[blockSize];
+
+		transformColumns(re, im, blockSize, transform, true);
+
+		for(int y = 0; y < blockSize; y += 2)
+		{
+			// Rebuild the full spectra of two real rows a and b from their halves, and transform a + ib back at once
+			for(int k = 0; k < blockSize; k++)
+			{
+				boolean mirrored = k >= spectrumWidth;
+				int column = mirrored ? blockSize - k : k;
+				double aRe = re[y * spectrumWidth + column];
+				double aIm = mirrored ? -im[y * spectrumWidth + column] : im[y * spectrumWidth + column];
+				double bRe = re[(y + 1) * spectrumWidth + column];
+				double bIm = mirrored ? -im[(y + 1) * spectrumWidth + column] : im[(y + 1) * spectrumWidth + column];
+				rowRe[k] = aRe - bIm;
+				rowIm[k] = aIm + bRe;
+			}
+
+			transform.transform(rowRe, rowIm, true);
+			System.arraycopy(rowRe, 0, block, y * blockSize, blockSize);
+			System.arraycopy(rowIm, 0, block, (y + 1) * blockSize, blockSize);
+		}
+	}
+
+
+	/**
+	 * Transform every column of a half spectrum
+	 * @param re the real parts of the spectrum
+	 * @param im the imaginary parts of the spectrum
+	 * @param blockSize the height of the columns
+	 * @param transform the transform of length blockSize
+	 * @param inverse true for the inverse transform, false for the forward one
+	 */
+	private static void transformColumns(double[] re, double[] im, int blockSize, FourierTransform transform, boolean inverse)
+	{
+		int spectrumWidth = blockSize/2 + 1;
+		double[] columnRe = new double[blockSize];
+		double[] columnIm = new double[blockSize];
+
+		for(int k = 0; k < spectrumWidth; k++)
+		{
+			for(int y = 0; y < blockSize; y++)
+			{
+				columnRe[y] = re[y * spectrumWidth + k];
+				columnIm[y] = im[y * spectrumWidth + k];
+			}
+
+			transform.transform(columnRe, columnIm, inverse);
+
+			for(int y = 0; y < blockSize; y++)
+			{
+				re[y * spectrumWidth + k] = columnRe[y];
+				im[y * spectrumWidth + k] = columnIm[y];
+			}
+		}
+	}
+
+
+	/**
+	 * A kernel and a block size, compared by the values of the kernel
+	 */
+	private static final class SpectrumKey
+	{
+		private double[][] kernel;
+		private int blockSize;
+		private int hash;
+
+
+		private SpectrumKey(double[][] kernel, int blockSize)
+		{
+			// Copy the kernel, so that a caller changing its array later does not change the key
+			this.kernel = new double[kernel.length][];
+			for(int i = 0; i < kernel.length; i++)
+			{
+				this.kernel[i] = kernel[i].clone();
+			}
+
+			this.blockSize = blockSize;
+			this.hash = Arrays.deepHashCode(this.kernel) * 31 + blockSize;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return this.hash;
+		}
+
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if(!(object instanceof SpectrumKey))
+			{
+				return false;
+			}
+
+			SpectrumKey key = (SpectrumKey) object;
+			return this.blockSize == key.blockSize && Arrays.deepEquals(this.kernel, key.kernel);
+		}
+	}
+}
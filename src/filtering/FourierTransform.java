@@ -0,0 +1,112 @@
+package filtering;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-place radix-2 fast Fourier transform of complex sequences of a fixed power-of-two length
+ * The bit-reversal permutation and the twiddle factors are computed once per length and shared by all threads
+ */
+final class FourierTransform
+{
+	private static final Map<Integer, FourierTransform> transforms = new ConcurrentHashMap<Integer, FourierTransform>();
+
+	private int size;
+	private int[] reversed;
+	private double[] cos;
+	private double[] sin;
+
+
+	private FourierTransform(int size)
+	{
+		if(Integer.bitCount(size) != 1)
+		{
+			throw new IllegalArgumentException("The length of the transform must be a power of two, got " + size);
+		}
+
+		this.size = size;
+		this.reversed = new int[size];
+		this.cos = new double[size/2];
+		this.sin = new double[size/2];
+
+		int bits = Integer.numberOfTrailingZeros(size);
+		for(int i = 0; i < size; i++)
+		{
+			this.reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+
+		for(int i = 0; i < size/2; i++)
+		{
+			this.cos[i] = Math.cos(2 * Math.PI * i/size);
+			this.sin[i] = Math.sin(2 * Math.PI * i/size);
+		}
+	}
+
+
+	/**
+	 * Get the transform of the given length
+	 * @param size the length of the sequences, a power of two
+	 * @return the transform
+	 */
+	static FourierTransform of(int size)
+	{
+		return transforms.computeIfAbsent(size, FourierTransform::new);
+	}
+
+
+	int getSize()
+	{
+		return this.size;
+	}
+
+
+	/**
+	 * Transform a complex sequence in place
+	 * Neither direction is scaled, so a forward then inverse transform multiplies the sequence by its length
+	 * @param re the real parts
+	 * @param im the imaginary parts
+	 * @param inverse true for the inverse transform, false for the forward one
+	 */
+	void transform(double[] re, double[] im, boolean inverse)
+	{
+		// Put the samples in bit-reversed order
+		for(int i = 0; i < this.size; i++)
+		{
+			int j = this.reversed[i];
+			if(i < j)
+			{
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+
+		// Combine pairs of transforms of length half into transforms of length 2 * half
+		double sign = inverse ? 1 : -1;
+		for(int half = 1; half < this.size; half *= 2)
+		{
+			int step = this.size/(half * 2);
+			for(int start = 0; start < this.size; start += half * 2)
+			{
+				for(int k = 0; k < half; k++)
+				{
+					double wr = this.cos[k * step];
+					double wi = sign * this.sin[k * step];
+
+					int even = start + k;
+					int odd = even + half;
+					double tr = re[odd] * wr - im[odd] * wi;
+					double ti = re[odd] * wi + im[odd] * wr;
+
+					re[odd] = re[even] - tr;
+					im[odd] = im[even] - ti;
+					re[even] += tr;
+					im[even] += ti;
+				}
+			}
+		}
+	}
+}
@@ -1,84 +1,120 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
-
-import processing.Processor;
+import processing.BorderMode;
+import processing.PlanarImage;
 
 public class GaussianFilter implements SpatialFilter
 {
+	/**
+	 * The ways the Gaussian filter may be computed
+	 * KERNEL convolves with the sampled Gaussian of the given radius, at a cost growing with the radius
+	 * RECURSIVE and BOX_CASCADE approximate the Gaussian of the given sigma at a cost independent of sigma,
+	 * and ignore the kernel radius; see RecursiveGaussian and BoxCascadeGaussian for their accuracy
+	 */
+	public enum Mode
+	{
+		KERNEL, RECURSIVE, BOX_CASCADE
+	}
+	
+	
 	private double sigma;
+	private BorderMode borderMode;
+	private Mode mode;
 	
 	
 	/**
 	 * Class constructor
+	 * The image is extended beyond its edges by the default border mode
+	 * @param sigma the standard deviation of the Gaussian function
 	 */
 	public GaussianFilter(double sigma)
 	{
-		this.sigma = sigma;
+		this(sigma, BorderMode.DEFAULT);
 	}
 	
-
-	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
-	{				
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		// Generate the Gaussian kernel with given radius
-		double[][] kernel = generateGaussianKernel(kernelRadius);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
-		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Calculate the RGB value of the centered pixel(x, y) by performing convolution on the pixels under the mask
-				int[] rgb = SpatialFilter.convolve(image, x, y, kernel);
-						
-				// Set the value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
-			}
-		}
-		
-		return processedImage;
+	
+	/**
+	 * Class constructor
+	 * @param sigma the standard deviation of the Gaussian function
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public GaussianFilter(double sigma, BorderMode borderMode)
+	{
+		this(sigma, borderMode, Mode.KERNEL);
 	}
 	
 	
 	/**
-	 * Generate a Gaussian kernel with given radius
-	 * @param kernelWidth the width of the kernel
-	 * @param kernelHeight the height of the kernel
-	 * @return the Gaussian kernel
+	 * Class constructor
+	 * @param sigma the standard deviation of the Gaussian function
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @param mode the way the filter is computed
 	 */
-	private double[][] generateGaussianKernel(int kernelRadius)
+	public GaussianFilter(double sigma, BorderMode borderMode, Mode mode)
 	{
-		double[][] kernel = new double[kernelRadius * 2 + 1][kernelRadius * 2 + 1];
+		// The sampled kernel divides by sigma, so a sigma of 0 or less would fill it with NaN
+		if(!(sigma > 0))
+		{
+			throw new IllegalArgumentException("The Gaussian filter needs sigma > 0, got " + sigma);
+		}
 		
-		// Initialize sum variable for accumulating the kernels values
-		double sum = 0.0;
+		// The recursive filter's poles cannot be scaled below sigma = 1
+		if(mode == Mode.RECURSIVE && sigma < 1)
+		{
+			throw new IllegalArgumentException("The recursive Gaussian needs sigma >= 1, got " + sigma);
+		}
 		
-		// Calculate the value for each position in the kernel by Gaussian function
-		for(int x = 0; x < kernel.length; x++) 
+		this.sigma = sigma;
+		this.borderMode = borderMode;
+		this.mode = mode;
+	}
+	
+	
+	@Override
+	public BorderMode getBorderMode()
+	{
+		return this.borderMode;
+	}
+	
+	
+	@Override
+	public int getHalo(int kernelRadius)
+	{
+		switch(this.mode)
 		{
-			for(int y = 0; y < kernel[0].length; y++) 
-			{
-				double d = Math.sqrt(Math.pow(x - kernelRadius, 2) + Math.pow(y - kernelRadius, 2));
-				kernel[x][y] = Math.exp(-Math.pow(d, 2)/(2 * Math.pow(this.sigma, 2)));
-
-		        // Accumulate the kernel values
-		        sum += kernel[x][y];
-		    }
+			// The recursive response is cut at 4 sigma and the running sums start from different pixels,
+			// so tiles may differ from the whole image by one level
+			case RECURSIVE:
+				return RecursiveGaussian.getRadius(this.sigma);
+				
+			case BOX_CASCADE:
+				return BoxCascadeGaussian.getRadius(this.sigma);
+				
+			default:
+				return kernelRadius;
 		}
+	}
+	
 
-		// Normalize the kernel
-		for(int x = 0; x < kernel.length; x++) 
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		// The approximations depend on sigma only
+		if(this.mode == Mode.RECURSIVE)
 		{
-			for(int y = 0; y < kernel[0].length; y++) 
-			{
-				kernel[x][y] /= sum;
-			}
+			RecursiveGaussian.filter(image, processedImage, this.sigma, this.borderMode);
+			return;
 		}
+		else if(this.mode == Mode.BOX_CASCADE)
+		{
+			BoxCascadeGaussian.filter(image, processedImage, this.sigma, this.borderMode);
+			return;
+		}
+		
+		// Take the one-dimensional Gaussian kernel with given radius from the kernel cache
+		double[] kernel = KernelCache.getGaussian(kernelRadius, this.sigma);
 		
-		return kernel;
+		// The 2D Gaussian is the outer product of two 1D Gaussians, so filter the rows then the columns with the same kernel
+		SpatialFilter.convolveSeparable(image, processedImage, kernel, kernel, this.borderMode);
 	}
 }
\ No newline at end of file
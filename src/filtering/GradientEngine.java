@@ -0,0 +1,108 @@
+package filtering;
+
+import java.util.stream.IntStream;
+
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
+
+/**
+ * Gradients of planar images from a separable operator, in one pass over the image
+ * The Gaussian smoothing is convolved into the operator's kernels (see GradientOperator), so smoothing and differentiation
+ * are a single separable convolution and the blurred image is never stored
+ * Every row of the padded image is filtered horizontally by both kernels, and the x and y gradients of a row are the
+ * vertical passes of the derivative rows by the smoothing kernel and of the smoothed rows by the derivative kernel
+ * The image is cut into bands of rows filtered in parallel, each keeping only the filtered rows its kernel window spans
+ */
+final class GradientEngine
+{
+	/**
+	 * The stage taking the gradients of every row as soon as they are computed
+	 * Rows of different bands are handed over from different threads at the same time, each row once
+	 */
+	interface GradientSink
+	{
+		/**
+		 * Take the gradients of a row
+		 * The arrays are scratch arrays of the calling thread overwritten by its next row, so they must not be kept
+		 * @param band the color channel
+		 * @param y the y-coordinate of the row
+		 * @param gradientX the x-derivatives of the row, from index 0 to the width of the image
+		 * @param gradientY the y-derivatives of the row, from index 0 to the width of the image
+		 */
+		public void accept(int band, int y, double[] gradientX, double[] gradientY);
+	}
+
+
+	// Number of rows each parallel task filters
+	private static final int BAND_HEIGHT = 64;
+
+
+	private GradientEngine()
+	{
+
+	}
+
+
+	/**
+	 * Compute the gradients of every pixel of the given image
+	 * The sink must not use the thread's double scratch arrays
+	 * @param image the original image
+	 * @param smoothing the smoothing kernel
+	 * @param derivative the derivative kernel, with the same length as the smoothing kernel
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @param sink the stage taking the gradients of every row
+	 */
+	static void filter(PlanarImage image, double[] smoothing, double[] derivative, BorderMode borderMode, GradientSink sink)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int length = smoothing.length;
+
+		// Pad the image, so that the kernel window always lies inside the padded image
+		PlanarImage paddedImage = image.pad(length/2, length/2, borderMode);
+		CompiledKernel compiledSmoothing = new CompiledKernel(smoothing);
+		CompiledKernel compiledDerivative = new CompiledKernel(derivative);
+		ConvolutionEngine.RowAccumulator accumulator = ConvolutionEngine.getAccumulator();
+
+		int bands = (height + BAND_HEIGHT - 1)/BAND_HEIGHT;
+		IntStream.range(0, image.getBands() * bands).parallel().forEach(task ->
+		{
+			int band = task/bands;
+			int first = task % bands * BAND_HEIGHT;
+			int last = Math.min(first + BAND_HEIGHT, height);
+			int[] src = paddedImage.getPlane(band);
+
+			// Take the thread's scratch arrays to store the last length smoothed rows followed by the last length
+			// differentiated rows (row p of the padded image in slot p % length of each ring), a filtered row,
+			// and the gradients of an output row
+			double[] rows = BufferPool.getDoubleScratch(0, 2 * length * width);
+			double[] row = BufferPool.getDoubleScratch(1, width);
+			double[] gradientX = BufferPool.getDoubleScratch(2, width);
+			double[] gradientY = BufferPool.getDoubleScratch(3, width);
+			int derivativeRows = length * width;
+
+			for(int p = first; p < last + length - 1; p++)
+			{
+				// Filter the only new row the output row needs, which replaces the one no longer needed
+				int index = paddedImage.getIndex(0, p);
+				int slot = p % length * width;
+				compiledSmoothing.apply(src, index, row, width, accumulator);
+				System.arraycopy(row, 0, rows, slot, width);
+				compiledDerivative.apply(src, index, row, width, accumulator);
+				System.arraycopy(row, 0, rows, derivativeRows + slot, width);
+
+				// Perform the vertical passes once the rows y to y + length - 1 of the padded image are filtered
+				int y = p - length + 1;
+				if(y >= first)
+				{
+					compiledSmoothing.apply(rows, derivativeRows, length, y, gradientX, width, accumulator);
+					compiledDerivative.apply(rows, 0, length, y, gradientY, width, accumulator);
+					sink.accept(band, y, gradientX, gradientY);
+				}
+			}
+		});
+
+		BufferPool.release(paddedImage);
+	}
+}
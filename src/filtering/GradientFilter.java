@@ -0,0 +1,104 @@
+package filtering;
+
+import processing.BorderMode;
+import processing.PlanarImage;
+
+public class GradientFilter implements SpatialFilter
+{
+	/**
+	 * The images the gradient may be shown as
+	 * X and Y are the absolute x and y derivatives, MAGNITUDE the length of the gradient, all clipped to the 8-bit scale;
+	 * ORIENTATION is the direction of the gradient, from -180 to 180 degrees measured from the x-axis toward the y-axis
+	 * (downward), scaled to 0 to 255
+	 */
+	public enum Output
+	{
+		X, Y, MAGNITUDE, ORIENTATION
+	}
+
+
+	private GradientOperator operator;
+	private Output output;
+	private double sigma;
+	private BorderMode borderMode;
+
+
+	/**
+	 * Class constructor
+	 * The image is not smoothed, and is extended beyond its edges by the default border mode
+	 * @param operator the operator estimating the gradient
+	 * @param output the image the gradient is shown as
+	 */
+	public GradientFilter(GradientOperator operator, Output output)
+	{
+		this(operator, output, 0, BorderMode.DEFAULT);
+	}
+
+
+	/**
+	 * Class constructor
+	 * The image is smoothed by the Gaussian of the given sigma and the kernel radius, in the same pass as the gradient
+	 * @param operator the operator estimating the gradient
+	 * @param output the image the gradient is shown as
+	 * @param sigma the standard deviation of the Gaussian function, or 0 for no smoothing
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public GradientFilter(GradientOperator operator, Output output, double sigma, BorderMode borderMode)
+	{
+		this.operator = operator;
+		this.output = output;
+		this.sigma = sigma;
+		this.borderMode = borderMode;
+	}
+
+
+	@Override
+	public BorderMode getBorderMode()
+	{
+		return this.borderMode;
+	}
+
+
+	@Override
+	public int getHalo(int kernelRadius)
+	{
+		// The 3 x 3 operator widens the Gaussian kernel by one pixel on each side
+		return (this.sigma > 0 ? kernelRadius : 0) + 1;
+	}
+
+
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		double[][] kernels = this.operator.getKernels(kernelRadius, this.sigma);
+
+		GradientEngine.filter(image, kernels[0], kernels[1], this.borderMode, (band, y, gradientX, gradientY) ->
+		{
+			int[] dst = processedImage.getPlane(band);
+			for(int x = 0, index = processedImage.getIndex(0, y); x < image.getWidth(); x++)
+			{
+				int value;
+				switch(this.output)
+				{
+					case X:
+						value = (int) Math.abs(gradientX[x]);
+						break;
+
+					case Y:
+						value = (int) Math.abs(gradientY[x]);
+						break;
+
+					case ORIENTATION:
+						value = (int) Math.round((Math.atan2(gradientY[x], gradientX[x]) + Math.PI) * 255/(2 * Math.PI));
+						break;
+
+					default:
+						value = (int) Math.sqrt(gradientX[x] * gradientX[x] + gradientY[x] * gradientY[x]);
+				}
+
+				// Set the clipped value to the pixel
+				dst[index + x] = value > 255 ? 255 : value;
+			}
+		});
+	}
+}
@@ -0,0 +1,67 @@
+package filtering;
+
+/**
+ * The separable 3 x 3 operators estimating the gradient of an image
+ * The x-derivative is the central difference {-1, 0, 1} along the rows, smoothed down the columns by the operator's
+ * smoothing kernel, and the y-derivative the same with rows and columns swapped
+ * SOBEL smooths by {1, 2, 1}; SCHARR by {3, 10, 3}, whose response is closer to rotation invariant
+ */
+public enum GradientOperator
+{
+	SOBEL(new double[] {1, 2, 1}), SCHARR(new double[] {3, 10, 3});
+
+
+	private static final double[] DERIVATIVE = {-1, 0, 1};
+
+	private double[] smoothing;
+
+
+	/**
+	 * Class constructor
+	 * @param smoothing the smoothing kernel of the operator
+	 */
+	private GradientOperator(double[] smoothing)
+	{
+		this.smoothing = smoothing;
+	}
+
+
+	/**
+	 * Get the smoothing and derivative kernels of the operator, with a Gaussian smoothing convolved into both
+	 * Filtering with the returned kernels smooths the image by the Gaussian and applies the operator in the same pass
+	 * @param kernelRadius the radius of the Gaussian kernel
+	 * @param sigma the standard deviation of the Gaussian function, or 0 for no Gaussian smoothing
+	 * @return the smoothing kernel and the derivative kernel, both with kernelRadius * 2 + 3 weights with smoothing
+	 */
+	double[][] getKernels(int kernelRadius, double sigma)
+	{
+		if(sigma <= 0)
+		{
+			return new double[][] {this.smoothing.clone(), DERIVATIVE.clone()};
+		}
+
+		double[] gaussian = KernelCache.getGaussian(kernelRadius, sigma);
+		return new double[][] {convolve(gaussian, this.smoothing), convolve(gaussian, DERIVATIVE)};
+	}
+
+
+	/**
+	 * Compose two one-dimensional kernels into the kernel applying both
+	 * @param first the first kernel
+	 * @param second the second kernel
+	 * @return the composed kernel, with first.length + second.length - 1 weights
+	 */
+	private static double[] convolve(double[] first, double[] second)
+	{
+		double[] kernel = new double[first.length + second.length - 1];
+		for(int i = 0; i < first.length; i++)
+		{
+			for(int j = 0; j < second.length; j++)
+			{
+				kernel[i + j] += first[i] * second[j];
+			}
+		}
+
+		return kernel;
+	}
+}
@@ -1,53 +1,122 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
-
-import processing.Processor;
+import processing.BorderMode;
+import processing.PlanarImage;
 
 public class HighBoostingFilter implements SpatialFilter
 {
+	/**
+	 * The blurs the unsharp mask may be taken from
+	 * GAUSSIAN convolves with the sampled Gaussian of the given sigma and the kernel radius, BOX takes the mean of the
+	 * kernel and MEDIAN its median
+	 */
+	public enum Blur
+	{
+		GAUSSIAN, BOX, MEDIAN
+	}
+	
+	
 	private double k;
+	private BorderMode borderMode;
+	private Blur blur;
+	private double sigma;
 	
 	/**
 	 * Class constructor
+	 * The unsharp mask is taken from the median blur, and the image is extended beyond its edges by the default border mode
+	 * @param k the weight of the unsharp mask
 	 */
 	public HighBoostingFilter(double k)
 	{
+		this(k, BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * The unsharp mask is taken from the median blur
+	 * @param k the weight of the unsharp mask
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public HighBoostingFilter(double k, BorderMode borderMode)
+	{
+		this(k, Blur.MEDIAN, 0, borderMode);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * A weight of 1 gives the classic unsharp masking, a weight above 1 high-boost filtering
+	 * @param k the weight of the unsharp mask
+	 * @param blur the blur the unsharp mask is taken from
+	 * @param sigma the standard deviation of the Gaussian blur, positive, ignored by the other blurs
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public HighBoostingFilter(double k, Blur blur, double sigma, BorderMode borderMode)
+	{
+		// The sampled Gaussian of a sigma that is not positive is not a kernel, and would fill the output with NaN
+		if(blur == Blur.GAUSSIAN && !(sigma > 0))
+		{
+			throw new IllegalArgumentException("The Gaussian blur needs sigma > 0, got " + sigma);
+		}
+		
 		this.k = k;
+		this.borderMode = borderMode;
+		this.blur = blur;
+		this.sigma = sigma;
 	}
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
+	public BorderMode getBorderMode()
 	{
-		// Blur the image
-		BufferedImage processedImage = new MedianFilter().process(image, kernelRadius);
-		
-		for(int x = 0; x < image.getWidth(); x++) 
+		return this.borderMode;
+	}
+	
+	
+	/**
+	 * Filter a given planar image in one streaming pass
+	 * Every row of the blur is combined with the original row as soon as the blur has computed it, so the blurred image
+	 * is never stored and the original image is traversed once
+	 * The blurs read a padded copy of the original image, so the processed image may be the original image itself
+	 */
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		RowSink sink = (band, y, blurRow) ->
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			int[] plane = image.getPlane(band);
+			int[] processedPlane = processedImage.getPlane(band);
+			int src = image.getIndex(0, y);
+			int dst = processedImage.getIndex(0, y);
+			
+			for(int x = 0; x < image.getWidth(); x++)
 			{
-				// Get the RGB value of the centered pixel(x, y) from the original image 
-				int[] rgb = Processor.getRGB(image, x, y);
+				// Calculate the unsharp mask
+				double mask = plane[src + x] - blurRow[x];
 				
-				// Get the RGB value of the centered pixel(x, y) from the blurred image 
-				int[] blurRGB = Processor.getRGB(processedImage, x, y);
+				// Calculate the new value by adding a weighted portion k of the mask back to the original one
+				int value = (int) (plane[src + x] + k * mask);
 				
-				// Calculate new value for the pixel by smoothing function
-				for(int i = 0; i < 3; i++)
-				{
-					// Calculate the unsharp mask
-					double mask = rgb[i] - blurRGB[i];
-					
-					// Calculate the new RGB value by adding a weighted portion k of the mask back to the original one
-					rgb[i] = (int) (rgb[i] + k * mask);
-				}
-				
-				// Set the clipped RGB value to the pixel (x, y)
-				Processor.setRGB(processedImage, x, y, Processor.clipRGB(rgb));
+				// Set the clipped value to the pixel
+				processedPlane[dst + x] = value > 255 ? 255 : (value < 0 ? 0 : value);
 			}
-		}
+		};
 		
-		return processedImage;
+		// Blur the image row by row into the combining stage
+		switch(this.blur)
+		{
+			case GAUSSIAN:
+				double[] kernel = KernelCache.getGaussian(kernelRadius, this.sigma);
+				ConvolutionEngine.convolveSeparable(image, kernel, kernel, this.borderMode, sink);
+				break;
+				
+			case BOX:
+				new AveragingFilter(this.borderMode).process(image, kernelRadius, sink);
+				break;
+				
+			default:
+				new MedianFilter(this.borderMode).process(image, kernelRadius, sink);
+		}
 	}
-}
\ No newline at end of file
+}
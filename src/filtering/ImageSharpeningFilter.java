@@ -1,79 +1,97 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
-import processing.Processor;
+import processing.BorderMode;
+import processing.ImageStore;
+import processing.PlanarImage;
 
 public class ImageSharpeningFilter implements SpatialFilter
 {
+	// The image minus its 3 x 3 Laplacian {{1, 1, 1}, {1, -8, 1}, {1, 1, 1}}, as a single kernel whose center weight folds in the image
+	private static final double[][] SHARPENING_KERNEL = {{-1, -1, -1}, {-1, 9, -1}, {-1, -1, -1}};
+	
 	private String mode;
+	private BorderMode borderMode;
 	
 	
 	/**
 	 * Class constructor
+	 * The image is extended beyond its edges by the default border mode
+	 * @param mode the way the results are brought to the 8-bit scale: clipping or scaling
 	 */
 	public ImageSharpeningFilter(String mode)
+	{
+		this(mode, BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * @param mode the way the results are brought to the 8-bit scale: clipping or scaling
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public ImageSharpeningFilter(String mode, BorderMode borderMode)
 	{
 		this.mode = mode;
+		this.borderMode = borderMode;
 	}
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
+	public BorderMode getBorderMode()
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		// Generate the Laplacian kernel
-		double[][] kernel = new double[][] {{1, 1, 1}, {1, -8, 1}, {1, 1, 1}};	
-
-		// Initialize the array to store RGB values of the image
-		int[][][] rgbValues = new int[image.getWidth()][image.getHeight()][3];
-		
-		// Initialize the array to store max and min RGB values of the image
-		int[] max = {255, 255, 255};
-		int[] min = {0, 0, 0};
+		return this.borderMode;
+	}
+	
+	
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		// Initialize the array to store max and min values of every channel, starting from the full 8-bit scale
+		int[] max = new int[processedImage.getBands()];
+		int[] min = new int[processedImage.getBands()];
+		Arrays.fill(max, 255);
 		
-		// Determine the value of c
-		double c = kernel[1][1] < 0 ? -1 : 1;
-		
-		for(int x = 0; x < image.getWidth(); x++) 
-		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Get the RGB value of the centered pixel(x, y) from the original image
-				int rgb[] = Processor.getRGB(image, x, y);
-				
-				// Get the Laplacian value of the centered pixel(x, y) by performing convolution on the pixels under the mask
-				int laplacianRGB[] = SpatialFilter.convolve(image, x, y, kernel);
-				
-				for(int i = 0; i < 3; i++)
-				{
-					// Calculate the new RGB value
-					rgb[i] = (int) (rgb[i] + c * laplacianRGB[i]);
-					
-					// Record max and min values for scaling
-					min[i] = rgb[i] < min[i] ? rgb[i] : min[i];
-					max[i] = rgb[i] > max[i] ? rgb[i] : max[i];
-				}
-				
-				// Record the RGB value of pixel(x, y)
-				rgbValues[x][y] = rgb;
-			}	
-		}
-			
+		// Filter the image and record max and min values in the same pass
+		LaplacianEngine.filter(image, processedImage, SHARPENING_KERNEL, this.borderMode, max, min);
 		
 		// Process the image on chosen mode: clipping or scaling
+		LaplacianEngine.map(processedImage, max, min, !this.mode.equals("clipping"));
+	}
+	
+	
+	@Override
+	public void process(ImageStore image, ImageStore processedImage, int kernelRadius, int tileSize)
+	{
+		// Scaling depends on the max and min values of the whole image, so it takes a separate pass
 		if(this.mode.equals("clipping"))
 		{
-			SpatialFilter.clipPixels(processedImage, rgbValues);	
+			SpatialFilter.super.process(image, processedImage, kernelRadius, tileSize);
 		}
 		else
 		{
-			SpatialFilter.scalePixels(processedImage, rgbValues, max, min);
+			SpatialFilter.processWithScaling(image, processedImage, tileSize, getHalo(kernelRadius), this.borderMode, this::getSharpenedImage);
 		}
-				
-		return processedImage;
+	}
+	
+	
+	@Override
+	public int getHalo(int kernelRadius)
+	{
+		// The Laplacian kernel is always 3 x 3
+		return 1;
+	}
+	
+	
+	/**
+	 * Get the unclipped sharpened image
+	 * @param image the original image
+	 * @param processedImage the image to store the sharpened image
+	 */
+	private void getSharpenedImage(PlanarImage image, PlanarImage processedImage)
+	{
+		// Subtracting the Laplacian from the image is a single convolution
+		LaplacianEngine.filter(image, processedImage, SHARPENING_KERNEL, this.borderMode, new int[image.getBands()], new int[image.getBands()]);
 	}
 }
@@ -0,0 +1,149 @@
+package filtering;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of generated kernels, keyed by their type, radius and sigma, so that filtering a stream of images
+ * with the same parameters generates every kernel once
+ * The least recently used kernel is dropped once the cache is full
+ * Cached kernels are shared, so callers must not modify them
+ */
+public final class KernelCache
+{
+	// Number of kernels kept
+	private static final int CAPACITY = 32;
+
+	private static final Map<Key, double[]> kernels = new LinkedHashMap<Key, double[]>(CAPACITY, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest)
+		{
+			return size() > CAPACITY;
+		}
+	};
+
+
+	private KernelCache()
+	{
+
+	}
+
+
+	/**
+	 * Get the normalized one-dimensional Gaussian kernel of the given radius and standard deviation
+	 * The outer product of the kernel with itself is the normalized 2D Gaussian kernel
+	 * @param kernelRadius the radius of the kernel
+	 * @param sigma the standard deviation of the Gaussian function
+	 * @return the kernel, with kernelRadius * 2 + 1 weights
+	 */
+	public static double[] getGaussian(int kernelRadius, double sigma)
+	{
+		return get("gaussian", kernelRadius, sigma, () ->
+		{
+			double[] kernel = new double[kernelRadius * 2 + 1];
+
+			// Calculate the value for each position in the kernel by Gaussian function, and accumulate the values
+			double sum = 0.0;
+			for(int x = 0; x < kernel.length; x++)
+			{
+				double d = x - kernelRadius;
+				kernel[x] = Math.exp(-Math.pow(d, 2)/(2 * Math.pow(sigma, 2)));
+				sum += kernel[x];
+			}
+
+			// Normalize the kernel
+			for(int x = 0; x < kernel.length; x++)
+			{
+				kernel[x] /= sum;
+			}
+
+			return kernel;
+		});
+	}
+
+
+	/**
+	 * Get a kernel from the cache, or generate and store it
+	 * @param type the name of the kind of kernel
+	 * @param kernelRadius the radius of the kernel
+	 * @param sigma the parameter of the kernel, 0 if it has none
+	 * @param generator the function generating the kernel
+	 * @return the kernel
+	 */
+	public static double[] get(String type, int kernelRadius, double sigma, Supplier<double[]> generator)
+	{
+		Key key = new Key(type, kernelRadius, sigma);
+		synchronized(kernels)
+		{
+			double[] kernel = kernels.get(key);
+			if(kernel != null)
+			{
+				return kernel;
+			}
+		}
+
+		// Generate outside the lock; two threads may both generate a missing kernel, and either result is kept
+		double[] kernel = generator.get();
+		synchronized(kernels)
+		{
+			kernels.put(key, kernel);
+		}
+
+		return kernel;
+	}
+
+
+	/**
+	 * Remove every cached kernel
+	 */
+	public static void clear()
+	{
+		synchronized(kernels)
+		{
+			kernels.clear();
+		}
+	}
+
+
+	/**
+	 * The type, radius and sigma of a kernel
+	 */
+	private static final class Key
+	{
+		private String type;
+		private int kernelRadius;
+		private double sigma;
+
+
+		private Key(String type, int kernelRadius, double sigma)
+		{
+			this.type = type;
+			this.kernelRadius = kernelRadius;
+			this.sigma = sigma;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return (this.type.hashCode() * 31 + this.kernelRadius) * 31 + Double.hashCode(this.sigma);
+		}
+
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if(!(object instanceof Key))
+			{
+				return false;
+			}
+
+			Key key = (Key) object;
+			return this.type.equals(key.type) && this.kernelRadius == key.kernelRadius && Double.compare(this.sigma, key.sigma) == 0;
+		}
+	}
+}
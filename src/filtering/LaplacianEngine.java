@@ -0,0 +1,123 @@
+package filtering;
+
+import java.util.stream.IntStream;
+
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
+
+/**
+ * Fused single-pass engine of the 3 x 3 Laplacian and the filters built on it
+ * The kernels are compiled (see CompiledKernel): the 8 neighbors share one weight, so they are added in pairs before
+ * being multiplied, and adding the image to its Laplacian is just another center weight; the integer sums need neither
+ * floating point nor a second pass over the image
+ * The max and min values of every channel are reduced while the results are written, over bands of rows in parallel,
+ * and the results are brought to the 8-bit scale by a lookup table spanning only the range found
+ */
+final class LaplacianEngine
+{
+	// Number of rows each parallel task filters
+	private static final int BAND_HEIGHT = 64;
+
+
+	private LaplacianEngine()
+	{
+
+	}
+
+
+	/**
+	 * Filter every pixel of the image with a kernel of integer weights, such as the 3 x 3 Laplacian
+	 * The results are stored unclipped, and the max and min values of every channel are merged into max and min
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @param max the max values of every channel, updated in place
+	 * @param min the min values of every channel, updated in place
+	 */
+	static void filter(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode, int[] max, int[] min)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		// Pad the image, so that every neighbor lies inside the padded image
+		PlanarImage paddedImage = image.pad(kernel.length/2, kernel[0].length/2, borderMode);
+		CompiledKernel compiledKernel = new CompiledKernel(kernel, paddedImage.getStride());
+		if(!compiledKernel.isInteger())
+		{
+			throw new IllegalArgumentException("The Laplacian engine needs integer weights");
+		}
+
+		int bands = (height + BAND_HEIGHT - 1)/BAND_HEIGHT;
+		IntStream.range(0, image.getBands() * bands).parallel().forEach(task ->
+		{
+			int band = task/bands;
+			int[] src = paddedImage.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			int bandMax = Integer.MIN_VALUE;
+			int bandMin = Integer.MAX_VALUE;
+
+			// Take the thread's scratch array to store the sums of one row
+			int[] sums = BufferPool.getIntScratch(0, width);
+
+			for(int y = task % bands * BAND_HEIGHT; y < Math.min((task % bands + 1) * BAND_HEIGHT, height); y++)
+			{
+				// The kernel window of pixel(x, y) of the image starts at pixel(x, y) of the padded image
+				int index = processedImage.getIndex(0, y);
+				compiledKernel.apply(src, paddedImage.getIndex(0, y), sums, width, ConvolutionEngine.getAccumulator());
+
+				for(int x = 0; x < width; x++)
+				{
+					int value = sums[x];
+					dst[index + x] = value;
+					bandMax = value > bandMax ? value : bandMax;
+					bandMin = value < bandMin ? value : bandMin;
+				}
+			}
+
+			synchronized(max)
+			{
+				max[band] = Math.max(max[band], bandMax);
+				min[band] = Math.min(min[band], bandMin);
+			}
+		});
+
+		BufferPool.release(paddedImage);
+	}
+
+
+	/**
+	 * Bring the results to the 8-bit scale by clipping or scaling them, through a lookup table of every value from min to max
+	 * Scaling maps min to 0 and max to 255, as SpatialFilter.scalePixels does
+	 * @param image the results, with every value of a channel between its min and max values, changed in place
+	 * @param max the max value of every channel
+	 * @param min the min value of every channel
+	 * @param scaling true to scale the results, false to clip them
+	 */
+	static void map(PlanarImage image, int[] max, int[] min, boolean scaling)
+	{
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] plane = image.getPlane(band);
+			int lowest = min[band];
+			int range = max[band] - lowest;
+
+			// Map every value that occurs once, rather than every pixel
+			int[] table = new int[range + 1];
+			for(int i = 0; i <= range; i++)
+			{
+				int value = lowest + i;
+				table[i] = scaling ? i * 255/range : (value > 255 ? 255 : (value < 0 ? 0 : value));
+			}
+
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				for(int i = image.getIndex(0, y), end = i + image.getWidth(); i < end; i++)
+				{
+					plane[i] = table[plane[i] - lowest];
+				}
+			}
+		}
+	}
+}
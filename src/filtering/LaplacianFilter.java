@@ -1,67 +1,97 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import processing.BorderMode;
+import processing.ImageStore;
+import processing.PlanarImage;
 
 public class LaplacianFilter implements SpatialFilter
 {
+	// The 3 x 3 Laplacian kernel
+	private static final double[][] LAPLACIAN_KERNEL = {{1, 1, 1}, {1, -8, 1}, {1, 1, 1}};
+	
 	private String mode;
+	private BorderMode borderMode;
 	
 	/**
 	 * Class constructor
+	 * The image is extended beyond its edges by the default border mode
+	 * @param mode the way the results are brought to the 8-bit scale: clipping or scaling
 	 */
 	public LaplacianFilter(String mode)
+	{
+		this(mode, BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * @param mode the way the results are brought to the 8-bit scale: clipping or scaling
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public LaplacianFilter(String mode, BorderMode borderMode)
 	{
 		this.mode = mode;
+		this.borderMode = borderMode;
 	}
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
+	public BorderMode getBorderMode()
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
-		
-		// Generate the Laplacian kernel
-		double[][] kernel = new double[][] {{1, 1, 1}, {1, -8, 1}, {1, 1, 1}};	
-		
-		// Initialize the array to store RGB values of the image
-		int[][][] rgbValues = new int[image.getWidth()][image.getHeight()][3];
+		return this.borderMode;
+	}
+	
+	
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		// Initialize the array to store max and min values of every channel, starting from the full 8-bit scale
+		int[] max = new int[processedImage.getBands()];
+		int[] min = new int[processedImage.getBands()];
+		Arrays.fill(max, 255);
 		
-		// Initialize the array to store max and min RGB values of the image
-		int[] max = {255, 255, 255};
-		int[] min = {0, 0, 0};
-		
-		for(int x = 0; x < image.getWidth(); x++) 
-		{
-			for(int y = 0; y < image.getHeight(); y++) 
-			{
-				// Calculate the RGB value of the centered pixel(x, y) by performing convolution on the pixels under the mask
-				int rgb[] = SpatialFilter.convolve(image, x, y, kernel);
-				
-				// Record max and min RGB values
-				for(int i = 0; i < rgb.length; i++)
-				{	
-					min[i] = rgb[i] < min[i] ? rgb[i] : min[i];
-					max[i] = rgb[i] > max[i] ? rgb[i] : max[i];
-				}
-				
-				// Record the RGB value of pixel(x, y)
-				rgbValues[x][y] = rgb;
-			}	
-		}
+		// Filter the image and record max and min values in the same pass
+		LaplacianEngine.filter(image, processedImage, LAPLACIAN_KERNEL, this.borderMode, max, min);
 		
 		// Process the image on chosen mode: clipping or scaling
+		LaplacianEngine.map(processedImage, max, min, !this.mode.equals("clipping"));
+	}
+	
+	
+	@Override
+	public void process(ImageStore image, ImageStore processedImage, int kernelRadius, int tileSize)
+	{
+		// Scaling depends on the max and min values of the whole image, so it takes a separate pass
 		if(this.mode.equals("clipping"))
 		{
-			SpatialFilter.clipPixels(processedImage, rgbValues);	
+			SpatialFilter.super.process(image, processedImage, kernelRadius, tileSize);
 		}
 		else
 		{
-			SpatialFilter.scalePixels(processedImage, rgbValues, max, min);
+			SpatialFilter.processWithScaling(image, processedImage, tileSize, getHalo(kernelRadius), this.borderMode, this::getLaplacian);
 		}
-		
-		return processedImage;
+	}
+	
+	
+	@Override
+	public int getHalo(int kernelRadius)
+	{
+		// The Laplacian kernel is always 3 x 3
+		return 1;
+	}
+	
+	
+	/**
+	 * Get the unclipped Laplacian of the image
+	 * @param image the original image
+	 * @param processedImage the image to store the Laplacian of every pixel
+	 */
+	private void getLaplacian(PlanarImage image, PlanarImage processedImage)
+	{
+		// Convolve the image with the Laplacian kernel
+		LaplacianEngine.filter(image, processedImage, LAPLACIAN_KERNEL, this.borderMode, new int[image.getBands()], new int[image.getBands()]);
 	}
 	
 	
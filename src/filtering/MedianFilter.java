@@ -1,81 +1,322 @@
 package filtering;
 
-import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
-import processing.Processor;
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
 
 public class MedianFilter implements SpatialFilter
 {
+	private BorderMode borderMode;
+	
+	
 	/**
 	 * Class constructor
+	 * The image is extended beyond its edges by the default border mode
 	 */
 	public MedianFilter()
 	{
-		
+		this(BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public MedianFilter(BorderMode borderMode)
+	{
+		this.borderMode = borderMode;
 	}
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int kernelRadius)
-	{			
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+	public BorderMode getBorderMode()
+	{
+		return this.borderMode;
+	}
+	
+	
+	@Override
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		process(image, kernelRadius, (band, y, row) ->
+			System.arraycopy(row, 0, processedImage.getPlane(band), processedImage.getIndex(0, y), image.getWidth()));
+	}
+	
+	
+	/**
+	 * Filter a given planar image, handing every row of medians to the next stage as soon as it is found
+	 * The rows are produced in order, one color channel after the other; the image is read from a padded copy,
+	 * so the next stage may overwrite it
+	 * @param image the original image
+	 * @param kernelRadius the radius of the kernel
+	 * @param sink the stage taking the rows of medians
+	 */
+	void process(PlanarImage image, int kernelRadius, RowSink sink)
+	{
+		// Pad the image, so that the mask always lies inside the padded image
+		PlanarImage paddedImage = image.pad(kernelRadius, kernelRadius, this.borderMode);
+		
+		// Take the thread's scratch array to store a row of medians
+		int[] medians = BufferPool.getIntScratch(3, image.getWidth());
+		
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			// The histograms have one bin per 8-bit value, so any other channel is sorted instead
+			if(is8Bit(image, band))
+			{
+				processByHistograms(paddedImage, image.getWidth(), image.getHeight(), band, kernelRadius, medians, sink);
+			}
+			else
+			{
+				processBySorting(paddedImage, image.getWidth(), image.getHeight(), band, kernelRadius, medians, sink);
+			}
+		}
+		
+		BufferPool.release(paddedImage);
+	}
+	
+	
+	/**
+	 * Find the median of every pixel of a color channel in constant time per pixel, whatever the kernel radius
+	 * Every column of the padded image keeps a histogram of its kernelSize samples around the current row, and the
+	 * kernel's histogram slides along the row by adding the column entering the mask and removing the column leaving it
+	 * The histograms have two tiers (Perreault and Hebert), 16 coarse bins of 16 values and 256 fine bins, so that only the
+	 * coarse tier is slid at every pixel; the fine bins of a coarse bin are brought up to date only when the median falls in it
+	 * @param paddedImage the original image, padded by the kernel radius on each side
+	 * @param width the width of the original image
+	 * @param height the height of the original image
+	 * @param band the color channel, whose samples must all lie in 0-255
+	 * @param kernelRadius the radius of the kernel
+	 * @param medians the array to store a row of medians
+	 * @param sink the stage taking the rows of medians
+	 */
+	private void processByHistograms(PlanarImage paddedImage, int width, int height, int band, int kernelRadius, int[] medians, RowSink sink)
+	{
+		int paddedWidth = paddedImage.getWidth();
+		int kernelSize = kernelRadius * 2 + 1;
+		
+		// The median is the value of rank kernelSize^2/2 + 1 under the mask
+		int rank = kernelSize * kernelSize/2 + 1;
+		
+		int[] src = paddedImage.getPlane(band);
+		
+		// Take the thread's scratch arrays to store the fine and coarse histograms of every column
+		int[] columnFine = BufferPool.getIntScratch(1, paddedWidth * 256);
+		int[] columnCoarse = BufferPool.getIntScratch(2, paddedWidth * 16);
+		Arrays.fill(columnFine, 0, paddedWidth * 256, 0);
+		Arrays.fill(columnCoarse, 0, paddedWidth * 16, 0);
+		
+		// The histograms of the kernel, and the left column of the mask each coarse bin's fine bins were last brought up to date for
+		int[] kernelFine = new int[256];
+		int[] kernelCoarse = new int[16];
+		int[] updatedAt = new int[16];
+		
+		// Fill the column histograms with the rows under the mask of the first row
+		for(int j = 0; j < kernelSize - 1; j++)
+		{
+			addRow(src, paddedImage.getIndex(0, j), paddedWidth, columnFine, columnCoarse, 1);
+		}
+		
+		for(int y = 0; y < height; y++)
+		{
+			// Slide the column histograms down: add the row entering the mask, and remove the one that left it
+			addRow(src, paddedImage.getIndex(0, y + kernelSize - 1), paddedWidth, columnFine, columnCoarse, 1);
+			if(y > 0)
+			{
+				addRow(src, paddedImage.getIndex(0, y - 1), paddedWidth, columnFine, columnCoarse, -1);
+			}
+			
+			// Start the kernel's coarse histogram from the first kernelSize columns, and mark every fine bin as out of date
+			Arrays.fill(kernelCoarse, 0);
+			for(int c = 0; c < kernelSize; c++)
+			{
+				for(int b = 0; b < 16; b++)
+				{
+					kernelCoarse[b] += columnCoarse[c * 16 + b];
+				}
+			}
+			Arrays.fill(updatedAt, -kernelSize);
+			
+			for(int x = 0; x < width; x++)
+			{
+				// Slide the coarse histogram to the mask whose left column is x
+				if(x > 0)
+				{
+					int entering = (x + kernelSize - 1) * 16;
+					int leaving = (x - 1) * 16;
+					for(int b = 0; b < 16; b++)
+					{
+						kernelCoarse[b] += columnCoarse[entering + b] - columnCoarse[leaving + b];
+					}
+				}
+				
+				// Find the coarse bin holding the median
+				int coarse = 0;
+				int count = 0;
+				while(count + kernelCoarse[coarse] < rank)
+				{
+					count += kernelCoarse[coarse++];
+				}
+				
+				// Bring the fine bins of that coarse bin up to date for this mask
+				updateFineBins(kernelFine, coarse, updatedAt[coarse], x, kernelSize, columnFine);
+				updatedAt[coarse] = x;
 				
-		for(int x = 0; x < image.getWidth(); x++) 
+				// Find the median among the fine bins
+				int value = coarse * 16;
+				while(count + kernelFine[value] < rank)
+				{
+					count += kernelFine[value++];
+				}
+				
+				// Set the median of the values to the centered pixel at (x, y)
+				medians[x] = value;
+			}
+			
+			sink.accept(band, y, medians);
+		}
+	}
+	
+	
+	/**
+	 * Add or remove a row of the padded image to or from the histograms of the columns
+	 * @param src the plane of the padded image
+	 * @param index the index of the first pixel of the row in the plane
+	 * @param paddedWidth the width of the padded image
+	 * @param columnFine the fine histograms of the columns
+	 * @param columnCoarse the coarse histograms of the columns
+	 * @param delta 1 to add the row, -1 to remove it
+	 */
+	private void addRow(int[] src, int index, int paddedWidth, int[] columnFine, int[] columnCoarse, int delta)
+	{
+		for(int c = 0; c < paddedWidth; c++)
+		{
+			int value = src[index + c];
+			columnFine[c * 256 + value] += delta;
+			columnCoarse[c * 16 + (value >> 4)] += delta;
+		}
+	}
+	
+	
+	/**
+	 * Bring the 16 fine bins of a coarse bin of the kernel's histogram from the mask at one column to the mask at another
+	 * When the masks do not overlap, the bins are summed again from the columns under the new mask
+	 * @param kernelFine the fine histogram of the kernel
+	 * @param coarse the coarse bin
+	 * @param from the left column of the mask the bins are up to date for
+	 * @param to the left column of the current mask
+	 * @param kernelSize the width of the mask
+	 * @param columnFine the fine histograms of the columns
+	 */
+	private void updateFineBins(int[] kernelFine, int coarse, int from, int to, int kernelSize, int[] columnFine)
+	{
+		int first = coarse * 16;
+		
+		if(to - from >= kernelSize)
+		{
+			Arrays.fill(kernelFine, first, first + 16, 0);
+			for(int c = to; c < to + kernelSize; c++)
+			{
+				for(int v = first, bin = c * 256 + first; v < first + 16; v++, bin++)
+				{
+					kernelFine[v] += columnFine[bin];
+				}
+			}
+		}
+		else
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			for(int c = from; c < to; c++)
+			{
+				int leaving = c * 256;
+				int entering = (c + kernelSize) * 256;
+				for(int v = first; v < first + 16; v++)
+				{
+					kernelFine[v] += columnFine[entering + v] - columnFine[leaving + v];
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Find the median of every pixel of a color channel by sorting the values under the mask
+	 * @param paddedImage the original image, padded by the kernel radius on each side
+	 * @param width the width of the original image
+	 * @param height the height of the original image
+	 * @param band the color channel
+	 * @param kernelRadius the radius of the kernel
+	 * @param medians the array to store a row of medians
+	 * @param sink the stage taking the rows of medians
+	 */
+	private void processBySorting(PlanarImage paddedImage, int width, int height, int band, int kernelRadius, int[] medians, RowSink sink)
+	{
+		int kernelSize = kernelRadius * 2 + 1;
+		
+		// Take the thread's scratch array to store the values under the mask, reused for every pixel
+		int[] values = BufferPool.getIntScratch(0, kernelSize * kernelSize);
+		
+		int[] src = paddedImage.getPlane(band);
+		
+		for(int y = 0; y < height; y++) 
+		{
+			for(int x = 0; x < width; x++) 
 			{	
-				// Initialize array lists to store RGB values under the mask
-				List<Integer> red = new ArrayList<Integer>();
-				List<Integer> green = new ArrayList<Integer>();
-				List<Integer> blue = new ArrayList<Integer>();
-				
-				// Loop over all pixels under the mask
-				for(int i = -kernelRadius; i <= kernelRadius; i++)
+				// Collect the values under the mask, whose top left corner is pixel(x, y) of the padded image
+				int count = 0;
+				for(int j = 0; j < kernelSize; j++)
 				{
-					for(int j = -kernelRadius; j <= kernelRadius; j++)
+					int row = paddedImage.getIndex(x, y + j);
+					for(int i = 0; i < kernelSize; i++)
 					{
-						int w = x + i;
-						int h = y + j;
-						
-						// Ignore the pixel that is outside the image's edges
-						if(w >= 0 && w < image.getWidth() && h >= 0 && h < image.getHeight())
-						{			
-							// Get the RGB value of pixel at (w, h)
-							int rgb[] = Processor.getRGB(image, w, h);
-							
-							// Add each RGB value to the associated array list
-							red.add(rgb[0]);
-							green.add(rgb[1]);
-							blue.add(rgb[2]);
-						}
+						values[count++] = src[row + i];
 					}
 				}
 				
-				// Find the median of each list
-				int rgb[] = {getMedian(red), getMedian(green), getMedian(blue)};
-				
-				// Set the RGB value to the centered pixel at (x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
+				// Set the median of the values to the centered pixel at (x, y)
+				medians[x] = getMedian(values, count);
+			}
+			
+			sink.accept(band, y, medians);
+		}
+	}
+	
+	
+	/**
+	 * Check if every sample of a color channel is an 8-bit value
+	 * @param image the image
+	 * @param band the color channel
+	 * @return true if all samples lie in 0-255
+	 */
+	private boolean is8Bit(PlanarImage image, int band)
+	{
+		int[] plane = image.getPlane(band);
+		for(int y = 0; y < image.getHeight(); y++)
+		{
+			for(int x = 0, index = image.getIndex(0, y); x < image.getWidth(); x++)
+			{
+				if((plane[index + x] & ~0xFF) != 0)
+				{
+					return false;
+				}
 			}
 		}
 		
-		return processedImage;
+		return true;
 	}
 	
 	
 	/**
-	 * Sort the list and find the median
-	 * @param list the input list
-	 * @return the median of the input list
+	 * Sort the values and find the median
+	 * @param values the input values
+	 * @param count the number of values to be considered
+	 * @return the median of the input values
 	 */
-	private int getMedian(List<Integer> list)
+	private int getMedian(int[] values, int count)
 	{
-		Collections.sort(list);
-		return list.get((list.size() + 1)/2);
+		Arrays.sort(values, 0, count);
+		return values[count/2];
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package filtering;
+
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.PlanarImage;
+
+/**
+ * Recursive (IIR) approximation of the Gaussian filter by Young and van Vliet, with the poles of van Vliet, Young and Verbeek
+ * Every row, then every column, is run through a third-order causal filter and then the same filter backwards,
+ * which costs about 16 multiply-adds per pixel whatever the standard deviation
+ * Accuracy against the exact kernel: the standard deviation is exact, the peak of the 2D impulse response is
+ * 2% too high for sigma >= 10 (4% at sigma = 2, 7% at sigma = 1), and 8-bit images differ by at most 2 levels
+ * for sigma from 1 to 60
+ */
+final class RecursiveGaussian
+{
+	// Poles of the third-order filter for sigma = 2 (van Vliet, Young and Verbeek, 1998): a complex pair and a real pole
+	private static final double POLE_MODULUS = Math.hypot(1.41650, 1.00829);
+	private static final double POLE_ARGUMENT = Math.atan2(1.00829, 1.41650);
+	private static final double REAL_POLE = 1.86543;
+
+
+	private RecursiveGaussian()
+	{
+
+	}
+
+
+	/**
+	 * Get the number of pixels the filter reads on each side of a pixel
+	 * The response is infinite, so it is cut where the Gaussian has fallen below 0.04% of its peak
+	 * @param sigma the standard deviation of the Gaussian function
+	 * @return the radius of the neighborhood each output pixel depends on
+	 */
+	static int getRadius(double sigma)
+	{
+		return (int) Math.ceil(sigma * 4);
+	}
+
+
+	/**
+	 * Calculate the feedback coefficients of the causal filter for a standard deviation
+	 * The poles designed for sigma = 2 are raised to the power 1/q, with q chosen so that the variance
+	 * of the forward and backward filters together is exactly sigma^2
+	 * @param sigma the standard deviation of the Gaussian function
+	 * @return the coefficients b1, b2 and b3
+	 */
+	static double[] getCoefficients(double sigma)
+	{
+		// Find q by fixed-point iteration, the standard deviation growing almost linearly with q
+		double q = sigma/2;
+		for(int i = 0; i < 20; i++)
+		{
+			q *= sigma/Math.sqrt(getVariance(q));
+		}
+
+		// The inverses of the scaled poles: a complex pair e, conj(e) and a real one e3
+		double modulus = Math.pow(POLE_MODULUS, -1/q);
+		double real = modulus * Math.cos(POLE_ARGUMENT/q);
+		double e3 = Math.pow(REAL_POLE, -1/q);
+
+		// Expand (1 - e z^-1)(1 - conj(e) z^-1)(1 - e3 z^-1) into 1 - b1 z^-1 - b2 z^-2 - b3 z^-3
+		double b1 = 2 * real + e3;
+		double b2 = -(modulus * modulus + 2 * real * e3);
+		double b3 = modulus * modulus * e3;
+		return new double[] {b1, b2, b3};
+	}
+
+
+	/**
+	 * Calculate the variance of the forward and backward filters together, with the poles raised to the power 1/q
+	 * Every pole d adds 2d/(d - 1)^2
+	 * @param q the scale of the poles
+	 * @return the variance of the impulse response
+	 */
+	private static double getVariance(double q)
+	{
+		double modulus = Math.pow(POLE_MODULUS, 1/q);
+		double argument = POLE_ARGUMENT/q;
+		double dReal = modulus * Math.cos(argument);
+		double dImaginary = modulus * Math.sin(argument);
+
+		// 2d/(d - 1)^2 for the complex pole, whose conjugate adds the same real part
+		double xReal = dReal - 1;
+		double squareReal = xReal * xReal - dImaginary * dImaginary;
+		double squareImaginary = 2 * xReal * dImaginary;
+		double complexTerm = 2 * (dReal * squareReal + dImaginary * squareImaginary)/(squareReal * squareReal + squareImaginary * squareImaginary);
+
+		double d3 = Math.pow(REAL_POLE, 1/q);
+		return 2 * complexTerm + 2 * d3/((d3 - 1) * (d3 - 1));
+	}
+
+
+	/**
+	 * Apply the recursive Gaussian to every pixel of the given image
+	 * The image is extended beyond its edges by the border mode for getRadius(sigma) pixels, so that the
+	 * recursion has settled by the time it reaches the image
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size as the original image
+	 * @param sigma the standard deviation of the Gaussian function, at least 1
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	static void filter(PlanarImage image, PlanarImage processedImage, double sigma, BorderMode borderMode)
+	{
+		int radius = getRadius(sigma);
+		PlanarImage paddedImage = image.pad(radius, radius, borderMode);
+		int paddedWidth = paddedImage.getWidth();
+		int paddedHeight = paddedImage.getHeight();
+
+		// Take the coefficients of the recursion w[n] = b * x[n] + b1 * w[n - 1] + b2 * w[n - 2] + b3 * w[n - 3]
+		double[] coefficients = getCoefficients(sigma);
+		double b1 = coefficients[0];
+		double b2 = coefficients[1];
+		double b3 = coefficients[2];
+		double b = 1 - (b1 + b2 + b3);
+
+		// The padded image is filtered as doubles, so that rounding happens only once at the end
+		double[] values = new double[paddedWidth * paddedHeight];
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+			for(int i = 0; i < values.length; i++)
+			{
+				values[i] = src[i];
+			}
+
+			// Filter every row forwards then backwards, starting from the steady state of its first or last sample
+			for(int y = 0; y < paddedHeight; y++)
+			{
+				int first = y * paddedWidth;
+				int last = first + paddedWidth - 1;
+
+				double w1 = values[first], w2 = w1, w3 = w1;
+				for(int i = first; i <= last; i++)
+				{
+					double w = b * values[i] + b1 * w1 + b2 * w2 + b3 * w3;
+					values[i] = w;
+					w3 = w2;
+					w2 = w1;
+					w1 = w;
+				}
+
+				w1 = values[last];
+				w2 = w1;
+				w3 = w1;
+				for(int i = last; i >= first; i--)
+				{
+					double w = b * values[i] + b1 * w1 + b2 * w2 + b3 * w3;
+					values[i] = w;
+					w3 = w2;
+					w2 = w1;
+					w1 = w;
+				}
+			}
+
+			// Filter every column the same way, a whole row at a time so that the memory is read in order
+			for(int y = 0; y < paddedHeight; y++)
+			{
+				int row = y * paddedWidth;
+				int row1 = Math.max(y - 1, 0) * paddedWidth;
+				int row2 = Math.max(y - 2, 0) * paddedWidth;
+				int row3 = Math.max(y - 3, 0) * paddedWidth;
+				for(int x = 0; x < paddedWidth; x++)
+				{
+					values[row + x] = b * values[row + x] + b1 * values[row1 + x] + b2 * values[row2 + x] + b3 * values[row3 + x];
+				}
+			}
+
+			for(int y = paddedHeight - 1; y >= 0; y--)
+			{
+				int row = y * paddedWidth;
+				int row1 = Math.min(y + 1, paddedHeight - 1) * paddedWidth;
+				int row2 = Math.min(y + 2, paddedHeight - 1) * paddedWidth;
+				int row3 = Math.min(y + 3, paddedHeight - 1) * paddedWidth;
+				for(int x = 0; x < paddedWidth; x++)
+				{
+					values[row + x] = b * values[row + x] + b1 * values[row1 + x] + b2 * values[row2 + x] + b3 * values[row3 + x];
+				}
+			}
+
+			// Store the pixels of the image, without the padding, snapped as the convolution engines do so that
+			// a flat area keeps its value
+			int[] dst = processedImage.getPlane(band);
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				int row = (y + radius) * paddedWidth + radius;
+				for(int x = 0, index = processedImage.getIndex(0, y); x < image.getWidth(); x++)
+				{
+					dst[index + x] = ConvolutionEngine.toSample(values[row + x]);
+				}
+			}
+		}
+
+		BufferPool.release(paddedImage);
+	}
+}
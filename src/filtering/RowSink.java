@@ -0,0 +1,17 @@
+package filtering;
+
+/**
+ * The next stage of a streaming filter, which receives every row of a color channel as soon as the filter has computed it
+ * so that the row is used while it is still in cache, without a full-image intermediate or a second traversal
+ */
+interface RowSink
+{
+	/**
+	 * Take a filtered row
+	 * The row is a scratch array overwritten by the next row, so it must not be kept
+	 * @param band the color channel
+	 * @param y the y-coordinate of the row
+	 * @param row the filtered samples of the row, from index 0 to the width of the image
+	 */
+	public void accept(int band, int y, int[] row);
+}
@@ -1,8 +1,16 @@
 package filtering;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
 
+import processing.BorderMode;
+import processing.BufferPool;
+import processing.ImageStore;
+import processing.PlanarImage;
 import processing.Processor;
+import processing.RasterStore;
+import processing.TiledImage;
 
 public interface SpatialFilter extends Processor
 {
@@ -12,7 +20,218 @@ public interface SpatialFilter extends Processor
 	 * @param kernelRadius the radius of the kernel
 	 * @return the filtered image
 	 */
-	public BufferedImage process(BufferedImage image, int kernelRadius);
+	public default BufferedImage process(BufferedImage image, int kernelRadius)
+	{
+		// Create a new image with the same image type as the original image
+		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), Processor.getImageType(image));
+		
+		process(image, processedImage, kernelRadius);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Filter a given image and store the result in a caller-supplied image
+	 * The planar working copies are taken from the buffer pool, so filtering a stream of same-sized images
+	 * into the same destination allocates no pixels once the pool is warm
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size as the original image
+	 * @param kernelRadius the radius of the kernel
+	 */
+	public default void process(BufferedImage image, BufferedImage processedImage, int kernelRadius)
+	{
+		PlanarImage planarImage = BufferPool.acquire(image);
+		PlanarImage processedPlanarImage = BufferPool.acquireCompatible(planarImage);
+		
+		process(planarImage, processedPlanarImage, kernelRadius);
+		processedPlanarImage.write(processedImage.getRaster(), 0, 0, 0, 0, image.getWidth(), image.getHeight());
+		
+		BufferPool.release(planarImage);
+		BufferPool.release(processedPlanarImage);
+	}
+	
+	
+	/**
+	 * Filter a given planar image
+	 * @param image the original image
+	 * @param kernelRadius the radius of the kernel
+	 * @return the filtered image
+	 */
+	public default PlanarImage process(PlanarImage image, int kernelRadius)
+	{
+		PlanarImage processedImage = PlanarImage.createCompatible(image);
+		process(image, processedImage, kernelRadius);
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Filter a given planar image and store the result in a caller-supplied image
+	 * Every pixel of the processed image is overwritten, so it may hold stale pixels (such as a pooled image)
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 * @param kernelRadius the radius of the kernel
+	 */
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius);
+	
+	
+	/**
+	 * Filter a given image tile by tile, so that only a few tiles are held in memory at a time
+	 * @param image the original image
+	 * @param kernelRadius the radius of the kernel
+	 * @param tileSize the width and height of the tiles
+	 * @return the filtered image
+	 */
+	public default BufferedImage process(BufferedImage image, int kernelRadius, int tileSize)
+	{
+		// Create a new image with the same image type as the original image
+		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), Processor.getImageType(image));
+		
+		process(new RasterStore(image), new RasterStore(processedImage), kernelRadius, tileSize);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Filter a stored image tile by tile and store the result in the destination
+	 * @param image the storage of the original image
+	 * @param processedImage the storage of the filtered image, with the same size as the original image
+	 * @param kernelRadius the radius of the kernel
+	 * @param tileSize the width and height of the tiles
+	 */
+	public default void process(ImageStore image, ImageStore processedImage, int kernelRadius, int tileSize)
+	{
+		int halo = getHalo(kernelRadius);
+		new TiledImage(image, tileSize, tileSize, getBorderMode()).process(processedImage, halo, halo, (tile, processedTile) -> process(tile, processedTile, kernelRadius));
+	}
+	
+	
+	/**
+	 * Filter a stored image tile by tile, scaling the unscaled results of the operator to the full 8-bit scale of the whole image
+	 * The first pass records the max and min values of every tile, the second pass recomputes every tile and scales it
+	 * @param image the storage of the original image
+	 * @param processedImage the storage of the filtered image, with the same size as the original image
+	 * @param tileSize the width and height of the tiles
+	 * @param halo the number of pixels the operator reads on each side of a pixel
+	 * @param borderMode the way the operator extends the image beyond its edges
+	 * @param operator the operation writing the unscaled results of a tile (its first argument) to its second argument
+	 */
+	public static void processWithScaling(ImageStore image, ImageStore processedImage, int tileSize, int halo, BorderMode borderMode, BiConsumer<PlanarImage, PlanarImage> operator)
+	{
+		TiledImage tiledImage = new TiledImage(image, tileSize, tileSize, borderMode);
+		
+		// Initialize the array to store max and min values of every channel, starting from the full 8-bit scale
+		int[] max = new int[image.getBands()];
+		int[] min = new int[image.getBands()];
+		Arrays.fill(max, 255);
+		
+		// Record max and min values of every tile, then merge them
+		tiledImage.forEachTile(halo, halo, tile -> 
+		{
+			int[] tileMax = max.clone();
+			int[] tileMin = min.clone();
+			PlanarImage processedTile = BufferPool.acquireCompatible(tile.getPixels());
+			operator.accept(tile.getPixels(), processedTile);
+			SpatialFilter.getRange(processedTile, tile.getOffsetX(), tile.getOffsetY(), tile.getWidth(), tile.getHeight(), tileMax, tileMin);
+			BufferPool.release(processedTile);
+			
+			synchronized(max)
+			{
+				for(int band = 0; band < max.length; band++)
+				{
+					max[band] = Math.max(max[band], tileMax[band]);
+					min[band] = Math.min(min[band], tileMin[band]);
+				}
+			}
+		});
+		
+		// Scale every tile with the max and min values of the whole image
+		tiledImage.process(processedImage, halo, halo, (tile, processedTile) -> 
+		{
+			operator.accept(tile, processedTile);
+			SpatialFilter.scalePixels(processedTile, max, min);
+		});
+	}
+	
+	
+	/**
+	 * Get the way the filter extends the image beyond its edges
+	 * @return the border mode
+	 */
+	public default BorderMode getBorderMode()
+	{
+		return BorderMode.DEFAULT;
+	}
+	
+	
+	/**
+	 * Get the number of pixels the filter reads on each side of a pixel
+	 * @param kernelRadius the radius of the kernel
+	 * @return the radius of the neighborhood each output pixel depends on
+	 */
+	public default int getHalo(int kernelRadius)
+	{
+		return kernelRadius;
+	}
+	
+	
+	/**
+	 * Perform the convolution on every pixel of the given image, row by row with the convolution engine
+	 * The image is extended beyond its edges by the default border mode, and the results are stored unclipped in the processed image
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 */
+	public static void convolve(PlanarImage image, PlanarImage processedImage, double[][] kernel)
+	{
+		ConvolutionEngine.convolve(image, processedImage, kernel, BorderMode.DEFAULT);
+	}
+	
+	
+	/**
+	 * Perform the convolution on every pixel of the given image, with the fastest engine for the kernel as chosen by the convolution planner
+	 * The image is extended beyond its edges by the border mode, and the results are stored unclipped in the processed image
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolve(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode)
+	{
+		ConvolutionPlanner.convolve(image, processedImage, kernel, borderMode);
+	}
+	
+	
+	/**
+	 * Perform the convolution on every pixel of the given image in the frequency domain, with the FFT convolution engine
+	 * Worth it for large kernels, whose cost no longer grows with their size; the spectrum of the kernel is cached
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernel the kernel to be convolved with the image, indexed as kernel[x][y]
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolveFFT(PlanarImage image, PlanarImage processedImage, double[][] kernel, BorderMode borderMode)
+	{
+		FFTConvolutionEngine.convolve(image, processedImage, kernel, borderMode);
+	}
+	
+	
+	/**
+	 * Perform the convolution with a separable kernel, the outer product kernelX[i] * kernelY[j], on every pixel of the given image
+	 * The image is filtered horizontally then vertically, so each pixel costs O(r) instead of O(r^2) operations,
+	 * unless the convolution planner finds the kernel is a box or large enough for the frequency domain
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param kernelX the horizontal kernel
+	 * @param kernelY the vertical kernel
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public static void convolveSeparable(PlanarImage image, PlanarImage processedImage, double[] kernelX, double[] kernelY, BorderMode borderMode)
+	{
+		ConvolutionPlanner.convolveSeparable(image, processedImage, kernelX, kernelY, borderMode);
+	}
 	
 	
 	/**
@@ -98,4 +317,77 @@ public interface SpatialFilter extends Processor
 			}
 		}
 	}
+	
+	
+	/**
+	 * Scale image to make its intensities span the full 8-bit scale from 0 to 255
+	 * @param image the image whose values to be scaled in place
+	 * @param max the maximum value of each channel
+	 * @param min the minimum value of each channel
+	 */
+	public static void scalePixels(PlanarImage image, int[] max, int[] min)
+	{
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] plane = image.getPlane(band);
+			int range = max[band] - min[band];
+			
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				for(int i = image.getIndex(0, y), end = i + image.getWidth(); i < end; i++)
+				{
+					plane[i] = (plane[i] - min[band]) * 255/range;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Clip the image's intensities to make sure it is in the range from 0 to 255
+	 * @param image the image whose values to be clipped in place
+	 */
+	public static void clipPixels(PlanarImage image)
+	{
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] plane = image.getPlane(band);
+			
+			for(int y = 0; y < image.getHeight(); y++)
+			{
+				for(int i = image.getIndex(0, y), end = i + image.getWidth(); i < end; i++)
+				{
+					plane[i] = plane[i] > 255 ? 255 : (plane[i] < 0 ? 0 : plane[i]);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Record the max and min values of every channel in an area of the image
+	 * @param image the image to be examined
+	 * @param x the x-coordinate of the area
+	 * @param y the y-coordinate of the area
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @param max the max values of every channel, updated in place
+	 * @param min the min values of every channel, updated in place
+	 */
+	public static void getRange(PlanarImage image, int x, int y, int width, int height, int[] max, int[] min)
+	{
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] plane = image.getPlane(band);
+			
+			for(int j = y; j < y + height; j++)
+			{
+				for(int i = image.getIndex(x, j), end = i + width; i < end; i++)
+				{
+					min[band] = plane[i] < min[band] ? plane[i] : min[band];
+					max[band] = plane[i] > max[band] ? plane[i] : max[band];
+				}
+			}
+		}
+	}
 }
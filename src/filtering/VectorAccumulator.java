@@ -0,0 +1,157 @@
+package filtering;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Row accumulator running on the JDK Vector API
+ * Only loaded by ConvolutionEngine when the jdk.incubator.vector module is available
+ */
+class VectorAccumulator implements ConvolutionEngine.RowAccumulator
+{
+	// The widest double vector of the machine, and int vectors with the same number of lanes
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize()/2));
+
+	// The widest int vector of the machine, for the integer sums
+	private static final VectorSpecies<Integer> WIDE_INTS = IntVector.SPECIES_PREFERRED;
+
+
+	/**
+	 * Class constructor
+	 */
+	public VectorAccumulator()
+	{
+
+	}
+
+
+	@Override
+	public void accumulate(int[] src, int offset, double weight, double[] sums, int from, int to)
+	{
+		DoubleVector weights = DoubleVector.broadcast(DOUBLES, weight);
+
+		// Multiply and add whole vectors, separately rather than fused so the sums round as the scalar loop does
+		int x = from;
+		for(int end = from + DOUBLES.loopBound(to - from); x < end; x += DOUBLES.length())
+		{
+			DoubleVector samples = (DoubleVector) IntVector.fromArray(INTS, src, offset + x).convertShape(VectorOperators.I2D, DOUBLES, 0);
+			DoubleVector.fromArray(DOUBLES, sums, x).add(samples.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * src[offset + x];
+		}
+	}
+
+
+	@Override
+	public void accumulate(double[] src, int offset, double weight, double[] sums, int from, int to)
+	{
+		DoubleVector weights = DoubleVector.broadcast(DOUBLES, weight);
+
+		// Multiply and add whole vectors, separately rather than fused so the sums round as the scalar loop does
+		int x = from;
+		for(int end = from + DOUBLES.loopBound(to - from); x < end; x += DOUBLES.length())
+		{
+			DoubleVector samples = DoubleVector.fromArray(DOUBLES, src, offset + x);
+			DoubleVector.fromArray(DOUBLES, sums, x).add(samples.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * src[offset + x];
+		}
+	}
+
+
+	@Override
+	public void accumulate(int[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to)
+	{
+		DoubleVector weights = DoubleVector.broadcast(DOUBLES, weight);
+
+		// The int sum of the two taps is exact, so converting it once gives the same sums as the scalar loop
+		int x = from;
+		for(int end = from + DOUBLES.loopBound(to - from); x < end; x += DOUBLES.length())
+		{
+			IntVector pair = IntVector.fromArray(INTS, src, offset + x).add(IntVector.fromArray(INTS, src, otherOffset + x));
+			DoubleVector samples = (DoubleVector) pair.convertShape(VectorOperators.I2D, DOUBLES, 0);
+			DoubleVector.fromArray(DOUBLES, sums, x).add(samples.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+		}
+	}
+
+
+	@Override
+	public void accumulate(double[] src, int offset, int otherOffset, double weight, double[] sums, int from, int to)
+	{
+		DoubleVector weights = DoubleVector.broadcast(DOUBLES, weight);
+
+		// Add, multiply and add whole vectors, separately rather than fused so the sums round as the scalar loop does
+		int x = from;
+		for(int end = from + DOUBLES.loopBound(to - from); x < end; x += DOUBLES.length())
+		{
+			DoubleVector samples = DoubleVector.fromArray(DOUBLES, src, offset + x).add(DoubleVector.fromArray(DOUBLES, src, otherOffset + x));
+			DoubleVector.fromArray(DOUBLES, sums, x).add(samples.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+		}
+	}
+
+
+	@Override
+	public void accumulate(int[] src, int offset, int weight, int[] sums, int from, int to)
+	{
+		IntVector weights = IntVector.broadcast(WIDE_INTS, weight);
+
+		// Int arithmetic is exact, so the vectors give the same sums as the scalar loop
+		int x = from;
+		for(int end = from + WIDE_INTS.loopBound(to - from); x < end; x += WIDE_INTS.length())
+		{
+			IntVector samples = IntVector.fromArray(WIDE_INTS, src, offset + x);
+			IntVector.fromArray(WIDE_INTS, sums, x).add(samples.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * src[offset + x];
+		}
+	}
+
+
+	@Override
+	public void accumulate(int[] src, int offset, int otherOffset, int weight, int[] sums, int from, int to)
+	{
+		IntVector weights = IntVector.broadcast(WIDE_INTS, weight);
+
+		// Int arithmetic is exact, so the vectors give the same sums as the scalar loop
+		int x = from;
+		for(int end = from + WIDE_INTS.loopBound(to - from); x < end; x += WIDE_INTS.length())
+		{
+			IntVector pair = IntVector.fromArray(WIDE_INTS, src, offset + x).add(IntVector.fromArray(WIDE_INTS, src, otherOffset + x));
+			IntVector.fromArray(WIDE_INTS, sums, x).add(pair.mul(weights)).intoArray(sums, x);
+		}
+
+		// Finish the remaining columns one by one
+		for(; x < to; x++)
+		{
+			sums[x] += weight * (src[offset + x] + src[otherOffset + x]);
+		}
+	}
+}
@@ -1,8 +1,7 @@
 package hazeRemoval;
 
-import java.awt.image.BufferedImage;
-
-import processing.Processor;
+import processing.OffHeapImage;
+import processing.PlanarImage;
 
 public class DarkChannel implements HazeRemover
 {
@@ -15,25 +14,28 @@ public class DarkChannel implements HazeRemover
 	}
 
 	@Override
-	public BufferedImage process(BufferedImage image, int patchRadius) 
+	public PlanarImage process(PlanarImage image, int patchRadius) 
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+		PlanarImage processedImage = PlanarImage.createCompatible(image);
 						
 		// Get the dark channel values
-		double[][] darkChannel = HazeRemover.getDarkChannel(HazeRemover.getRGBs(image), patchRadius);
+		OffHeapImage darkChannel = HazeRemover.getDarkChannel(image, patchRadius);
 		
 		// Set the dark channel values to the corresponding coordinate of the created image
-		for(int x = 0; x < image.getWidth(); x++) 
+		// Use the same dark channel values for all channels as dark channel is in grayscale
+		for(int band = 0; band < image.getBands(); band++)
 		{
+			int[] dst = processedImage.getPlane(band);
 			for(int y = 0; y < image.getHeight(); y++) 
 			{
-				// Use the same dark channel values for all channels as dark channel is in grayscale
-				int[] rgb = new int[] {(int) darkChannel[x][y], (int) darkChannel[x][y], (int) darkChannel[x][y]};
-				Processor.setRGB(processedImage, x, y, rgb);
+				for(int x = 0; x < image.getWidth(); x++) 
+				{
+					dst[processedImage.getIndex(x, y)] = (int) darkChannel.getSample(x, y, 0);
+				}
 			}
 		}
+		
+		darkChannel.release();
 				
 		return processedImage;
 	}
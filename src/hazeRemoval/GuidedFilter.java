@@ -1,158 +1,112 @@
 package hazeRemoval;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.imgproc.Imgproc;
+import processing.BorderMode;
+import processing.IntegralImage;
+import processing.OffHeapImage;
+import processing.PlanarImage;
 
 public class GuidedFilter 
 {	
-	static 
-	{
-		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-	}
-	
-	public double[][][] process(double[][][] filteringRGBs, double[][][] guidanceRGBs, int r, double eps)
+	/**
+	 * Filter a single-channel map guided by the intensity of an image
+	 * @param filtering the map to be filtered, with the same size as the guidance image
+	 * @param guidance the guidance image
+	 * @param r mask radius
+	 * @param eps regularization parameter
+	 * @return the filtered map, stored off-heap
+	 */
+	public OffHeapImage process(OffHeapImage filtering, PlanarImage guidance, int r, double eps)
 	{
-	    Mat p = toMat(filteringRGBs);
-		Mat I = toMat(guidanceRGBs);
-		
-		// mean_I = mean(I)
-		Mat mean_I = new Mat();
-		meanFilter(I, mean_I, r);
-		
-		// mean_p = mean(p)
-		Mat mean_p = new Mat();
-		meanFilter(p, mean_p, r);
+		// Use the average of all color channels as the guidance intensity
+		OffHeapImage intensities = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		for(int y = 0; y < guidance.getHeight(); y++)
+		{
+			for(int x = 0; x < guidance.getWidth(); x++)
+			{
+				double intensity = 0;
+				for(int band = 0; band < guidance.getBands(); band++)
+				{
+					intensity += guidance.getPlane(band)[guidance.getIndex(x, y)];
+				}
 				
-		// corr_I = mean(I. * I, r)
-		Mat corr_I = new Mat();
-		meanFilter(I.mul(I), corr_I, r);
+				intensities.setSample(x, y, 0, intensity / guidance.getBands());
+			}
+		}
 		
-		// corr_Ip = mean(I. * p, r)
-		Mat corr_Ip = new Mat();
-		meanFilter(I.mul(p), corr_Ip, r);
+		int size = guidance.getWidth() * guidance.getHeight();
 		
-		// var_I = corr_I - mean_I. * mean_I
-		Mat var_I = new Mat();
-		Core.subtract(corr_I, mean_I.mul(mean_I), var_I);
+		// mean_I = mean(I), mean_p = mean(p)
+		OffHeapImage mean_I = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		meanFilter(intensities, mean_I, r);
+		OffHeapImage mean_p = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		meanFilter(filtering, mean_p, r);
 		
-		// cov_Ip = corr_Ip - mean_I. * mean_p
-		Mat cov_Ip = new Mat();
-		Core.subtract(corr_Ip, mean_I.mul(mean_p), cov_Ip);
+		// corr_I = mean(I. * I, r)
+		OffHeapImage product = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		for(int i = 0; i < size; i++)
+		{
+			product.set(i, 0, intensities.get(i, 0) * intensities.get(i, 0));
+		}
+		OffHeapImage corr_I = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		meanFilter(product, corr_I, r);
 		
-		// a = cov_Ip ./ (var_I + eps)
-		Mat a = new Mat();
-		Core.add(var_I, new Scalar(eps), a);
-		Core.divide(cov_Ip, a, a);
+		// corr_Ip = mean(I. * p, r)
+		for(int i = 0; i < size; i++)
+		{
+			product.set(i, 0, intensities.get(i, 0) * filtering.get(i, 0));
+		}
+		OffHeapImage corr_Ip = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		meanFilter(product, corr_Ip, r);
 		
-		// b = mean_p - a .* mean_I;
-		Mat b = new Mat();
-		Core.subtract(mean_p, a.mul(mean_I), b);
+		// a = cov_Ip ./ (var_I + eps) and b = mean_p - a .* mean_I, stored in place of corr_Ip and mean_p
+		for(int i = 0; i < size; i++)
+		{
+			// var_I = corr_I - mean_I. * mean_I
+			double var_I = corr_I.get(i, 0) - mean_I.get(i, 0) * mean_I.get(i, 0);
+			
+			// cov_Ip = corr_Ip - mean_I. * mean_p
+			double cov_Ip = corr_Ip.get(i, 0) - mean_I.get(i, 0) * mean_p.get(i, 0);
+			
+			double a = cov_Ip / (var_I + eps);
+			corr_Ip.set(i, 0, a);
+			mean_p.set(i, 0, mean_p.get(i, 0) - a * mean_I.get(i, 0));
+		}
+		OffHeapImage a = corr_Ip;
+		OffHeapImage b = mean_p;
 		
-		// mean_a = mean(a)
-		Mat mean_a = new Mat();
+		// mean_a = mean(a), mean_b = mean(b)
+		OffHeapImage mean_a = corr_I;
 		meanFilter(a, mean_a, r);
-		
-		// mean_b = mean(b)
-		Mat mean_b = new Mat();
+		OffHeapImage mean_b = product;
 		meanFilter(b, mean_b, r);
 		
-		// q = mean_a .* I + mean_b
-		Mat q = new Mat();
-		Core.add(mean_a.mul(I), mean_b, q);
-		
-		double[][][] transmissionRefine = toArray(q);
-		return transmissionRefine;
-	}
-	
-	/**
-	 * Apply Mean filter on a source image with given mask radius and store the processed image to the provided destination image
-	 * @param src source image
-	 * @param dst destination image
-	 * @param r mask radius
-	 */
-	private void meanFilter(Mat src, Mat dst, int r)
-	{
-		// Apply the Box filter
-		Imgproc.boxFilter(src, dst, -1, new Size(r, r));
-		
-		// Construct an identity matrix
-		Mat N = new Mat();
-		Imgproc.boxFilter(Mat.ones(src.rows(), src.cols(), src.type()), N, -1, new Size(r, r));
-		
-		// Normalize the filtered image with the constructed identity matrix
-		Core.divide(dst, N, dst);
-	}
-	
-	
-	/**
-	 * Convert the RGB array to Mat object
-	 * @param rgbs input RGB array
-	 * @return RGB mat
-	 */
-	private static Mat toMat(double[][][] rgbs)
-	{
-		Mat mat = new Mat(rgbs.length, rgbs[0].length, CvType.CV_64F);
-		
-		for(int x = 0; x < rgbs.length; x++) 
+		// q = mean_a .* I + mean_b, stored straight into an off-heap map
+		OffHeapImage transmissionRefine = OffHeapImage.createMap(guidance.getWidth(), guidance.getHeight());
+		for(int i = 0; i < size; i++)
 		{
-			for(int y = 0; y < rgbs[0].length; y++) 
-			{
-				mat.put(x, y, rgbs[x][y]);
-			}
+			transmissionRefine.set(i, 0, mean_a.get(i, 0) * intensities.get(i, 0) + mean_b.get(i, 0));
 		}
 		
-		Core.rotate(mat, mat, Core.ROTATE_90_CLOCKWISE);
-		Core.flip(mat, mat, 1);
+		intensities.release();
+		mean_I.release();
+		mean_a.release();
+		mean_b.release();
+		a.release();
+		b.release();
 		
-		return mat;
-	}
-	
-	
-	/**
-	 * Convert a RGB mat to RGB array
-	 * @param mat input RGB mat
-	 * @return RGB array
-	 */
-	private static double[][][] toArray(Mat mat)
-	{
-		return HazeRemover.getRGBs(toBufferedImage(mat));
+		return transmissionRefine;
 	}
-		
 	
 	/**
-	 * Convert a RGB mat to BufferedImage object
-	 * @param mat input RGB mat
-	 * @return BufferedImage object
+	 * Apply Mean filter on a source map with given mask size and store the processed map to the provided destination map
+	 * The means are taken from a summed-area table, so the cost does not depend on the mask size
+	 * @param src source map
+	 * @param dst destination map
+	 * @param r mask size
 	 */
-	private static BufferedImage toBufferedImage(Mat mat)
+	private void meanFilter(OffHeapImage src, OffHeapImage dst, int r)
 	{
-	  MatOfByte matOfByte = new MatOfByte();
-	  Imgcodecs.imencode(".bmp", mat, matOfByte);
-	      
-	  byte[] data = matOfByte.toArray();
-	  
-	  BufferedImage bufferedImage = null;
-	  try 
-	  {
-		  bufferedImage = ImageIO.read(new ByteArrayInputStream(data));
-	  } 
-	  catch (IOException e) 
-	  {
-		  e.printStackTrace();
-	  }
-	  
-	  return bufferedImage;
+		// Apply the Box filter, with the map mirrored beyond its edges
+		IntegralImage.mean(src, dst, r, r, BorderMode.REFLECT);
 	}
 }
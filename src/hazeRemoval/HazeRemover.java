@@ -1,91 +1,154 @@
 package hazeRemoval;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
+import processing.BorderMode;
+import processing.OffHeapImage;
+import processing.PlanarImage;
 import processing.Processor;
+import processing.RunningExtrema;
 
 public interface HazeRemover extends Processor 
 {
-	public BufferedImage process(BufferedImage image, int patchRadius);
+	/**
+	 * Process a given image
+	 * @param image the original image
+	 * @param patchRadius the patch radius
+	 * @return the processed image
+	 */
+	public default BufferedImage process(BufferedImage image, int patchRadius)
+	{
+		return process(PlanarImage.fromBufferedImage(image), patchRadius).toBufferedImage(Processor.getImageType(image));
+	}
+	
+	
+	/**
+	 * Process a given planar image
+	 * @param image the original image
+	 * @param patchRadius the patch radius
+	 * @return the processed image
+	 */
+	public PlanarImage process(PlanarImage image, int patchRadius);
 	
 	
 	/**
 	 * Generate the dark channel of the image
-	 * @param rgbs the image's RGB values in array
+	 * @param image the original image
 	 * @param patchRadius the patch radius
-	 * @return Dark channel of the image
+	 * @return Dark channel of the image, stored off-heap
 	 */
-	public static double[][] getDarkChannel(double[][][] rgbs, int patchRadius)
+	public static OffHeapImage getDarkChannel(PlanarImage image, int patchRadius)
 	{
-		double[][] darkChannel = new double[rgbs.length][rgbs[0].length];
-		for(int x = 0; x < darkChannel.length; x++) 
+		double[] atmosphericLight = new double[image.getBands()];
+		Arrays.fill(atmosphericLight, 1);
+		
+		return getDarkChannel(image, atmosphericLight, patchRadius);
+	}
+	
+	
+	/**
+	 * Generate the dark channel of the image normalized by the atmospheric light
+	 * @param image the original image
+	 * @param atmosphericLight the value each color channel is divided by
+	 * @param patchRadius the patch radius
+	 * @return Dark channel of the normalized image, stored off-heap
+	 */
+	public static OffHeapImage getDarkChannel(PlanarImage image, double[] atmosphericLight, int patchRadius)
+	{
+		// Get the smallest normalized intensity among all color channels of every pixel
+		OffHeapImage minimums = OffHeapImage.createMap(image.getWidth(), image.getHeight());
+		for(int y = 0; y < image.getHeight(); y++)
 		{
-			for(int y = 0; y < darkChannel[0].length; y++) 
+			for(int x = 0; x < image.getWidth(); x++)
 			{
-				// Get list of RGB values contained in the patch with given radius
-				List<double[]> rgbValues = getRGBs(rgbs, x, y, patchRadius);		
-				
-				// Get the smallest intensity among all color channels of every pixels under the patch
-				double min = 255;
-				for(double[] rgb : rgbValues)
+				double min = Double.MAX_VALUE;
+				for(int band = 0; band < image.getBands(); band++)
 				{
-					min = Math.min(min, Math.min(Math.min(rgb[0], rgb[1]), rgb[2]));
+					min = Math.min(min, image.getPlane(band)[image.getIndex(x, y)] / atmosphericLight[band]);
 				}
 				
-				darkChannel[x][y] = min;
+				minimums.set(minimums.getIndex(x, y), 0, min);
 			}
 		}
 		
+		// Get the smallest of these intensities under the patch
+		OffHeapImage darkChannel = getMinimums(minimums, patchRadius);
+		minimums.release();
+		
 		return darkChannel;
 	}
 	
 	
 	/**
 	 * Estimate the atmospheric light
-	 * @param rgbs the image's RGB values in array
-	 * @param patchRadius the patch radius
-	 * @return the atmospheric light
+	 * @param image the original image
+	 * @param darkChannel the dark channel of the original image, which holds integer intensities
+	 * @return the atmospheric light of every color channel
 	 */
-	public static double[] getAtmosphericLight(double[][][] rgbs, int patchRadius)
+	public static double[] getAtmosphericLight(PlanarImage image, OffHeapImage darkChannel)
 	{
-		// Generate the dark channel of the image
-		double[][] darkChannel = getDarkChannel(rgbs, patchRadius);
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		// Calculate the number of 0.1% brightest pixels in the dark channel
+		int numOfBrightestPixels = Math.max(1, (int) (width * height * 0.1/100));
 		
-		// Add the dark channel values to a list
-		List<Pixel> darkChannelValues = new ArrayList<Pixel>();
-		for(int x = 0; x < darkChannel.length; x++) 
+		// Count the frequency of every dark channel value
+		int maxValue = 0;
+		for(int i = 0; i < width * height; i++)
 		{
-			for(int y = 0; y < darkChannel[0].length; y++) 
-			{
-				darkChannelValues.add(new Pixel(x, y, darkChannel[x][y]));		
-			}
-		}	
+			maxValue = Math.max(maxValue, (int) darkChannel.get(i, 0));
+		}
 		
-		// Sort the list of dark channel values
-		Collections.sort(darkChannelValues);
+		int[] freqs = new int[maxValue + 1];
+		for(int i = 0; i < width * height; i++)
+		{
+			freqs[(int) darkChannel.get(i, 0)]++;
+		}
 		
-		// Calculate the number of 0.1% brightest pixels in the dark channel
-		int numOfBrightestPixels = (int) (darkChannel.length * darkChannel[0].length * 0.1/100);
+		// Find the lowest dark channel value among these brightest pixels
+		int threshold = maxValue;
+		int numOfBrighterPixels = 0;
+		while(numOfBrighterPixels + freqs[threshold] < numOfBrightestPixels)
+		{
+			numOfBrighterPixels += freqs[threshold--];
+		}
+		
+		// Count the brightest pixels whose dark channel value is tied with the threshold
+		int numOfTiedPixels = numOfBrightestPixels - numOfBrighterPixels;
 		
 		// Construct a variable to store the highest intensity along the loop
-		double highestIntensity = 0;		
+		double highestIntensity = -1;		
 		
 		// Loop through these brightest pixels and select the one with highest intensity as the atmospheric light
-		double[] atmosphericLight = new double[3];
-		for(int i = 0; i < numOfBrightestPixels; i++)
-		{		
-			Pixel pixel = darkChannelValues.get(i);
-			
-			double[] rgb = rgbs[pixel.posX][pixel.posY];
-			double intensity = (rgb[0] + rgb[1] + rgb[2])/3;
-			
-			if(highestIntensity < intensity)
+		double[] atmosphericLight = new double[image.getBands()];
+		for(int x = 0; x < width; x++)
+		{
+			for(int y = 0; y < height; y++)
 			{
-				highestIntensity = intensity;
-				atmosphericLight = rgb;
+				int value = (int) darkChannel.get(darkChannel.getIndex(x, y), 0);
+				if(value < threshold || (value == threshold && numOfTiedPixels-- <= 0))
+				{
+					continue;
+				}
+				
+				int index = image.getIndex(x, y);
+				double intensity = 0;
+				for(int band = 0; band < image.getBands(); band++)
+				{
+					intensity += image.getPlane(band)[index];
+				}
+				intensity /= image.getBands();
+				
+				if(highestIntensity < intensity)
+				{
+					highestIntensity = intensity;
+					for(int band = 0; band < image.getBands(); band++)
+					{
+						atmosphericLight[band] = image.getPlane(band)[index];
+					}
+				}
 			}
 		}
 
@@ -95,52 +158,34 @@ public interface HazeRemover extends Processor
 	
 	/**
 	 * Estimate the transmission map
-	 * @param rgbs the image's RGB values in array
+	 * @param image the original image
+	 * @param atmosphericLight the atmospheric light
 	 * @param patchRadius the patch radius
 	 * @param withErosion if the transmission map be eroded
-	 * @return the transmission estimate
+	 * @return the transmission estimate, scaled from 0-255 and stored off-heap
 	 */
-	public static double[][][] getTranmissionEstimate(double[][][] rgbs, int patchRadius, boolean withErosion)
+	public static OffHeapImage getTranmissionEstimate(PlanarImage image, double[] atmosphericLight, int patchRadius, boolean withErosion)
 	{		
-		// Estimate the atmospheric light
-		double[] atmosphericLight = getAtmosphericLight(rgbs, patchRadius);
+		// Generate the dark channel of the RGB values normalized with the atmospheric light
+		OffHeapImage transmissionDarkChannel = getDarkChannel(image, atmosphericLight, patchRadius);
 		
-		// Normalize the RGB values with this atmospheric light
-		double[][][] normalizedRGBS = new double[rgbs.length][rgbs[0].length][rgbs[0][0].length];
-		for(int x = 0; x < rgbs.length; x++) 
+		// Perform erosion on the transmission if specified
+		if(withErosion)
 		{
-			for(int y = 0; y < rgbs[0].length; y++) 
-			{
-				for(int i = 0; i < rgbs[0][0].length; i++)
-				{
-					normalizedRGBS[x][y][i] = rgbs[x][y][i] / atmosphericLight[i];
-				}
-			}
+			OffHeapImage erodedDarkChannel = getMaximums(transmissionDarkChannel, patchRadius);
+			transmissionDarkChannel.release();
+			transmissionDarkChannel = erodedDarkChannel;
 		}
 		
-		// Generate the dark channel of this normalized RGB values
-		double[][] transmissionDarkChannel = getDarkChannel(normalizedRGBS, patchRadius);
-		
-		// Perform erosion on the transmission if specified
-		transmissionDarkChannel = withErosion ? getMaximums(transmissionDarkChannel, patchRadius) : transmissionDarkChannel;		
-		
 		// Introduce a constant parameter w to keep a very small amount of haze for distant objects
 		double w = 0.95;
 		
-		// Estimate the transmission
-		double[][][] transmissionEstimate = new double[rgbs.length][rgbs[0].length][rgbs[0][0].length];
-		for(int x = 0; x < transmissionEstimate.length; x++) 
+		// Estimate the transmission in place of the dark channel
+		OffHeapImage transmissionEstimate = transmissionDarkChannel;
+		for(int i = 0; i < image.getWidth() * image.getHeight(); i++) 
 		{
-			for(int y = 0; y < transmissionEstimate[0].length; y++) 
-			{
-				for(int i = 0; i < transmissionEstimate[0][0].length; i++)
-				{
-					transmissionEstimate[x][y][i] = 1 - w * transmissionDarkChannel[x][y];
-					
-					// Convert the transmission map to scale from 0-255 for visualization
-					transmissionEstimate[x][y][i] *= 255;
-				}
-			}
+			// Convert the transmission map to scale from 0-255 for visualization
+			transmissionEstimate.set(i, 0, (1 - w * transmissionDarkChannel.get(i, 0)) * 255);
 		}
 				
 		return transmissionEstimate;
@@ -149,40 +194,42 @@ public interface HazeRemover extends Processor
 	
 	/**
 	 * Refine the transmission map
-	 * @param rgbs the image's RGB values in array
+	 * @param image the original image
 	 * @param transmissionMap the transmission map
 	 * @param patchRadius the patch radius
 	 * @return the transmission refine
 	 */
-	public static double[][][] getTransmissionRefine(double[][][] rgbs, double[][][] transmissionMap, int patchRadius)
+	public static OffHeapImage getTransmissionRefine(PlanarImage image, OffHeapImage transmissionMap, int patchRadius)
 	{
-		double[][][] transmissionRefine = transmissionMap;
-		
-		int r = Math.min(rgbs.length, rgbs[0].length)/8;
+		int r = Math.min(image.getWidth(), image.getHeight())/8;
 		// int r = 300;
 		double eps = 0.0001;
 		
 		// Apply Guided filter to perform refinement
-		transmissionRefine = new GuidedFilter().process(transmissionRefine, rgbs, r, eps);
-		
-		return transmissionRefine;
+		return new GuidedFilter().process(transmissionMap, image, r, eps);
 	}
 	
 	
 	/**
 	 * Generate the transmission map
-	 * @param rgbs the image's RGB values in array
+	 * @param image the original image
+	 * @param atmosphericLight the atmospheric light
 	 * @param patchRadius the patch radius
 	 * @param withErosion if the transmission map be eroded
 	 * @param withRefinement if the transmission map be refined
-	 * @return the transmission map
+	 * @return the transmission map, scaled from 0-255 and stored off-heap
 	 */
-	public static double[][][] getTranmissionMap(double[][][] rgbs, int patchRadius, boolean withErosion, boolean withRefinement)
+	public static OffHeapImage getTranmissionMap(PlanarImage image, double[] atmosphericLight, int patchRadius, boolean withErosion, boolean withRefinement)
 	{
-		double[][][] transmissionMap = getTranmissionEstimate(rgbs, patchRadius, withErosion);
+		OffHeapImage transmissionMap = getTranmissionEstimate(image, atmosphericLight, patchRadius, withErosion);
 		
 		// Perform refinement using Guided filter if specified
-		transmissionMap = withRefinement ? getTransmissionRefine(rgbs, transmissionMap, patchRadius) : transmissionMap;
+		if(withRefinement)
+		{
+			OffHeapImage transmissionRefine = getTransmissionRefine(image, transmissionMap, patchRadius);
+			transmissionMap.release();
+			transmissionMap = transmissionRefine;
+		}
 		
 		return transmissionMap;
 	}
@@ -190,168 +237,126 @@ public interface HazeRemover extends Processor
 	
 	/**
 	 * Recover the scene radiance
-	 * @param rgbs the image's RGB values in array
+	 * @param image the original image
 	 * @param patchRadius the patch radius
 	 * @param withErosion if the transmission map be eroded
 	 * @param withRefinement if the transmission map be refined
 	 * @return the recovered radiance
 	 */
-	public static double[][][] recoverRadiance(double[][][] rgbs, int patchRadius, boolean withErosion, boolean withRefinement)
+	public static PlanarImage recoverRadiance(PlanarImage image, int patchRadius, boolean withErosion, boolean withRefinement)
 	{
-		// Generate the transmission map
-		double[][][] transmissionMap = getTranmissionMap(rgbs, patchRadius, withErosion, withRefinement);
-		
 		// Generate the atmospheric light estimate
-		double[] atmosphericLight = getAtmosphericLight(rgbs, patchRadius);
+		OffHeapImage darkChannel = getDarkChannel(image, patchRadius);
+		double[] atmosphericLight = getAtmosphericLight(image, darkChannel);
+		darkChannel.release();
+		
+		// Generate the transmission map
+		OffHeapImage transmissionMap = getTranmissionMap(image, atmosphericLight, patchRadius, withErosion, withRefinement);
 		
 		// Restrict the transmission by lower bound t0 to preserve a small amount of haze in very dense haze regions
 		double t0 = 0.1;
 		
 		// Recover the scene radiance 
-		double[][][] radiance = new double[rgbs.length][rgbs[0].length][rgbs[0][0].length];
-		for(int x = 0; x < radiance.length; x++) 
+		PlanarImage radiance = PlanarImage.createCompatible(image);
+		for(int band = 0; band < image.getBands(); band++)
 		{
-			for(int y = 0; y < radiance[0].length; y++) 
+			int[] src = image.getPlane(band);
+			int[] dst = radiance.getPlane(band);
+			double A = atmosphericLight[band];
+			
+			for(int y = 0; y < image.getHeight(); y++) 
 			{
-				for(int i = 0; i < radiance[0][0].length; i++)
+				for(int x = 0; x < image.getWidth(); x++) 
 				{
-					double I = rgbs[x][y][i];
-					double t = transmissionMap[x][y][i]/255 > t0 ? transmissionMap[x][y][i]/255 : t0;
-					double A = atmosphericLight[i];
+					int index = image.getIndex(x, y);
+					double I = src[index];
+					double t = transmissionMap.getSample(x, y, 0)/255;
+					t = t > t0 ? t : t0;
 					
 					// J = (I - A)/t + A
-					radiance[x][y][i] = (I - A)/t + A;
+					double J = (I - A)/t + A;
 					
 					// Clip the value to make sure the it is in range [0, 255]
-					radiance[x][y][i] = radiance[x][y][i] > 255 ? 255 : (radiance[x][y][i] < 0 ? 0 : radiance[x][y][i]);
+					dst[index] = (int) (J > 255 ? 255 : (J < 0 ? 0 : J));
 				}
 			}
 		}
 		
+		transmissionMap.release();
+		
 		return radiance;
 	}
 	
 	
 	/**
-	 * Get list of RGB values contained in the patch area with given radius of the pixel(x, y)
-	 * @param rgbs the image's RGB values in array
-	 * @param x coordinate x of the image
-	 * @param y coordinate y of the image
+	 * Perform minimum filter to a single-channel map with given patch radius
+	 * The map is extended beyond its edges by the default border mode
+	 * @param intensities the map of intensities
 	 * @param patchRadius the patch radius
-	 * @return list of RGB values contained in the patch area
+	 * @return a map of minimum values considering intensities under the patch area
 	 */
-	public static List<double[]> getRGBs(double[][][] rgbs, int x, int y, int patchRadius)
-	{	
-		// Initialize array to store RGB value of the pixel at the center of the mask
-		List<double[]> rgbValues = new ArrayList<double[]>();
-		
-		// Loop over all pixels under the mask
-		for(int i = -patchRadius; i <= patchRadius; i++)
-		{
-			for(int j = -patchRadius; j <= patchRadius; j++)
-			{
-				int w = x + i;
-				int h = y + j;
-				
-				// Ignore the pixel that is outside the image's edges
-				if(w >= 0 && w < rgbs.length && h >= 0 && h < rgbs[0].length)
-				{
-					// Get the value of each pixel under the mask
-					rgbValues.add(rgbs[w][h]);
-				}
-			}
-		}
-		
-		return rgbValues;
+	public static OffHeapImage getMinimums(OffHeapImage intensities, int patchRadius)
+	{
+		return getExtremums(intensities, patchRadius, BorderMode.DEFAULT, true);
 	}
 	
 	
 	/**
-	 * Get an array of the image's RGB values
-	 * @param image the input image
-	 * @return the image's RGB values in array
+	 * Perform minimum filter to a single-channel map with given patch radius
+	 * @param intensities the map of intensities
+	 * @param patchRadius the patch radius
+	 * @param borderMode the way the map is extended beyond its edges
+	 * @return a map of minimum values considering intensities under the patch area
 	 */
-	public static double[][][] getRGBs(BufferedImage image)
+	public static OffHeapImage getMinimums(OffHeapImage intensities, int patchRadius, BorderMode borderMode)
 	{
-		// Initialize array to store RGB value of the pixel at the center of the mask
-		double[][][] rgbValues = new double[image.getWidth()][image.getHeight()][3];
-		
-		for(int x = 0; x < image.getWidth(); x++)
-		{
-			for(int y = 0; y < image.getHeight(); y++)
-			{			
-				int rgb[] = Processor.getRGB(image, x, y);
-				rgbValues[x][y] = new double[] {rgb[0], rgb[1], rgb[2]};
-			}
-		}
-		
-		return rgbValues;
+		return getExtremums(intensities, patchRadius, borderMode, true);
 	}
 	
 	
 	/**
-	 * Perform maximum filter to the 2D array of intensities with given patch radius
-	 * @param intensities an array of intensities
+	 * Perform maximum filter to a single-channel map with given patch radius
+	 * The map is extended beyond its edges by the default border mode
+	 * @param intensities the map of intensities
 	 * @param patchRadius the patch radius
-	 * @return an array of maximum values considering intensities under the patch area
+	 * @return a map of maximum values considering intensities under the patch area
 	 */
-	public static double[][] getMaximums(double[][] intensities, int patchRadius)
+	public static OffHeapImage getMaximums(OffHeapImage intensities, int patchRadius)
 	{
-		double[][] max = new double[intensities.length][intensities[0].length];
-		
-		for(int x = 0; x < max.length; x++)
-		{
-			for(int y = 0; y < max[0].length; y++)
-			{
-				// Initialize a list to store intensity values under the patch
-				List<Double> intensityValues = new ArrayList<Double>();
-				
-				// Loop over all pixels under the patch
-				for(int i = -patchRadius; i <= patchRadius; i++)
-				{
-					for(int j = -patchRadius; j <= patchRadius; j++)
-					{
-						int w = x + i;
-						int h = y + j;
-						
-						// Ignore the pixel that is outside the image's edges
-						if(w >= 0 && w < intensities.length && h >= 0 && h < intensities[0].length)
-						{
-							// Get the value of each pixel under the mask
-							intensityValues.add(intensities[w][h]);
-						}
-					}
-				}
-				
-				// Sort the list
-				Collections.sort(intensityValues);
-				
-				// Find the maximum value at the last position in the list 
-				max[x][y] = intensityValues.get(intensityValues.size() - 1);
-			}
-		}
-		
-		return max;
+		return getExtremums(intensities, patchRadius, BorderMode.DEFAULT, false);
 	}
-}
-
-
-class Pixel implements Comparable<Pixel>
-{
-	public int posX;
-	public int posY;
-	public double intensity;
 	
-	public Pixel(int posX, int posY, double intensity)
+	
+	/**
+	 * Perform maximum filter to a single-channel map with given patch radius
+	 * @param intensities the map of intensities
+	 * @param patchRadius the patch radius
+	 * @param borderMode the way the map is extended beyond its edges
+	 * @return a map of maximum values considering intensities under the patch area
+	 */
+	public static OffHeapImage getMaximums(OffHeapImage intensities, int patchRadius, BorderMode borderMode)
 	{
-		this.posX = posX;
-		this.posY = posY;
-		this.intensity = intensity;
+		return getExtremums(intensities, patchRadius, borderMode, false);
 	}
-
-	@Override
-	public int compareTo(Pixel o) 
+	
+	
+	/**
+	 * Perform minimum or maximum filter to a single-channel map with given patch radius
+	 * With CLAMP and REFLECT the border pixels repeat pixels already under the patch, so the extremums
+	 * are the same as when the pixels outside the map's edges are ignored
+	 * @param intensities the map of intensities
+	 * @param patchRadius the patch radius
+	 * @param borderMode the way the map is extended beyond its edges
+	 * @param minimum true for the minimum filter, false for the maximum filter
+	 * @return a map of extreme values considering intensities under the patch area
+	 */
+	private static OffHeapImage getExtremums(OffHeapImage intensities, int patchRadius, BorderMode borderMode, boolean minimum)
 	{
-		return this.intensity > o.intensity ? -1 : this.intensity < o.intensity ? 1 : 0;
+		OffHeapImage extremums = OffHeapImage.createMap(intensities.getWidth(), intensities.getHeight());
+		
+		// Find the extreme value under every patch with running extremums along the rows then the columns
+		RunningExtrema.filter(intensities, extremums, patchRadius, borderMode, minimum);
+		
+		return extremums;
 	}
-}
\ No newline at end of file
+}
@@ -1,8 +1,7 @@
 package hazeRemoval;
 
-import java.awt.image.BufferedImage;
-
-import processing.Processor;
+import processing.OffHeapImage;
+import processing.PlanarImage;
 
 public class TransmissionMap implements HazeRemover 
 {
@@ -20,27 +19,32 @@ public class TransmissionMap implements HazeRemover
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int patchRadius) 
+	public PlanarImage process(PlanarImage image, int patchRadius) 
 	{
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+		PlanarImage processedImage = PlanarImage.createCompatible(image);
 		
 		// Get the transmission map
-		double[][][] transmissionMap = HazeRemover.getTranmissionMap(HazeRemover.getRGBs(image), patchRadius, this.withErosion, this.withRefinement);
+		OffHeapImage darkChannel = HazeRemover.getDarkChannel(image, patchRadius);
+		double[] atmosphericLight = HazeRemover.getAtmosphericLight(image, darkChannel);
+		darkChannel.release();
+		
+		OffHeapImage transmissionMap = HazeRemover.getTranmissionMap(image, atmosphericLight, patchRadius, this.withErosion, this.withRefinement);
 		
 		// Set the transmission values to the corresponding coordinate of the created image
-		for(int x = 0; x < image.getWidth(); x++) 
+		// For visualization, transmission values are multiplied by 255
+		for(int band = 0; band < image.getBands(); band++)
 		{
+			int[] dst = processedImage.getPlane(band);
 			for(int y = 0; y < image.getHeight(); y++) 
 			{
-				// For visualization, transmission values are multiplied by 255
-				int[] rgb = new int[] {	(int) (transmissionMap[x][y][0]), 
-										(int) (transmissionMap[x][y][1]),
-										(int) (transmissionMap[x][y][2]) };
-				Processor.setRGB(processedImage, x, y, rgb);
+				for(int x = 0; x < image.getWidth(); x++) 
+				{
+					dst[processedImage.getIndex(x, y)] = (int) transmissionMap.getSample(x, y, 0);
+				}
 			}
 		}
+		
+		transmissionMap.release();
 				
 		return processedImage;
 	}
@@ -2,6 +2,8 @@ package interpolation;
 
 import java.awt.image.BufferedImage;
 
+import processing.BufferPool;
+import processing.PlanarImage;
 import processing.Processor;
 
 
@@ -18,5 +20,63 @@ public interface Interpolator extends Processor
 	 * @param height the resized height
 	 * @return the resized image with given width and height
 	 */
-	BufferedImage process(BufferedImage image, int width, int height);
+	public default BufferedImage process(BufferedImage image, int width, int height)
+	{
+		// Return the original image if the size is unchanged
+		if(width == image.getWidth() && height == image.getHeight())
+		{
+			return image;
+		}
+		
+		// Create a new image with the same image type as the original image
+		BufferedImage processedImage = new BufferedImage(width, height, Processor.getImageType(image));
+		
+		process(image, processedImage);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Transform the spatial resolution of an image to the size of a caller-supplied image and store the result in it
+	 * The planar working copies are taken from the buffer pool, so resizing a stream of same-sized images
+	 * into the same destination allocates no pixels once the pool is warm
+	 * @param image the original image
+	 * @param processedImage the image to store the result, whose size is the resized width and height
+	 */
+	public default void process(BufferedImage image, BufferedImage processedImage)
+	{
+		PlanarImage planarImage = BufferPool.acquire(image);
+		PlanarImage processedPlanarImage = BufferPool.acquire(processedImage.getWidth(), processedImage.getHeight(), planarImage.getBands());
+		
+		process(planarImage, processedPlanarImage);
+		processedPlanarImage.write(processedImage.getRaster(), 0, 0, 0, 0, processedImage.getWidth(), processedImage.getHeight());
+		
+		BufferPool.release(planarImage);
+		BufferPool.release(processedPlanarImage);
+	}
+	
+	
+	/**
+	 * Transform the spatial resolution of a planar image to the given width and height
+	 * @param image the original image
+	 * @param width the resized width
+	 * @param height the resized height
+	 * @return the resized image with given width and height
+	 */
+	public default PlanarImage process(PlanarImage image, int width, int height)
+	{
+		PlanarImage processedImage = new PlanarImage(width, height, image.getBands());
+		process(image, processedImage);
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Transform the spatial resolution of a planar image to the size of a caller-supplied image and store the result in it
+	 * Every pixel of the processed image is overwritten, so it may hold stale pixels (such as a pooled image)
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same number of channels as the original image
+	 */
+	public void process(PlanarImage image, PlanarImage processedImage);
 }
@@ -1,8 +1,6 @@
 package interpolation;
 
-import java.awt.image.BufferedImage;
-
-import processing.Processor;
+import processing.PlanarImage;
 
 public class LinearInterpolator implements Interpolator
 {
@@ -20,83 +18,62 @@ public class LinearInterpolator implements Interpolator
 
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int width, int height)
+	public void process(PlanarImage image, PlanarImage processedImage)
 	{
-		// Return the original image if the size is unchanged
-		if(width == image.getWidth() && height == image.getHeight())
-		{
-			return image;
-		}
-		
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(width, height, imageType);
+		int width = processedImage.getWidth();
+		int height = processedImage.getHeight();
 		
 		// Calculate the ratio between the original image's size and processed image'size
 		double widthRatio = image.getWidth() < width ? ((double)(image.getWidth() - 1)/width) : (double)image.getWidth()/width; 
 		double heightRatio = image.getHeight() < height ? ((double)(image.getHeight() - 1)/height) : (double)image.getHeight()/height;
 		
-		for(int x = 0; x < width; x++)
+		for(int band = 0; band < image.getBands(); band++)
 		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			
 			for(int y = 0; y < height; y++)
 			{		
-				// Find the 2 closest coordinates in each direction (x and y)
-				int x0 = (int)Math.floor(x * widthRatio);		
-				int y0 = (int)Math.floor(y * heightRatio);
-				int x1 = x0 + 1;
-				int y1 = y0 + 1;
-
-				// Initialize array to store RGB values of the 2 pixels to be interpolated
-				int[] rgb0 = new int[3];
-				int[] rgb1 = new int[3];
-				
-				double ratio = 0.0;
-				int pos = 0;
-				int pos0 = 0;
-				int pos1 = 0;
-						
-				// Select the variable to be used when applying linear interpolation in x or in y direction
-				if(this.direction == Interpolator.Direction.X)
-				{
-					ratio = widthRatio;
-					pos = x;
-					pos0 = x0;
-					pos1 = x1;
-					rgb0 = Processor.getRGB(image, pos0, y0);
-					rgb1 = Processor.getRGB(image, pos1, y0);
-				}
-				else
+				for(int x = 0; x < width; x++)
 				{
-					ratio = heightRatio;
-					pos = y;
-					pos0 = y0;
-					pos1 = y1;
-					rgb0 = Processor.getRGB(image, x0, pos0);
-					rgb1 = Processor.getRGB(image, x0, pos1);
+					// Find the 2 closest coordinates in each direction (x and y)
+					int x0 = (int)Math.floor(x * widthRatio);		
+					int y0 = (int)Math.floor(y * heightRatio);
+					int x1 = x0 + 1;
+					int y1 = y0 + 1;
+					
+					int pixel0 = src[image.getIndex(x0, y0)];
+					int pixel1 = 0;
+					
+					double ratio = 0.0;
+					int pos = 0;
+					int pos0 = 0;
+					int pos1 = 0;
+							
+					// Select the variable to be used when applying linear interpolation in x or in y direction
+					// The last column or row is repeated when the image's size is unchanged in that direction
+					if(this.direction == Interpolator.Direction.X)
+					{
+						ratio = widthRatio;
+						pos = x;
+						pos0 = x0;
+						pos1 = x1;
+						pixel1 = src[image.getIndex(Math.min(x1, image.getWidth() - 1), y0)];
+					}
+					else
+					{
+						ratio = heightRatio;
+						pos = y;
+						pos0 = y0;
+						pos1 = y1;
+						pixel1 = src[image.getIndex(x0, Math.min(y1, image.getHeight() - 1))];
+					}
+					
+					// Calculate the value for the pixel(x, y) by linear interpolation
+					dst[processedImage.getIndex(x, y)] = linearInterpolate(pixel0, pixel1, ratio, pos, pos0, pos1);
 				}
-				
-				// Calculate the RGB value for the pixel(x, y) by linear interpolation
-				int[] rgb = linearInterpolate(rgb0, rgb1, ratio, pos, pos0, pos1);
-			
-				// Set the RGB value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
 			}
 		}
-		
-		return processedImage;
-	}
-	
-
-	// Perform linear interpolation on 3 color channels (red, blue, and green) of the pixel(x, y) with given data of 2 other pixel values
-	private int[] linearInterpolate(int pixel0[], int pixel1[], double ratio, int pos, int pos0, int pos1)
-	{
-		int[] rgb = new int[3];
-		for(int i = 0; i < 3; i++)
-		{
-			rgb[i] = linearInterpolate(pixel0[i], pixel1[0], ratio, pos, pos0, pos1);
-		}
-
-		return rgb;
 	}
 	
 	
@@ -106,4 +83,4 @@ public class LinearInterpolator implements Interpolator
 		return (int) (pixel0 + (pos * ratio - pos0) * (pixel1 - pixel0)/(pos1 - pos0));
 	}
 	
-}
\ No newline at end of file
+}
@@ -1,7 +1,7 @@
 package interpolation;
-import java.awt.image.BufferedImage;
 
-import processing.Processor;
+import processing.BufferPool;
+import processing.PlanarImage;
 
 public class NearestNeighborInterpolator implements Interpolator
 {
@@ -15,38 +15,38 @@ public class NearestNeighborInterpolator implements Interpolator
 	
 	
 	@Override
-	public BufferedImage process(BufferedImage image, int width, int height)
+	public void process(PlanarImage image, PlanarImage processedImage)
 	{
-		// Return the original image if the size is unchanged
-		if(width == image.getWidth() && height == image.getHeight())
-		{
-			return image;
-		}
-		
-		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(width, height, imageType);
+		int width = processedImage.getWidth();
+		int height = processedImage.getHeight();
 				
 		// Calculate the ratio between the original image's size and processed image'size
 		double widthRatio = (double)image.getWidth()/width;
 		double heightRatio = (double)image.getHeight()/height;
 		
+		// Find the x-coordinate of the nearest neighbor of every column once, in the thread's scratch array
+		int[] nearestXs = BufferPool.getIntScratch(0, width);
 		for(int x = 0; x < width; x++)
 		{
+			nearestXs[x] = (int)Math.floor(x * widthRatio);
+		}
+		
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			
 			for(int y = 0; y < height; y++)
 			{
-				// Find the coordinate of the nearest neighbor
-				int nearestX = (int)Math.floor(x * widthRatio);
-				int nearestY = (int)Math.floor(y * heightRatio);				
+				// Find the row of the nearest neighbor
+				int row = image.getIndex(0, (int)Math.floor(y * heightRatio));
 				
-				// Get the RGB value of the nearest neighbor
-				int rgb[] = Processor.getRGB(image, nearestX, nearestY);
-				
-				// Set the RGB value to the pixel(x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
+				// Set the value of the nearest neighbor to the pixel(x, y)
+				for(int x = 0, i = processedImage.getIndex(0, y); x < width; x++, i++)
+				{
+					dst[i] = src[row + nearestXs[x]];
+				}
 			}
 		}
-		
-		return processedImage;
 	}
 }
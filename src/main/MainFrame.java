@@ -4,8 +4,11 @@ import interpolation.Interpolator;
 import interpolation.NearestNeighborInterpolator;
 import processing.BitPlanesRemover;
 import processing.HistogramEqualizator;
+import processing.MappedImage;
 import processing.PixelSizeConverter;
 import processing.Processor;
+import processing.RasterStore;
+import processing.TiledImage;
 import interpolation.LinearInterpolator;
 import interpolation.BilinearInterpolator;
 
@@ -28,6 +31,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -349,7 +353,7 @@ public class MainFrame extends JFrame
 		contentPane.add(standardDeviationLabel);
 		
 		standardDeviation = new JSpinner();
-		standardDeviation.setModel(new SpinnerNumberModel(1.0, null, null, 1.0));
+		standardDeviation.setModel(new SpinnerNumberModel(1.0, 0.1, null, 1.0));
 		standardDeviation.setBounds(675, 390, 150, 25);
 		standardDeviation.setVisible(false);
 		contentPane.add(standardDeviation);
@@ -771,7 +775,7 @@ public class MainFrame extends JFrame
     			{
     				try 
     				{
-    					originalImg = ImageIO.read(fileChooser.getSelectedFile());
+    					originalImg = readImage(fileChooser.getSelectedFile());
     				} 
     				catch (IOException ex) 
     				{
@@ -928,6 +932,29 @@ public class MainFrame extends JFrame
 		}
 	}
 	
+	/**
+	 * Read an image file, either a raw planar file or any format supported by ImageIO
+	 * @param file the image file
+	 * @return the image
+	 * @throws IOException if the file cannot be read
+	 */
+	private BufferedImage readImage(File file) throws IOException
+	{
+		if(MappedImage.isMappedImageFile(file.toPath()))
+		{
+			try(MappedImage mappedImage = MappedImage.open(file.toPath(), false))
+			{
+				int imageType = mappedImage.getBands() == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+				BufferedImage image = new BufferedImage(mappedImage.getWidth(), mappedImage.getHeight(), imageType);
+				TiledImage.copy(mappedImage, new RasterStore(image));
+				return image;
+			}
+		}
+		
+		return ImageIO.read(file);
+	}
+	
+	
 	/**
 	 * Show the chosen image in the original image's position
 	 * Set the chosen image data (pixel size, width, and height) to the associated fields
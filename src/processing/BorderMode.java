@@ -0,0 +1,53 @@
+package processing;
+
+/**
+ * The ways a neighborhood operator may extend an image beyond its edges
+ * For an image "abcd", the pixels to the left of the edge are
+ * CONSTANT "000|abcd", CLAMP "aaa|abcd", REFLECT "dcb|abcd" (mirrored without repeating the edge pixel), WRAP "bcd|abcd"
+ */
+public enum BorderMode
+{
+	CONSTANT, CLAMP, REFLECT, WRAP;
+
+
+	// The border mode every filter uses unless told otherwise
+	public static final BorderMode DEFAULT = REFLECT;
+
+
+	/**
+	 * Find the pixel whose value a coordinate takes along one axis of the image
+	 * @param coordinate the coordinate, which may be outside the image
+	 * @param size the width or height of the image
+	 * @return the coordinate inside the image, or -1 if the pixel takes the constant value 0
+	 */
+	public int map(int coordinate, int size)
+	{
+		if(coordinate >= 0 && coordinate < size)
+		{
+			return coordinate;
+		}
+
+		switch(this)
+		{
+			case CONSTANT:
+				return -1;
+
+			case CLAMP:
+				return coordinate < 0 ? 0 : size - 1;
+
+			case REFLECT:
+				if(size == 1)
+				{
+					return 0;
+				}
+
+				// Mirror back and forth, so that borders wider than the image are still filled
+				int period = (size - 1) * 2;
+				int position = Math.floorMod(coordinate, period);
+				return position < size ? position : period - position;
+
+			default:
+				return Math.floorMod(coordinate, size);
+		}
+	}
+}
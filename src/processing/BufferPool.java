@@ -0,0 +1,171 @@
+package processing;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of planar images keyed by size, plus per-thread scratch arrays, so that processing many images
+ * of the same size allocates close to nothing per image
+ */
+public final class BufferPool
+{
+	// Number of images of one size kept for reuse, enough for every worker thread to hold a source and a destination
+	private static final int MAX_POOLED_PER_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+	// Number of scratch arrays each thread may hold at the same time
+	public static final int SCRATCH_SLOTS = 4;
+
+	private static final Map<Long, Pool> pools = new ConcurrentHashMap<Long, Pool>();
+	private static final ThreadLocal<int[][]> intScratch = ThreadLocal.withInitial(() -> new int[SCRATCH_SLOTS][0]);
+	private static final ThreadLocal<double[][]> doubleScratch = ThreadLocal.withInitial(() -> new double[SCRATCH_SLOTS][0]);
+
+
+	private BufferPool()
+	{
+
+	}
+
+
+	/**
+	 * Take a planar image of the given size from the pool, or create one if none is available
+	 * The contents of a reused image are left as they were, so the caller must overwrite every pixel it reads
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels
+	 * @return the planar image, with a stride equal to its width
+	 */
+	public static PlanarImage acquire(int width, int height, int bands)
+	{
+		Pool pool = pools.get(getKey(width, height, bands));
+		PlanarImage image = pool == null ? null : pool.images.poll();
+
+		if(image == null)
+		{
+			return new PlanarImage(width, height, bands);
+		}
+
+		pool.size.decrementAndGet();
+		return image;
+	}
+
+
+	/**
+	 * Take a planar image from the pool and fill it with the pixels of a BufferedImage
+	 * @param image the input image
+	 * @return the planar image
+	 */
+	public static PlanarImage acquire(BufferedImage image)
+	{
+		PlanarImage planarImage = acquire(image.getWidth(), image.getHeight(), PlanarImage.getBands(image.getRaster()));
+		planarImage.read(image.getRaster(), 0, 0);
+		return planarImage;
+	}
+
+
+	/**
+	 * Take a planar image with the same size and number of channels as the given one from the pool
+	 * @param image the image to be matched
+	 * @return the planar image
+	 */
+	public static PlanarImage acquireCompatible(PlanarImage image)
+	{
+		return acquire(image.getWidth(), image.getHeight(), image.getBands());
+	}
+
+
+	/**
+	 * Give a planar image back to the pool
+	 * The image must not be used by the caller afterwards
+	 * @param image the image to be released, may be null
+	 */
+	public static void release(PlanarImage image)
+	{
+		// Images with padded rows are not interchangeable with pooled ones
+		if(image == null || image.getStride() != image.getWidth())
+		{
+			return;
+		}
+
+		Pool pool = pools.computeIfAbsent(getKey(image.getWidth(), image.getHeight(), image.getBands()), key -> new Pool());
+
+		// Drop the image when enough of its size are already pooled
+		if(pool.size.incrementAndGet() > MAX_POOLED_PER_SIZE)
+		{
+			pool.size.decrementAndGet();
+			return;
+		}
+
+		pool.images.offer(image);
+	}
+
+
+	/**
+	 * Drop every pooled image
+	 */
+	public static void clear()
+	{
+		pools.clear();
+	}
+
+
+	/**
+	 * Get a scratch array owned by the current thread, growing it if it is too short
+	 * The array stays valid until the same thread asks for the same slot again
+	 * @param slot the slot of the array, from 0 to SCRATCH_SLOTS - 1
+	 * @param length the minimum length of the array
+	 * @return the scratch array, with undefined contents
+	 */
+	public static int[] getIntScratch(int slot, int length)
+	{
+		int[][] arrays = intScratch.get();
+		if(arrays[slot].length < length)
+		{
+			arrays[slot] = new int[length];
+		}
+
+		return arrays[slot];
+	}
+
+
+	/**
+	 * Get a scratch array owned by the current thread, growing it if it is too short
+	 * The array stays valid until the same thread asks for the same slot again
+	 * @param slot the slot of the array, from 0 to SCRATCH_SLOTS - 1
+	 * @param length the minimum length of the array
+	 * @return the scratch array, with undefined contents
+	 */
+	public static double[] getDoubleScratch(int slot, int length)
+	{
+		double[][] arrays = doubleScratch.get();
+		if(arrays[slot].length < length)
+		{
+			arrays[slot] = new double[length];
+		}
+
+		return arrays[slot];
+	}
+
+
+	/**
+	 * Combine the size of an image into a key
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels
+	 * @return the key
+	 */
+	private static long getKey(int width, int height, int bands)
+	{
+		return ((long) width << 32) | ((long) height << 2) | bands;
+	}
+
+
+	private static class Pool
+	{
+		private Queue<PlanarImage> images = new ConcurrentLinkedQueue<PlanarImage>();
+		private AtomicInteger size = new AtomicInteger();
+	}
+}
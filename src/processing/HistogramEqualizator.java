@@ -4,6 +4,10 @@ import java.awt.image.BufferedImage;
 
 public class HistogramEqualizator implements Processor
 {
+	// The number of intensity levels
+	private static final int L = 256;
+	
+	
 	/**
 	 * Class constructor
 	 */
@@ -21,60 +25,71 @@ public class HistogramEqualizator implements Processor
 	 */
 	public BufferedImage process(BufferedImage image, int kernelRadius)
 	{
+		PlanarImage planarImage = BufferPool.acquire(image);
+		PlanarImage processedPlanarImage = BufferPool.acquireCompatible(planarImage);
+		
+		process(planarImage, processedPlanarImage, kernelRadius);
+		
 		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+		BufferedImage processedImage = processedPlanarImage.toBufferedImage(Processor.getImageType(image));
 		
-		int L = 256;
-		int M = kernelRadius * 2 + 1; 
+		BufferPool.release(planarImage);
+		BufferPool.release(processedPlanarImage);
+		
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Perform local histogram equalization on a planar image with given kernel radius
+	 * Grayscale images have a single plane, so they take a third of the work of color images
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 * @param kernelRadius the radius of the kernel
+	 */
+	public void process(PlanarImage image, PlanarImage processedImage, int kernelRadius)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int M = kernelRadius * 2 + 1;
 		int N = kernelRadius * 2 + 1;
 		
-		for(int x = 0; x < image.getWidth(); x++) 
+		for(int band = 0; band < image.getBands(); band++)
 		{
-			for(int y = 0; y < image.getHeight(); y++) 
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			
+			for(int y = 0; y < height; y++)
 			{
-				// Initialize array to store the frequency of each pixel (0-255) under the mask
-				int intensityFreqs[][] = new int[3][L];
+				// Ignore the rows that are outside the image's edges
+				int jMin = Math.max(-kernelRadius, -y);
+				int jMax = Math.min(kernelRadius, height - 1 - y);
 				
-				// Loop over all pixels under the mask
-				for(int i = -kernelRadius; i <= kernelRadius; i++)
+				for(int x = 0; x < width; x++)
 				{
-					for(int j = -kernelRadius; j <= kernelRadius; j++)
+					// Ignore the columns that are outside the image's edges
+					int iMin = Math.max(-kernelRadius, -x);
+					int iMax = Math.min(kernelRadius, width - 1 - x);
+					
+					int value = src[image.getIndex(x, y)];
+					
+					// Only the mapping of the centered pixel is needed, which is given by the cumulative frequency of its intensity
+					// So count the pixels under the mask that are not brighter than it
+					int cumulativeFreq = 0;
+					for(int j = jMin; j <= jMax; j++)
 					{
-						int w = x + i;
-						int h = y + j;
-						
-						// Ignore the pixel that is outside the image's edges
-						if(w >= 0 && w < image.getWidth() && h >= 0 && h < image.getHeight())
+						int row = image.getIndex(x, y + j);
+						for(int i = iMin; i <= iMax; i++)
 						{
-							// Get the RGB value of the pixel(x, y)
-							int[] rgb = Processor.getRGB(image, w, h);
-							
-							// Add up its frequency
-							intensityFreqs[0][rgb[0]]++;
-							intensityFreqs[1][rgb[1]]++;
-							intensityFreqs[2][rgb[2]]++;
+							cumulativeFreq += src[row + i] <= value ? 1 : 0;
 						}
 					}
+					
+					// Set the equalized value to the centered pixel at (x, y)
+					dst[processedImage.getIndex(x, y)] = getMapping(cumulativeFreq, M, N);
 				}
-				
-				// Get the histogram equalization
-				int[][] histogram = getHistogram(image, L, M, N, intensityFreqs);
-				
-				// Get the RGB value of the centered pixel(x, y)
-				int[] rgb = Processor.getRGB(image, x, y);
-				
-				// Apply a transformation to all RGB channels by the histogram
-				rgb[0] = histogram[0][rgb[0]];
-				rgb[1] = histogram[1][rgb[1]];
-				rgb[2] = histogram[2][rgb[2]];
-				
-				// Set the RGB value to the centered pixel at (x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
 			}
 		}
-		
-		return processedImage;
 	}
 	
 	
@@ -84,84 +99,104 @@ public class HistogramEqualizator implements Processor
 	 * @return the processed image
 	 */
 	public BufferedImage process(BufferedImage image)
-	{		
+	{
+		PlanarImage planarImage = BufferPool.acquire(image);
+		PlanarImage processedPlanarImage = BufferPool.acquireCompatible(planarImage);
+		
+		process(planarImage, processedPlanarImage);
+		
 		// Create a new image with the same image type as the original image
-		int imageType = image.getType() == 0 ? BufferedImage.TYPE_INT_RGB : image.getType();
-		BufferedImage processedImage = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+		BufferedImage processedImage = processedPlanarImage.toBufferedImage(Processor.getImageType(image));
+		
+		BufferPool.release(planarImage);
+		BufferPool.release(processedPlanarImage);
 		
-		int L = 256;
-		int M = image.getWidth(); 
+		return processedImage;
+	}
+	
+	
+	/**
+	 * Perform global histogram equalization on a planar image
+	 * @param image the original image
+	 * @param processedImage the image to store the result, with the same size and number of channels as the original image
+	 */
+	public void process(PlanarImage image, PlanarImage processedImage)
+	{
+		int M = image.getWidth();
 		int N = image.getHeight();
 		
-		// Initialize array to store the frequency of each pixel (0-255)
-		int intensityFreqs[][] = new int[3][L];
-
-		for(int x = 0; x < M; x++)
+		// Initialize array to store the frequency of each intensity (0-255) of a channel
+		int intensityFreqs[] = new int[L];
+		
+		for(int band = 0; band < image.getBands(); band++)
 		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+			
+			// Add up the frequency of every pixel
 			for(int y = 0; y < N; y++)
-			{		
-				// Get the RGB value of the pixel(x, y)
-				int[] rgb = Processor.getRGB(image, x, y);
-				
-				// Add up its frequency
-				intensityFreqs[0][rgb[0]]++;
-				intensityFreqs[1][rgb[1]]++;
-				intensityFreqs[2][rgb[2]]++;
+			{
+				for(int i = image.getIndex(0, y), end = i + M; i < end; i++)
+				{
+					intensityFreqs[src[i]]++;
+				}
 			}
-		}
-		
-		// Get the histogram equalization
-		int[][] histogram = getHistogram(image, L, M, N, intensityFreqs);
-
-		for(int x = 0; x < M; x++)
-		{
+			
+			// Get the histogram equalization
+			int[] histogram = getHistogram(M, N, intensityFreqs);
+			
+			// Apply a transformation to every pixel by the histogram
 			for(int y = 0; y < N; y++)
 			{
-				// Get the RGB value of the centered pixel(x, y)
-				int[] rgb = Processor.getRGB(image, x, y);
-				
-				// Apply a transformation to all RGB channels by the histogram
-				rgb[0] = histogram[0][rgb[0]];
-				rgb[1] = histogram[1][rgb[1]];
-				rgb[2] = histogram[2][rgb[2]];
-				
-				// Set the RGB value to the centered pixel at (x, y)
-				Processor.setRGB(processedImage, x, y, rgb);
+				int index = image.getIndex(0, y);
+				int processedIndex = processedImage.getIndex(0, y);
+				for(int x = 0; x < M; x++)
+				{
+					dst[processedIndex + x] = histogram[src[index + x]];
+				}
 			}
 		}
-		
-		return processedImage;
 	}
 	
 	
 	/**
-	 * Get the equalized histogram of the input image
-	 * @param image the original image
-	 * @param L the number of intensity levels
+	 * Get the equalized histogram of a channel, and reset the frequencies for the next channel
 	 * @param M the width of the area to be performed histogram equalization
 	 * @param N the height of the area to be performed histogram equalization
 	 * @param intensityFreqs the frequency of intensity levels
 	 * @return the equalized histogram
 	 */
-	private int[][] getHistogram(BufferedImage image, int L, int M, int N, int[][] intensityFreqs)
+	private int[] getHistogram(int M, int N, int[] intensityFreqs)
 	{
-		int[][] histogram = new int[3][L];
+		int[] histogram = new int[L];
 		
-		// Initialize the array to store the cumulative frequency of 3 RGB channels
-		int cumulativeFreq[] = {0, 0, 0};
+		// Initialize the cumulative frequency of the channel
+		int cumulativeFreq = 0;
 		
-		for (int i = 0; i < histogram.length; i++)
-        {
-			for(int j = 0; j < histogram[0].length; j++)
-			{
-				// Add up the cumulative frequency
-				cumulativeFreq[i] += intensityFreqs[i][j];
-				
-				// Calculate the new mapping for each intensity
-				histogram[i][j] = (int) ((L - 1) * cumulativeFreq[i]/(M * N));
-			}
-        }
+		for(int j = 0; j < histogram.length; j++)
+		{
+			// Add up the cumulative frequency
+			cumulativeFreq += intensityFreqs[j];
+			intensityFreqs[j] = 0;
+			
+			// Calculate the new mapping for each intensity
+			histogram[j] = getMapping(cumulativeFreq, M, N);
+		}
 		
-		return histogram;		
+		return histogram;
+	}
+	
+	
+	/**
+	 * Map an intensity to its equalized value by its cumulative frequency
+	 * @param cumulativeFreq the number of pixels not brighter than the intensity
+	 * @param M the width of the area to be performed histogram equalization
+	 * @param N the height of the area to be performed histogram equalization
+	 * @return the equalized value
+	 */
+	private static int getMapping(int cumulativeFreq, int M, int N)
+	{
+		// Computed in 64 bits, as (L - 1) times the cumulative frequency of a large image overflows an int
+		return (int) ((L - 1) * (long) cumulativeFreq/((long) M * N));
 	}
 }
@@ -0,0 +1,145 @@
+package processing;
+
+import java.util.Arrays;
+
+public interface ImageStore
+{
+	/**
+	 * Get the width of the stored image
+	 * @return the width of the image
+	 */
+	public int getWidth();
+	
+	
+	/**
+	 * Get the height of the stored image
+	 * @return the height of the image
+	 */
+	public int getHeight();
+	
+	
+	/**
+	 * Get the number of color channels of the stored image
+	 * @return 1 for grayscale images, 3 for RGB images
+	 */
+	public int getBands();
+	
+	
+	/**
+	 * Fill a planar image with the stored pixels, starting from the pixel(x, y)
+	 * The area read has the same width and height as the planar image and must lie inside the stored image
+	 * @param region the planar image to be filled
+	 * @param x the x-coordinate of the first pixel to be read
+	 * @param y the y-coordinate of the first pixel to be read
+	 */
+	public void read(PlanarImage region, int x, int y);
+	
+	
+	/**
+	 * Fill a planar image with the stored pixels, starting from the pixel(x, y)
+	 * The area read may extend beyond the stored image, whose pixels are then filled by the border mode
+	 * @param region the planar image to be filled
+	 * @param x the x-coordinate of the first pixel to be read
+	 * @param y the y-coordinate of the first pixel to be read
+	 * @param borderMode the way the image is extended beyond its edges
+	 */
+	public default void read(PlanarImage region, int x, int y, BorderMode borderMode)
+	{
+		int width = getWidth();
+		int height = getHeight();
+		
+		// Read the area directly when it lies inside the stored image
+		if(x >= 0 && y >= 0 && x + region.getWidth() <= width && y + region.getHeight() <= height)
+		{
+			read(region, x, y);
+			return;
+		}
+		
+		// Split each axis into the parts before, inside and after the stored image
+		int[] xs = {x, Math.min(Math.max(0, x), x + region.getWidth()), Math.max(Math.min(width, x + region.getWidth()), x), x + region.getWidth()};
+		int[] ys = {y, Math.min(Math.max(0, y), y + region.getHeight()), Math.max(Math.min(height, y + region.getHeight()), y), y + region.getHeight()};
+		
+		// Fill the 9 resulting blocks one by one
+		for(int blockY = 0; blockY < 3; blockY++)
+		{
+			for(int blockX = 0; blockX < 3; blockX++)
+			{
+				int minX = xs[blockX];
+				int maxX = xs[blockX + 1];
+				int minY = ys[blockY];
+				int maxY = ys[blockY + 1];
+				
+				if(minX >= maxX || minY >= maxY)
+				{
+					continue;
+				}
+				
+				boolean outside = blockX != 1 || blockY != 1;
+				if(outside && borderMode == BorderMode.CONSTANT)
+				{
+					for(int band = 0; band < region.getBands(); band++)
+					{
+						for(int j = minY; j < maxY; j++)
+						{
+							int index = region.getIndex(0, j - y);
+							Arrays.fill(region.getPlane(band), index + minX - x, index + maxX - x, 0);
+						}
+					}
+					continue;
+				}
+				
+				// Find the area of the stored image the block takes its pixels from
+				int sourceMinX = Integer.MAX_VALUE;
+				int sourceMaxX = Integer.MIN_VALUE;
+				for(int i = minX; i < maxX; i++)
+				{
+					sourceMinX = Math.min(sourceMinX, borderMode.map(i, width));
+					sourceMaxX = Math.max(sourceMaxX, borderMode.map(i, width));
+				}
+				
+				int sourceMinY = Integer.MAX_VALUE;
+				int sourceMaxY = Integer.MIN_VALUE;
+				for(int j = minY; j < maxY; j++)
+				{
+					sourceMinY = Math.min(sourceMinY, borderMode.map(j, height));
+					sourceMaxY = Math.max(sourceMaxY, borderMode.map(j, height));
+				}
+				
+				// Read that area, then copy every pixel of the block from the pixel it maps to
+				PlanarImage source = BufferPool.acquire(sourceMaxX - sourceMinX + 1, sourceMaxY - sourceMinY + 1, region.getBands());
+				read(source, sourceMinX, sourceMinY);
+				
+				for(int band = 0; band < region.getBands(); band++)
+				{
+					int[] src = source.getPlane(band);
+					int[] dst = region.getPlane(band);
+					
+					for(int j = minY; j < maxY; j++)
+					{
+						int sourceRow = source.getIndex(0, borderMode.map(j, height) - sourceMinY);
+						int row = region.getIndex(0, j - y);
+						for(int i = minX; i < maxX; i++)
+						{
+							dst[row + i - x] = src[sourceRow + borderMode.map(i, width) - sourceMinX];
+						}
+					}
+				}
+				
+				BufferPool.release(source);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Store an area of a planar image, starting from the pixel(x, y)
+	 * @param region the planar image to be stored
+	 * @param regionX the x-coordinate of the area in the planar image
+	 * @param regionY the y-coordinate of the area in the planar image
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @param x the x-coordinate of the first pixel to be written
+	 * @param y the y-coordinate of the first pixel to be written
+	 */
+	public void write(PlanarImage region, int regionX, int regionY, int width, int height, int x, int y);
+}
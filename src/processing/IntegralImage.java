@@ -0,0 +1,267 @@
+package processing;
+
+/**
+ * Summed-area table of a planar image: every entry holds the sum of all samples above and to the left of it,
+ * so the sum, mean and variance of any rectangular window take four lookups whatever its size
+ * Sums and sums of squares are kept per color channel as 64-bit integers, so they are exact for any image
+ * up to 2^31 pixels of 8-bit samples
+ */
+public class IntegralImage
+{
+	private int width;
+	private int height;
+	private int padX;
+	private int padY;
+	private int tableWidth;
+	private long[][] sums;
+	private long[][] squares;
+
+
+	/**
+	 * Class constructor
+	 * Windows reaching outside the image are clipped to its edges
+	 * @param image the image to be summed
+	 * @param withSquares true to also sum the squares of the samples, needed by getSumOfSquares and getVariance
+	 */
+	public IntegralImage(PlanarImage image, boolean withSquares)
+	{
+		this(image, 0, 0, BorderMode.CONSTANT, withSquares);
+	}
+
+
+	/**
+	 * Class constructor
+	 * The image is extended beyond its edges by the border mode, so that windows reaching up to padX columns
+	 * and padY rows outside the image count the pixels of the border; farther windows are clipped
+	 * @param image the image to be summed
+	 * @param padX the number of columns on each side of the image covered by the table
+	 * @param padY the number of rows on each side of the image covered by the table
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @param withSquares true to also sum the squares of the samples, needed by getSumOfSquares and getVariance
+	 */
+	public IntegralImage(PlanarImage image, int padX, int padY, BorderMode borderMode, boolean withSquares)
+	{
+		this.width = image.getWidth() + padX * 2;
+		this.height = image.getHeight() + padY * 2;
+		this.padX = padX;
+		this.padY = padY;
+		this.tableWidth = this.width + 1;
+
+		// The table has an extra row and column of zeros, so that windows starting at the first row or column need no special case
+		this.sums = new long[image.getBands()][this.tableWidth * (this.height + 1)];
+		this.squares = withSquares ? new long[image.getBands()][this.tableWidth * (this.height + 1)] : null;
+
+		PlanarImage paddedImage = padX == 0 && padY == 0 ? image : image.pad(padX, padY, borderMode);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = paddedImage.getPlane(band);
+			long[] sum = this.sums[band];
+			long[] square = withSquares ? this.squares[band] : null;
+
+			for(int y = 0; y < this.height; y++)
+			{
+				int index = paddedImage.getIndex(0, y);
+				int above = y * this.tableWidth + 1;
+				int entry = above + this.tableWidth;
+
+				// Add the running sum of the row to the entry above
+				long rowSum = 0;
+				long rowSquares = 0;
+				for(int x = 0; x < this.width; x++)
+				{
+					long value = src[index + x];
+					rowSum += value;
+					sum[entry + x] = sum[above + x] + rowSum;
+
+					if(withSquares)
+					{
+						rowSquares += value * value;
+						square[entry + x] = square[above + x] + rowSquares;
+					}
+				}
+			}
+		}
+
+		if(paddedImage != image)
+		{
+			BufferPool.release(paddedImage);
+		}
+	}
+
+
+	/**
+	 * Get the sum of the samples in a window
+	 * Coordinates are those of the image, and the window is clipped to the area covered by the table
+	 * @param band the color channel
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the sum of the samples
+	 */
+	public long getSum(int band, int x0, int y0, int x1, int y1)
+	{
+		return getWindowSum(this.sums[band], x0, y0, x1, y1);
+	}
+
+
+	/**
+	 * Get the sum of the squares of the samples in a window
+	 * @param band the color channel
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the sum of the squares of the samples
+	 */
+	public long getSumOfSquares(int band, int x0, int y0, int x1, int y1)
+	{
+		if(this.squares == null)
+		{
+			throw new IllegalStateException("The integral image was created without the sums of squares");
+		}
+
+		return getWindowSum(this.squares[band], x0, y0, x1, y1);
+	}
+
+
+	/**
+	 * Get the number of pixels of a window, once clipped to the area covered by the table
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the number of pixels
+	 */
+	public int getCount(int x0, int y0, int x1, int y1)
+	{
+		int columns = Math.min(x1 + this.padX, this.width - 1) - Math.max(x0 + this.padX, 0) + 1;
+		int rows = Math.min(y1 + this.padY, this.height - 1) - Math.max(y0 + this.padY, 0) + 1;
+		return columns > 0 && rows > 0 ? columns * rows : 0;
+	}
+
+
+	/**
+	 * Get the mean of the samples in a window
+	 * @param band the color channel
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the mean, or 0 for an empty window
+	 */
+	public double getMean(int band, int x0, int y0, int x1, int y1)
+	{
+		int count = getCount(x0, y0, x1, y1);
+		return count == 0 ? 0 : (double) getSum(band, x0, y0, x1, y1) / count;
+	}
+
+
+	/**
+	 * Get the population variance of the samples in a window
+	 * @param band the color channel
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the variance, or 0 for an empty window
+	 */
+	public double getVariance(int band, int x0, int y0, int x1, int y1)
+	{
+		int count = getCount(x0, y0, x1, y1);
+		if(count == 0)
+		{
+			return 0;
+		}
+
+		// Both sums are exact, so the only rounding is in the final subtraction, not accumulated over the image
+		long sum = getSum(band, x0, y0, x1, y1);
+		long sumOfSquares = getSumOfSquares(band, x0, y0, x1, y1);
+		double mean = (double) sum / count;
+		return Math.max((double) sumOfSquares / count - mean * mean, 0);
+	}
+
+
+	/**
+	 * Replace every sample of a single-channel map by the mean of the window around it
+	 * The means are read from a summed-area table of the map, so the cost does not depend on the size of the window
+	 * Pixel(x, y) takes the mean of columns x - windowWidth/2 to x - windowWidth/2 + windowWidth - 1, and the same for the rows
+	 * @param map the map to be averaged
+	 * @param processedMap the map to store the means, with the same size as the original map (it may be the map itself)
+	 * @param windowWidth the width of the window
+	 * @param windowHeight the height of the window
+	 * @param borderMode the way the map is extended beyond its edges
+	 */
+	public static void mean(OffHeapImage map, OffHeapImage processedMap, int windowWidth, int windowHeight, BorderMode borderMode)
+	{
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int padX = windowWidth/2;
+		int padY = windowHeight/2;
+		int tableWidth = width + windowWidth;
+		int tableHeight = height + windowHeight;
+
+		// Sum the map extended by the border mode, with an extra row and column of zeros
+		// The samples of a map are not integers, so the sums are doubles
+		double[] table = new double[tableWidth * tableHeight];
+		for(int y = 1; y < tableHeight; y++)
+		{
+			int row = borderMode.map(y - 1 - padY, height);
+			int above = (y - 1) * tableWidth;
+			int entry = y * tableWidth;
+
+			double rowSum = 0;
+			for(int x = 1; x < tableWidth; x++)
+			{
+				int column = borderMode.map(x - 1 - padX, width);
+				if(row >= 0 && column >= 0)
+				{
+					rowSum += map.get(map.getIndex(column, row), 0);
+				}
+
+				table[entry + x] = table[above + x] + rowSum;
+			}
+		}
+
+		// Pixel(x, y) of the map is entry (x + padX + 1, y + padY + 1) of the table, so its window spans entries (x, y) to (x + windowWidth, y + windowHeight)
+		double area = windowWidth * windowHeight;
+		for(int y = 0; y < height; y++)
+		{
+			int top = y * tableWidth;
+			int bottom = (y + windowHeight) * tableWidth;
+
+			for(int x = 0; x < width; x++)
+			{
+				double sum = table[bottom + x + windowWidth] - table[top + x + windowWidth] - table[bottom + x] + table[top + x];
+				processedMap.set(processedMap.getIndex(x, y), 0, sum / area);
+			}
+		}
+	}
+
+
+	/**
+	 * Take the sum of a window from a table by its four corners
+	 * @param table the table of a color channel
+	 * @param x0 the x-coordinate of the left column of the window
+	 * @param y0 the y-coordinate of the top row of the window
+	 * @param x1 the x-coordinate of the right column of the window, inclusive
+	 * @param y1 the y-coordinate of the bottom row of the window, inclusive
+	 * @return the sum of the window
+	 */
+	private long getWindowSum(long[] table, int x0, int y0, int x1, int y1)
+	{
+		// Convert to table coordinates, where entry (x, y) sums the pixels left of column x and above row y
+		int left = Math.max(x0 + this.padX, 0);
+		int top = Math.max(y0 + this.padY, 0);
+		int right = Math.min(x1 + this.padX, this.width - 1) + 1;
+		int bottom = Math.min(y1 + this.padY, this.height - 1) + 1;
+
+		if(left >= right || top >= bottom)
+		{
+			return 0;
+		}
+
+		return table[bottom * this.tableWidth + right] - table[top * this.tableWidth + right] - table[bottom * this.tableWidth + left] + table[top * this.tableWidth + left];
+	}
+}
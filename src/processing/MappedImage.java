@@ -0,0 +1,203 @@
+package processing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An image stored in a raw planar file and accessed through memory mapping
+ * The file holds a 64-byte header followed by one plane per color channel, each in row-major order
+ * Header layout (big-endian): magic "RPI1", width, height, bands, sample size in bytes, byte order of the samples
+ */
+public class MappedImage extends OffHeapImage implements Closeable
+{
+	public static final String EXTENSION = "rpi";
+
+	private static final int MAGIC = 0x52504931;
+	private static final int HEADER_SIZE = 64;
+	private static final int BIG_ENDIAN = 0;
+	private static final int LITTLE_ENDIAN = 1;
+
+	private FileChannel channel;
+	private MappedByteBuffer[] mappedPlanes;
+
+
+	/**
+	 * Class constructor
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param sampleType the type of the samples
+	 * @param channel the channel of the file
+	 * @param mappedPlanes the mapped planes of the file
+	 */
+	private MappedImage(int width, int height, SampleType sampleType, FileChannel channel, MappedByteBuffer[] mappedPlanes)
+	{
+		super(width, height, sampleType, mappedPlanes);
+		this.channel = channel;
+		this.mappedPlanes = mappedPlanes;
+	}
+
+
+	/**
+	 * Create a new raw planar file, replacing any existing one, and map it for reading and writing
+	 * @param path the path of the file
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels
+	 * @param sampleType the type of the samples
+	 * @return the mapped image, filled with zeros
+	 * @throws IOException if the file cannot be created
+	 */
+	public static MappedImage create(Path path, int width, int height, int bands, SampleType sampleType) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+											   StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		// Write the header
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(width).putInt(height).putInt(bands).putInt(sampleType.getSize());
+		header.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? BIG_ENDIAN : LITTLE_ENDIAN);
+		header.rewind();
+		channel.write(header, 0);
+
+		return map(channel, FileChannel.MapMode.READ_WRITE, width, height, bands, sampleType);
+	}
+
+
+	/**
+	 * Open an existing raw planar file and map it
+	 * @param path the path of the file
+	 * @param writable if the pixels may be modified, which writes them back to the file
+	 * @return the mapped image
+	 * @throws IOException if the file cannot be read or is not a raw planar file
+	 */
+	public static MappedImage open(Path path, boolean writable) throws IOException
+	{
+		FileChannel channel = writable ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(path, StandardOpenOption.READ);
+
+		try
+		{
+			// Read and validate the header
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if(channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC)
+			{
+				throw new IOException(path + " is not a raw planar image file");
+			}
+
+			int width = header.getInt(4);
+			int height = header.getInt(8);
+			int bands = header.getInt(12);
+			if(width <= 0 || height <= 0 || bands <= 0)
+			{
+				throw new IOException(path + " has an invalid size " + width + " x " + height + " x " + bands);
+			}
+
+			// Find the sample type of the sample size
+			SampleType sampleType = null;
+			for(SampleType type : SampleType.values())
+			{
+				if(header.getInt(16) == type.getSize())
+				{
+					sampleType = type;
+				}
+			}
+			if(sampleType == null)
+			{
+				throw new IOException(path + " has samples of an unknown size " + header.getInt(16));
+			}
+
+			ByteOrder byteOrder = header.getInt(20) == BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+			// Samples wider than a byte are accessed in native byte order
+			if(sampleType != SampleType.BYTE && byteOrder != ByteOrder.nativeOrder())
+			{
+				throw new IOException(path + " was written with " + byteOrder + " samples, this machine is " + ByteOrder.nativeOrder());
+			}
+
+			if(channel.size() < HEADER_SIZE + (long) width * height * sampleType.getSize() * bands)
+			{
+				throw new IOException(path + " is truncated");
+			}
+
+			return map(channel, writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, width, height, bands, sampleType);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Check if a file is a raw planar file by its extension
+	 * @param path the path of the file
+	 * @return true if the file has the raw planar file extension
+	 */
+	public static boolean isMappedImageFile(Path path)
+	{
+		return path.getFileName().toString().toLowerCase().endsWith("." + EXTENSION);
+	}
+
+
+	/**
+	 * Map every plane of the file
+	 * @param channel the channel of the file
+	 * @param mode the mapping mode
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels
+	 * @param sampleType the type of the samples
+	 * @return the mapped image
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private static MappedImage map(FileChannel channel, FileChannel.MapMode mode, int width, int height, int bands, SampleType sampleType) throws IOException
+	{
+		long planeSize = (long) width * height * sampleType.getSize();
+		if(planeSize > Integer.MAX_VALUE)
+		{
+			throw new IOException("A plane of " + width + " x " + height + " " + sampleType + " samples exceeds 2 GB");
+		}
+
+		// Map each plane on its own, as a single mapping is limited to 2 GB
+		MappedByteBuffer[] mappedPlanes = new MappedByteBuffer[bands];
+		for(int band = 0; band < bands; band++)
+		{
+			mappedPlanes[band] = channel.map(mode, HEADER_SIZE + band * planeSize, planeSize);
+		}
+
+		return new MappedImage(width, height, sampleType, channel, mappedPlanes);
+	}
+
+
+	/**
+	 * Write the modified pixels back to the file
+	 */
+	public void force()
+	{
+		for(MappedByteBuffer plane : this.mappedPlanes)
+		{
+			if(!plane.isReadOnly())
+			{
+				plane.force();
+			}
+		}
+	}
+
+
+	/**
+	 * Write the modified pixels back to the file and close it
+	 * The mapping itself is released once the image is garbage collected
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		force();
+		this.channel.close();
+	}
+}
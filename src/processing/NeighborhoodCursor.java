@@ -0,0 +1,268 @@
+package processing;
+
+/**
+ * A view of the neighborhood size m x n of a pixel of a planar image, which moves from pixel to pixel without allocating
+ * The neighborhood is clipped to the image's edges, as in Processor.getRGBs; its samples are read straight from
+ * the image's planes, and every move tells which column or row entered the neighborhood and which one left it,
+ * so that filters can keep running sums or histograms up to date instead of walking the whole neighborhood again
+ * A cursor is typically moved to the start of a row, then along it:
+ * cursor.moveTo(0, y); do { ... } while(cursor.moveRight());
+ */
+public class NeighborhoodCursor
+{
+	private PlanarImage image;
+	private int radiusX;
+	private int radiusY;
+	private int x;
+	private int y;
+	private int xMin;
+	private int xMax;
+	private int yMin;
+	private int yMax;
+	private int enteringColumn = -1;
+	private int leavingColumn = -1;
+	private int enteringRow = -1;
+	private int leavingRow = -1;
+
+
+	/**
+	 * Class constructor
+	 * The cursor starts at pixel(0, 0)
+	 * @param image the image
+	 * @param subimageWidth the width of the neighborhood
+	 * @param subimageHeight the height of the neighborhood
+	 */
+	public NeighborhoodCursor(PlanarImage image, int subimageWidth, int subimageHeight)
+	{
+		this.image = image;
+		this.radiusX = subimageWidth/2;
+		this.radiusY = subimageHeight/2;
+		moveTo(0, 0);
+	}
+
+
+	/**
+	 * Move the neighborhood to a pixel, with no column or row entering or leaving it
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 */
+	public void moveTo(int x, int y)
+	{
+		this.x = x;
+		this.y = y;
+		this.xMin = Math.max(x - this.radiusX, 0);
+		this.xMax = Math.min(x + this.radiusX, this.image.getWidth() - 1);
+		this.yMin = Math.max(y - this.radiusY, 0);
+		this.yMax = Math.min(y + this.radiusY, this.image.getHeight() - 1);
+		this.enteringColumn = -1;
+		this.leavingColumn = -1;
+		this.enteringRow = -1;
+		this.leavingRow = -1;
+	}
+
+
+	/**
+	 * Move the neighborhood one pixel to the right
+	 * @return false if the cursor was at the last pixel of the row, which leaves it there
+	 */
+	public boolean moveRight()
+	{
+		if(this.x + 1 >= this.image.getWidth())
+		{
+			return false;
+		}
+
+		moveTo(this.x + 1, this.y);
+		this.enteringColumn = this.x + this.radiusX < this.image.getWidth() ? this.x + this.radiusX : -1;
+		this.leavingColumn = this.x - this.radiusX - 1 >= 0 ? this.x - this.radiusX - 1 : -1;
+		return true;
+	}
+
+
+	/**
+	 * Move the neighborhood one pixel to the left
+	 * @return false if the cursor was at the first pixel of the row, which leaves it there
+	 */
+	public boolean moveLeft()
+	{
+		if(this.x == 0)
+		{
+			return false;
+		}
+
+		moveTo(this.x - 1, this.y);
+		this.enteringColumn = this.x - this.radiusX >= 0 ? this.x - this.radiusX : -1;
+		this.leavingColumn = this.x + this.radiusX + 1 < this.image.getWidth() ? this.x + this.radiusX + 1 : -1;
+		return true;
+	}
+
+
+	/**
+	 * Move the neighborhood one pixel down
+	 * @return false if the cursor was on the last row, which leaves it there
+	 */
+	public boolean moveDown()
+	{
+		if(this.y + 1 >= this.image.getHeight())
+		{
+			return false;
+		}
+
+		moveTo(this.x, this.y + 1);
+		this.enteringRow = this.y + this.radiusY < this.image.getHeight() ? this.y + this.radiusY : -1;
+		this.leavingRow = this.y - this.radiusY - 1 >= 0 ? this.y - this.radiusY - 1 : -1;
+		return true;
+	}
+
+
+	public int getX()
+	{
+		return this.x;
+	}
+
+
+	public int getY()
+	{
+		return this.y;
+	}
+
+
+	/**
+	 * Get the first column of the neighborhood inside the image
+	 * @return the x-coordinate of the column
+	 */
+	public int getXMin()
+	{
+		return this.xMin;
+	}
+
+
+	/**
+	 * Get the last column of the neighborhood inside the image
+	 * @return the x-coordinate of the column
+	 */
+	public int getXMax()
+	{
+		return this.xMax;
+	}
+
+
+	/**
+	 * Get the first row of the neighborhood inside the image
+	 * @return the y-coordinate of the row
+	 */
+	public int getYMin()
+	{
+		return this.yMin;
+	}
+
+
+	/**
+	 * Get the last row of the neighborhood inside the image
+	 * @return the y-coordinate of the row
+	 */
+	public int getYMax()
+	{
+		return this.yMax;
+	}
+
+
+	/**
+	 * Get the number of pixels of the neighborhood inside the image
+	 * @return the number of pixels
+	 */
+	public int getCount()
+	{
+		return (this.xMax - this.xMin + 1) * (this.yMax - this.yMin + 1);
+	}
+
+
+	/**
+	 * Get the column that entered the neighborhood on the last move to the left or right
+	 * @return the x-coordinate of the column, or -1 if no column of the image entered it
+	 */
+	public int getEnteringColumn()
+	{
+		return this.enteringColumn;
+	}
+
+
+	/**
+	 * Get the column that left the neighborhood on the last move to the left or right
+	 * @return the x-coordinate of the column, or -1 if no column of the image left it
+	 */
+	public int getLeavingColumn()
+	{
+		return this.leavingColumn;
+	}
+
+
+	/**
+	 * Get the row that entered the neighborhood on the last move down
+	 * @return the y-coordinate of the row, or -1 if no row of the image entered it
+	 */
+	public int getEnteringRow()
+	{
+		return this.enteringRow;
+	}
+
+
+	/**
+	 * Get the row that left the neighborhood on the last move down
+	 * @return the y-coordinate of the row, or -1 if no row of the image left it
+	 */
+	public int getLeavingRow()
+	{
+		return this.leavingRow;
+	}
+
+
+	/**
+	 * Get the plane of a color channel, to read the samples of the neighborhood with getIndex
+	 * @param band the color channel
+	 * @return the plane of the image
+	 */
+	public int[] getPlane(int band)
+	{
+		return this.image.getPlane(band);
+	}
+
+
+	/**
+	 * Get the index of a pixel in the planes; the pixels of a column are getStride() apart
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the index of the pixel
+	 */
+	public int getIndex(int x, int y)
+	{
+		return this.image.getIndex(x, y);
+	}
+
+
+	public int getStride()
+	{
+		return this.image.getStride();
+	}
+
+
+	/**
+	 * Copy the samples of the neighborhood of a color channel, row by row, into a caller-supplied array
+	 * @param band the color channel
+	 * @param values the array to store the samples, with room for getCount() samples
+	 * @return the number of samples copied
+	 */
+	public int getSamples(int band, int[] values)
+	{
+		int[] plane = this.image.getPlane(band);
+		int columns = this.xMax - this.xMin + 1;
+		int count = 0;
+		for(int j = this.yMin; j <= this.yMax; j++)
+		{
+			System.arraycopy(plane, this.image.getIndex(this.xMin, j), values, count, columns);
+			count += columns;
+		}
+
+		return count;
+	}
+}
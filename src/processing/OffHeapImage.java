@@ -0,0 +1,352 @@
+package processing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OffHeapImage implements ImageStore
+{
+	public enum SampleType
+	{
+		BYTE(1), DOUBLE(8);
+
+		private int size;
+
+		private SampleType(int size)
+		{
+			this.size = size;
+		}
+
+		/**
+		 * Get the number of bytes a sample takes
+		 * @return the size of a sample in bytes
+		 */
+		public int getSize()
+		{
+			return this.size;
+		}
+	}
+
+
+	// Total number of bytes held by all off-heap images allocated by this class
+	private static final AtomicLong allocatedMemory = new AtomicLong();
+	private static volatile long memoryLimit = Long.MAX_VALUE;
+
+	private int width;
+	private int height;
+	private SampleType sampleType;
+	private ByteBuffer[] planes;
+	private long allocatedSize;
+
+
+	/**
+	 * Class constructor
+	 * Allocate one direct buffer per color channel, outside the Java heap
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels
+	 * @param sampleType the type of the samples
+	 */
+	public OffHeapImage(int width, int height, int bands, SampleType sampleType)
+	{
+		long planeSize = (long) width * height * sampleType.getSize();
+		if(planeSize > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("A plane of " + width + " x " + height + " " + sampleType + " samples exceeds 2 GB");
+		}
+
+		// Reserve the memory against the limit before allocating it
+		long size = planeSize * bands;
+		if(allocatedMemory.addAndGet(size) > memoryLimit)
+		{
+			allocatedMemory.addAndGet(-size);
+			throw new OutOfMemoryError("Off-heap image memory limit of " + memoryLimit + " bytes exceeded");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.sampleType = sampleType;
+		this.planes = new ByteBuffer[bands];
+		this.allocatedSize = size;
+
+		for(int band = 0; band < bands; band++)
+		{
+			this.planes[band] = ByteBuffer.allocateDirect((int) planeSize).order(ByteOrder.nativeOrder());
+		}
+	}
+
+
+	/**
+	 * Class constructor
+	 * Wrap existing buffers (such as memory-mapped files) without allocating or accounting any memory
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param sampleType the type of the samples
+	 * @param planes one buffer per color channel, each holding width * height samples in row-major order
+	 */
+	public OffHeapImage(int width, int height, SampleType sampleType, ByteBuffer[] planes)
+	{
+		this.width = width;
+		this.height = height;
+		this.sampleType = sampleType;
+		this.planes = new ByteBuffer[planes.length];
+
+		for(int band = 0; band < planes.length; band++)
+		{
+			this.planes[band] = planes[band].duplicate().order(ByteOrder.nativeOrder());
+		}
+	}
+
+
+	/**
+	 * Limit the total memory all off-heap images allocated by this class may hold
+	 * The JVM's own cap on direct memory (-XX:MaxDirectMemorySize) still applies
+	 * @param bytes the maximum number of bytes
+	 */
+	public static void setMemoryLimit(long bytes)
+	{
+		memoryLimit = bytes;
+	}
+
+
+	public static long getMemoryLimit()
+	{
+		return memoryLimit;
+	}
+
+
+	/**
+	 * Get the total memory currently held by off-heap images allocated by this class
+	 * @return the number of bytes
+	 */
+	public static long getAllocatedMemory()
+	{
+		return allocatedMemory.get();
+	}
+
+
+	/**
+	 * Create a single-channel image of doubles, used for maps such as the dark channel or the transmission map
+	 * @param width the width of the map
+	 * @param height the height of the map
+	 * @return a new zero-filled map
+	 */
+	public static OffHeapImage createMap(int width, int height)
+	{
+		return new OffHeapImage(width, height, 1, SampleType.DOUBLE);
+	}
+
+
+	/**
+	 * Give the memory of this image back to the limit and drop the buffers
+	 * The native memory is returned once the buffers are garbage collected
+	 * The image must not be used afterwards
+	 */
+	public void release()
+	{
+		allocatedMemory.addAndGet(-this.allocatedSize);
+		this.allocatedSize = 0;
+		this.planes = null;
+	}
+
+
+	@Override
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+
+	@Override
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+
+	@Override
+	public int getBands()
+	{
+		return this.planes.length;
+	}
+
+
+	public SampleType getSampleType()
+	{
+		return this.sampleType;
+	}
+
+
+	/**
+	 * Get the buffer of a color channel
+	 * Sample (x, y) starts at byte (y * width + x) * sample size
+	 * @param band the color channel
+	 * @return the buffer of the channel in native byte order
+	 */
+	public ByteBuffer getPlane(int band)
+	{
+		return this.planes[band];
+	}
+
+
+	/**
+	 * Get the index of pixel(x, y) in the planes, counted in samples
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the index of the pixel
+	 */
+	public int getIndex(int x, int y)
+	{
+		return y * this.width + x;
+	}
+
+
+	/**
+	 * Get a sample by its index in the plane
+	 * @param index the index of the sample
+	 * @param band the color channel
+	 * @return the value of the sample
+	 */
+	public double get(int index, int band)
+	{
+		return this.sampleType == SampleType.BYTE ? this.planes[band].get(index) & 0xFF : this.planes[band].getDouble(index << 3);
+	}
+
+
+	/**
+	 * Set a sample by its index in the plane
+	 * Byte samples are truncated to their lowest 8 bits
+	 * @param index the index of the sample
+	 * @param band the color channel
+	 * @param value the value of the sample
+	 */
+	public void set(int index, int band, double value)
+	{
+		if(this.sampleType == SampleType.BYTE)
+		{
+			this.planes[band].put(index, (byte) (int) value);
+		}
+		else
+		{
+			this.planes[band].putDouble(index << 3, value);
+		}
+	}
+
+
+	public double getSample(int x, int y, int band)
+	{
+		return get(y * this.width + x, band);
+	}
+
+
+	public void setSample(int x, int y, int band, double value)
+	{
+		set(y * this.width + x, band, value);
+	}
+
+
+	/**
+	 * Copy this image with extra columns and rows on each side, filled by the given border mode
+	 * Pixel(x, y) of this image is pixel(x + padX, y + padY) of the padded copy
+	 * @param padX the number of extra columns on each side
+	 * @param padY the number of extra rows on each side
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @return the padded copy, which the caller must release
+	 */
+	public OffHeapImage pad(int padX, int padY, BorderMode borderMode)
+	{
+		OffHeapImage paddedImage = new OffHeapImage(this.width + padX * 2, this.height + padY * 2, this.planes.length, this.sampleType);
+
+		for(int band = 0; band < this.planes.length; band++)
+		{
+			for(int y = 0; y < paddedImage.getHeight(); y++)
+			{
+				int row = borderMode.map(y - padY, this.height);
+				for(int x = 0; x < paddedImage.getWidth(); x++)
+				{
+					int column = borderMode.map(x - padX, this.width);
+
+					// A new image is filled with zeros, so the constant border is already there
+					if(row >= 0 && column >= 0)
+					{
+						paddedImage.set(paddedImage.getIndex(x, y), band, get(getIndex(column, row), band));
+					}
+				}
+			}
+		}
+
+		return paddedImage;
+	}
+
+
+	@Override
+	public void read(PlanarImage region, int x, int y)
+	{
+		byte[] row = new byte[this.sampleType == SampleType.BYTE ? region.getWidth() : 0];
+
+		for(int band = 0; band < region.getBands(); band++)
+		{
+			ByteBuffer plane = this.planes[Math.min(band, this.planes.length - 1)];
+			int[] dst = region.getPlane(band);
+
+			for(int j = 0; j < region.getHeight(); j++)
+			{
+				int src = getIndex(x, y + j);
+				int index = region.getIndex(0, j);
+
+				if(this.sampleType == SampleType.BYTE)
+				{
+					// Copy the whole row at once, then widen it
+					plane.get(src, row, 0, row.length);
+					for(int i = 0; i < row.length; i++)
+					{
+						dst[index + i] = row[i] & 0xFF;
+					}
+				}
+				else
+				{
+					for(int i = 0; i < region.getWidth(); i++)
+					{
+						dst[index + i] = (int) plane.getDouble((src + i) << 3);
+					}
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public void write(PlanarImage region, int regionX, int regionY, int width, int height, int x, int y)
+	{
+		byte[] row = new byte[this.sampleType == SampleType.BYTE ? width : 0];
+
+		for(int band = 0; band < this.planes.length; band++)
+		{
+			ByteBuffer plane = this.planes[band];
+			int[] src = region.getPlane(Math.min(band, region.getBands() - 1));
+
+			for(int j = 0; j < height; j++)
+			{
+				int index = region.getIndex(regionX, regionY + j);
+				int dst = getIndex(x, y + j);
+
+				if(this.sampleType == SampleType.BYTE)
+				{
+					// Narrow the whole row, then copy it at once
+					for(int i = 0; i < width; i++)
+					{
+						row[i] = (byte) src[index + i];
+					}
+					plane.put(dst, row, 0, width);
+				}
+				else
+				{
+					for(int i = 0; i < width; i++)
+					{
+						plane.putDouble((dst + i) << 3, src[index + i]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+public class PlanarImage
+{
+	private int width;
+	private int height;
+	private int stride;
+	private int[][] planes;
+
+
+	/**
+	 * Class constructor
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels (1 for grayscale, 3 for RGB)
+	 */
+	public PlanarImage(int width, int height, int bands)
+	{
+		this(width, height, bands, width);
+	}
+
+
+	/**
+	 * Class constructor
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param bands the number of color channels (1 for grayscale, 3 for RGB)
+	 * @param stride the distance between two vertically adjacent samples in a plane
+	 */
+	public PlanarImage(int width, int height, int bands, int stride)
+	{
+		if(stride < width)
+		{
+			throw new IllegalArgumentException("Stride " + stride + " is smaller than width " + width);
+		}
+
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.planes = new int[bands][stride * height];
+	}
+
+
+	/**
+	 * Create a planar image with the same size, number of channels and stride as the given one
+	 * @param image the image to be matched
+	 * @return a new zero-filled planar image
+	 */
+	public static PlanarImage createCompatible(PlanarImage image)
+	{
+		return new PlanarImage(image.getWidth(), image.getHeight(), image.getBands(), image.getStride());
+	}
+
+
+	/**
+	 * Get the number of color channels an image is processed with
+	 * Grayscale images (and gray + alpha) have 1 channel, all others have 3 (alpha is ignored)
+	 * @param raster the raster of the image
+	 * @return the number of color channels
+	 */
+	public static int getBands(Raster raster)
+	{
+		return raster.getNumBands() < 3 ? 1 : 3;
+	}
+
+
+	/**
+	 * Copy the pixels of a BufferedImage to a new planar image
+	 * @param image the input image
+	 * @return the planar image
+	 */
+	public static PlanarImage fromBufferedImage(BufferedImage image)
+	{
+		PlanarImage planarImage = new PlanarImage(image.getWidth(), image.getHeight(), getBands(image.getRaster()));
+		planarImage.read(image.getRaster(), 0, 0);
+		return planarImage;
+	}
+
+
+	/**
+	 * Copy the pixels of this planar image to a new BufferedImage
+	 * @param imageType the type of the BufferedImage to be created
+	 * @return the BufferedImage
+	 */
+	public BufferedImage toBufferedImage(int imageType)
+	{
+		BufferedImage image = new BufferedImage(this.width, this.height, imageType);
+		this.write(image.getRaster(), 0, 0, 0, 0, this.width, this.height);
+		return image;
+	}
+
+
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+
+	public int getBands()
+	{
+		return this.planes.length;
+	}
+
+
+	public int getStride()
+	{
+		return this.stride;
+	}
+
+
+	/**
+	 * Get the backing array of a color channel
+	 * Sample (x, y) is stored at index y * stride + x
+	 * @param band the color channel
+	 * @return the samples of the channel in row-major order
+	 */
+	public int[] getPlane(int band)
+	{
+		return this.planes[band];
+	}
+
+
+	/**
+	 * Get the index of pixel(x, y) in the planes
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the index of the pixel
+	 */
+	public int getIndex(int x, int y)
+	{
+		return y * this.stride + x;
+	}
+
+
+	public int getSample(int x, int y, int band)
+	{
+		return this.planes[band][y * this.stride + x];
+	}
+
+
+	public void setSample(int x, int y, int band, int value)
+	{
+		this.planes[band][y * this.stride + x] = value;
+	}
+
+
+	/**
+	 * Copy this image with extra columns and rows on each side, filled by the given border mode
+	 * Neighborhood operators read the padded copy, so that their loops have no bounds checks
+	 * Pixel(x, y) of this image is pixel(x + padX, y + padY) of the padded copy
+	 * @param padX the number of extra columns on each side
+	 * @param padY the number of extra rows on each side
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @return the padded copy, taken from the buffer pool
+	 */
+	public PlanarImage pad(int padX, int padY, BorderMode borderMode)
+	{
+		int paddedWidth = this.width + padX * 2;
+		int paddedHeight = this.height + padY * 2;
+		PlanarImage paddedImage = BufferPool.acquire(paddedWidth, paddedHeight, this.planes.length);
+
+		for(int band = 0; band < this.planes.length; band++)
+		{
+			int[] src = this.planes[band];
+			int[] dst = paddedImage.getPlane(band);
+
+			for(int y = 0; y < paddedHeight; y++)
+			{
+				int row = borderMode.map(y - padY, this.height);
+				int paddedRow = paddedImage.getIndex(0, y);
+
+				if(row < 0)
+				{
+					Arrays.fill(dst, paddedRow, paddedRow + paddedWidth, 0);
+					continue;
+				}
+
+				// Copy the row itself, then fill the columns on both sides
+				int index = getIndex(0, row);
+				System.arraycopy(src, index, dst, paddedRow + padX, this.width);
+
+				for(int x = 0; x < padX; x++)
+				{
+					int left = borderMode.map(x - padX, this.width);
+					int right = borderMode.map(this.width + x, this.width);
+					dst[paddedRow + x] = left < 0 ? 0 : src[index + left];
+					dst[paddedRow + padX + this.width + x] = right < 0 ? 0 : src[index + right];
+				}
+			}
+		}
+
+		return paddedImage;
+	}
+
+
+	/**
+	 * Fill this planar image with the pixels of a raster, starting from the raster's pixel(rasterX, rasterY)
+	 * The area read has the same width and height as this planar image
+	 * @param raster the raster to be read
+	 * @param rasterX the x-coordinate of the first pixel to be read
+	 * @param rasterY the y-coordinate of the first pixel to be read
+	 */
+	public void read(Raster raster, int rasterX, int rasterY)
+	{
+		SampleModel sampleModel = raster.getSampleModel();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+
+		// Convert the raster coordinates to sample model coordinates
+		int sampleX = rasterX - raster.getSampleModelTranslateX();
+		int sampleY = rasterY - raster.getSampleModelTranslateY();
+
+		if(dataBuffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel)
+		{
+			// Byte images (grayscale, BGR, ABGR): read straight from the interleaved or banded byte array
+			ComponentSampleModel model = (ComponentSampleModel) sampleModel;
+			int pixelStride = model.getPixelStride();
+			int scanlineStride = model.getScanlineStride();
+
+			for(int band = 0; band < this.planes.length; band++)
+			{
+				byte[] data = ((DataBufferByte) dataBuffer).getData(model.getBankIndices()[band]);
+				int offset = dataBuffer.getOffsets()[model.getBankIndices()[band]] + model.getBandOffsets()[band];
+				int[] plane = this.planes[band];
+
+				for(int y = 0; y < this.height; y++)
+				{
+					int src = offset + (sampleY + y) * scanlineStride + sampleX * pixelStride;
+					int dst = y * this.stride;
+					for(int x = 0; x < this.width; x++, src += pixelStride)
+					{
+						plane[dst + x] = data[src] & 0xFF;
+					}
+				}
+			}
+		}
+		else if(dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel)
+		{
+			// Packed int images (RGB, ARGB, BGR): unpack each channel with its mask
+			SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) sampleModel;
+			int[] data = ((DataBufferInt) dataBuffer).getData();
+			int scanlineStride = model.getScanlineStride();
+			int offset = dataBuffer.getOffset();
+
+			for(int band = 0; band < this.planes.length; band++)
+			{
+				int mask = model.getBitMasks()[band];
+				int shift = model.getBitOffsets()[band];
+				int[] plane = this.planes[band];
+
+				for(int y = 0; y < this.height; y++)
+				{
+					int src = offset + (sampleY + y) * scanlineStride + sampleX;
+					int dst = y * this.stride;
+					for(int x = 0; x < this.width; x++)
+					{
+						plane[dst + x] = (data[src + x] & mask) >>> shift;
+					}
+				}
+			}
+		}
+		else
+		{
+			// Any other layout: let the raster unpack one row of samples at a time
+			int[] row = new int[this.width];
+			for(int band = 0; band < this.planes.length; band++)
+			{
+				for(int y = 0; y < this.height; y++)
+				{
+					raster.getSamples(rasterX, rasterY + y, this.width, 1, band, row);
+					System.arraycopy(row, 0, this.planes[band], y * this.stride, this.width);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Copy an area of this planar image to a raster
+	 * A grayscale planar image written to a color raster is replicated over all color channels
+	 * Samples are written as they are (no clipping), the same as WritableRaster.setSample
+	 * @param raster the raster to be written
+	 * @param rasterX the x-coordinate of the first pixel to be written in the raster
+	 * @param rasterY the y-coordinate of the first pixel to be written in the raster
+	 * @param x the x-coordinate of the area in this planar image
+	 * @param y the y-coordinate of the area in this planar image
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 */
+	public void write(WritableRaster raster, int rasterX, int rasterY, int x, int y, int width, int height)
+	{
+		SampleModel sampleModel = raster.getSampleModel();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		int bands = Math.min(raster.getNumBands(), 3);
+
+		// Convert the raster coordinates to sample model coordinates
+		int sampleX = rasterX - raster.getSampleModelTranslateX();
+		int sampleY = rasterY - raster.getSampleModelTranslateY();
+
+		if(dataBuffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel)
+		{
+			ComponentSampleModel model = (ComponentSampleModel) sampleModel;
+			int pixelStride = model.getPixelStride();
+			int scanlineStride = model.getScanlineStride();
+
+			for(int band = 0; band < bands; band++)
+			{
+				byte[] data = ((DataBufferByte) dataBuffer).getData(model.getBankIndices()[band]);
+				int offset = dataBuffer.getOffsets()[model.getBankIndices()[band]] + model.getBandOffsets()[band];
+				int[] plane = this.planes[Math.min(band, this.planes.length - 1)];
+
+				for(int j = 0; j < height; j++)
+				{
+					int dst = offset + (sampleY + j) * scanlineStride + sampleX * pixelStride;
+					int src = (y + j) * this.stride + x;
+					for(int i = 0; i < width; i++, dst += pixelStride)
+					{
+						data[dst] = (byte) plane[src + i];
+					}
+				}
+			}
+		}
+		else if(dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel)
+		{
+			SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) sampleModel;
+			int[] data = ((DataBufferInt) dataBuffer).getData();
+			int scanlineStride = model.getScanlineStride();
+			int offset = dataBuffer.getOffset();
+
+			for(int band = 0; band < bands; band++)
+			{
+				int mask = model.getBitMasks()[band];
+				int shift = model.getBitOffsets()[band];
+				int[] plane = this.planes[Math.min(band, this.planes.length - 1)];
+
+				for(int j = 0; j < height; j++)
+				{
+					int dst = offset + (sampleY + j) * scanlineStride + sampleX;
+					int src = (y + j) * this.stride + x;
+					for(int i = 0; i < width; i++)
+					{
+						data[dst + i] = (data[dst + i] & ~mask) | ((plane[src + i] << shift) & mask);
+					}
+				}
+			}
+		}
+		else
+		{
+			int[] row = new int[width];
+			for(int band = 0; band < bands; band++)
+			{
+				int[] plane = this.planes[Math.min(band, this.planes.length - 1)];
+				for(int j = 0; j < height; j++)
+				{
+					System.arraycopy(plane, (y + j) * this.stride + x, row, 0, width);
+					raster.setSamples(rasterX, rasterY + j, width, 1, band, row);
+				}
+			}
+		}
+	}
+}
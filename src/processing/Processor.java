@@ -2,6 +2,7 @@ package processing;
 
 import java.awt.Font;
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +43,18 @@ public interface Processor
 	}
 	
 	
+	/**
+	 * Get the image type to be used for the processed image of the given image
+	 * Custom image types are processed as RGB images
+	 * @param image the original image
+	 * @return the type of the processed image
+	 */
+	public static int getImageType(BufferedImage image)
+	{
+		return image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : image.getType();
+	}
+	
+	
 	/**
 	 * Get the RGB value of pixel(x, y) from the given image
 	 * @param image the input image
@@ -52,18 +65,21 @@ public interface Processor
 	public static int[] getRGB(BufferedImage image, int x, int y)
 	{
 		int[] rgb = new int[3];
-		try
-		{
-			rgb[0] = image.getRaster().getSample(x, y, 0);
-			rgb[1] = image.getRaster().getSample(x, y, 1);
-			rgb[2] = image.getRaster().getSample(x, y, 2);
-		}
-		catch(ArrayIndexOutOfBoundsException e)
+		WritableRaster raster = image.getRaster();
+		
+		// Grayscale images (and gray + alpha) have a single color channel, repeated over all RGB channels
+		if(raster.getNumBands() < 3)
 		{
-			rgb[0] = image.getRaster().getSample(x, y, 0);
+			rgb[0] = raster.getSample(x, y, 0);
 			rgb[1] = rgb[0];
 			rgb[2] = rgb[0];
 		}
+		else
+		{
+			rgb[0] = raster.getSample(x, y, 0);
+			rgb[1] = raster.getSample(x, y, 1);
+			rgb[2] = raster.getSample(x, y, 2);
+		}
 
 		return rgb;
 	}
@@ -78,15 +94,14 @@ public interface Processor
 	 */
 	public static void setRGB(BufferedImage image, int x, int y, int[] rgb)
 	{
-		try
-		{
-			image.getRaster().setSample(x, y, 0, rgb[0]);
-			image.getRaster().setSample(x, y, 1, rgb[1]);
-			image.getRaster().setSample(x, y, 2, rgb[2]);
-		}
-		catch(ArrayIndexOutOfBoundsException e)
+		WritableRaster raster = image.getRaster();
+		
+		// Grayscale images (and gray + alpha) only take the first channel
+		raster.setSample(x, y, 0, rgb[0]);
+		if(raster.getNumBands() >= 3)
 		{
-			image.getRaster().setSample(x, y, 0, rgb[0]);
+			raster.setSample(x, y, 1, rgb[1]);
+			raster.setSample(x, y, 2, rgb[2]);
 		}
 	}
 	
@@ -100,15 +115,14 @@ public interface Processor
 	 */
 	public static void setRGB(BufferedImage image, int x, int y, double[] rgb)
 	{
-		try
-		{
-			image.getRaster().setSample(x, y, 0, rgb[0]);
-			image.getRaster().setSample(x, y, 1, rgb[1]);
-			image.getRaster().setSample(x, y, 2, rgb[2]);
-		}
-		catch(ArrayIndexOutOfBoundsException e)
+		WritableRaster raster = image.getRaster();
+		
+		// Grayscale images (and gray + alpha) only take the first channel
+		raster.setSample(x, y, 0, rgb[0]);
+		if(raster.getNumBands() >= 3)
 		{
-			image.getRaster().setSample(x, y, 0, rgb[0]);
+			raster.setSample(x, y, 1, rgb[1]);
+			raster.setSample(x, y, 2, rgb[2]);
 		}
 	}
 	
@@ -168,13 +182,16 @@ public interface Processor
 	
 	/**
 	 * Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
+	 * The pixels outside the image's edges are left out of the list
 	 * @param image the input image
 	 * @param x coordinate x of the image
 	 * @param y coordinate y of the image
 	 * @param m width of the neighborhood
 	 * @param n height of the neighborhood
 	 * @return list of RGB values contained in the neighborhood
+	 * @deprecated builds a new list and arrays for every pixel; slide a NeighborhoodCursor over a PlanarImage instead
 	 */
+	@Deprecated
 	public static List<int[]> getRGBs(BufferedImage image, int x, int y, int subimageWidth, int subimageHeight)
 	{
 		// Initialize array to store RGB value of the pixel at the center of the mask
@@ -201,6 +218,44 @@ public interface Processor
 	}
 	
 	
+	/**
+	 * Get list of RGB values contained in the neighborhood size m x n of the pixel(x, y)
+	 * The image is extended beyond its edges by the border mode, so the list always holds m x n values
+	 * @param image the input image
+	 * @param x coordinate x of the image
+	 * @param y coordinate y of the image
+	 * @param subimageWidth width of the neighborhood
+	 * @param subimageHeight height of the neighborhood
+	 * @param borderMode the way the image is extended beyond its edges
+	 * @return list of RGB values contained in the neighborhood
+	 * @deprecated builds a new list and arrays for every pixel; pad a PlanarImage by the border mode and slide a NeighborhoodCursor over it instead
+	 */
+	@Deprecated
+	public static List<int[]> getRGBs(BufferedImage image, int x, int y, int subimageWidth, int subimageHeight, BorderMode borderMode)
+	{
+		// Initialize array to store RGB value of the pixel at the center of the mask
+		List<int[]> rgbValues = new ArrayList<int[]>();
+		
+		// Loop over all pixels under the mask
+		for(int i = -subimageWidth/2; i <= subimageWidth/2; i++)
+		{
+			// Find the column the pixel takes its value from
+			int w = borderMode.map(x + i, image.getWidth());
+			
+			for(int j = -subimageHeight/2; j <= subimageHeight/2; j++)
+			{
+				// Find the row the pixel takes its value from
+				int h = borderMode.map(y + j, image.getHeight());
+				
+				// Get the value of each pixel under the mask, the constant border is black
+				rgbValues.add(w < 0 || h < 0 ? new int[3] : Processor.getRGB(image, w, h));
+			}
+		}
+		
+		return rgbValues;
+	}
+	
+	
 	
 	/**
 	 * Calculate the Root Mean Square Error of the processed image and the original image
@@ -0,0 +1,59 @@
+package processing;
+
+import java.awt.image.BufferedImage;
+
+public class RasterStore implements ImageStore
+{
+	private BufferedImage image;
+	
+	
+	/**
+	 * Class constructor
+	 * @param image the image whose raster stores the pixels
+	 */
+	public RasterStore(BufferedImage image)
+	{
+		this.image = image;
+	}
+	
+	
+	public BufferedImage getImage()
+	{
+		return this.image;
+	}
+	
+	
+	@Override
+	public int getWidth()
+	{
+		return this.image.getWidth();
+	}
+	
+	
+	@Override
+	public int getHeight()
+	{
+		return this.image.getHeight();
+	}
+	
+	
+	@Override
+	public int getBands()
+	{
+		return PlanarImage.getBands(this.image.getRaster());
+	}
+	
+	
+	@Override
+	public void read(PlanarImage region, int x, int y)
+	{
+		region.read(this.image.getRaster(), x, y);
+	}
+	
+	
+	@Override
+	public void write(PlanarImage region, int regionX, int regionY, int width, int height, int x, int y)
+	{
+		region.write(this.image.getRaster(), x, y, regionX, regionY, width, height);
+	}
+}
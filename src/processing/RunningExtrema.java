@@ -0,0 +1,188 @@
+package processing;
+
+/**
+ * Minimum and maximum filters over rectangular windows in about three comparisons per sample whatever the window size
+ * (van Herk, 1992; Gil and Werman, 1993)
+ * The window is separable, so the rows are filtered then the columns; along a line cut in blocks of the window's size,
+ * every window covers the end of one block and the start of the next, whose extrema are running extrema from either end
+ */
+public final class RunningExtrema
+{
+	private RunningExtrema()
+	{
+
+	}
+
+
+	/**
+	 * Find the minimum or maximum of the neighborhood of every pixel of the given image
+	 * The neighborhood is clipped to the image's edges, which is the same as extending the image by samples
+	 * that never win: the largest value for the minimum, the smallest for the maximum
+	 * @param image the original image
+	 * @param processedImage the image to store the results, with the same size as the original image
+	 * @param radiusX the number of columns of the neighborhood on each side of the pixel
+	 * @param radiusY the number of rows of the neighborhood on each side of the pixel
+	 * @param minimum true for the minimum, false for the maximum
+	 */
+	public static void filter(PlanarImage image, PlanarImage processedImage, int radiusX, int radiusY, boolean minimum)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		double identity = minimum ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+
+		// Take the thread's scratch arrays to store a padded line and its running extrema
+		int length = Math.max(width + radiusX * 2, height + radiusY * 2);
+		double[] line = BufferPool.getDoubleScratch(0, length);
+		double[] prefix = BufferPool.getDoubleScratch(1, length);
+		double[] suffix = BufferPool.getDoubleScratch(2, length);
+
+		for(int band = 0; band < image.getBands(); band++)
+		{
+			int[] src = image.getPlane(band);
+			int[] dst = processedImage.getPlane(band);
+
+			// Filter the rows into the processed image
+			for(int y = 0; y < height; y++)
+			{
+				int row = image.getIndex(0, y);
+				for(int x = 0; x < radiusX; x++)
+				{
+					line[x] = identity;
+					line[radiusX + width + x] = identity;
+				}
+				for(int x = 0; x < width; x++)
+				{
+					line[radiusX + x] = src[row + x];
+				}
+
+				filterLine(line, width + radiusX * 2, radiusX * 2 + 1, minimum, prefix, suffix);
+
+				for(int x = 0, index = processedImage.getIndex(0, y); x < width; x++)
+				{
+					dst[index + x] = (int) line[x];
+				}
+			}
+
+			// Filter the columns of the processed image in place
+			for(int x = 0; x < width; x++)
+			{
+				for(int y = 0; y < radiusY; y++)
+				{
+					line[y] = identity;
+					line[radiusY + height + y] = identity;
+				}
+				for(int y = 0; y < height; y++)
+				{
+					line[radiusY + y] = dst[processedImage.getIndex(x, y)];
+				}
+
+				filterLine(line, height + radiusY * 2, radiusY * 2 + 1, minimum, prefix, suffix);
+
+				for(int y = 0; y < height; y++)
+				{
+					dst[processedImage.getIndex(x, y)] = (int) line[y];
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Find the minimum or maximum of the square patch around every pixel of a single-channel map
+	 * @param map the map
+	 * @param processedMap the map to store the results, with the same size as the map
+	 * @param patchRadius the number of pixels of the patch on each side of the pixel
+	 * @param borderMode the way the map is extended beyond its edges
+	 * @param minimum true for the minimum, false for the maximum
+	 */
+	public static void filter(OffHeapImage map, OffHeapImage processedMap, int patchRadius, BorderMode borderMode, boolean minimum)
+	{
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int patchSize = patchRadius * 2 + 1;
+
+		// Pad the map, so that the patch always lies inside the padded map
+		OffHeapImage paddedMap = map.pad(patchRadius, patchRadius, borderMode);
+		int paddedWidth = paddedMap.getWidth();
+		int paddedHeight = paddedMap.getHeight();
+
+		// Take the thread's scratch arrays to store a line and its running extrema
+		int length = Math.max(paddedWidth, paddedHeight);
+		double[] line = BufferPool.getDoubleScratch(0, length);
+		double[] prefix = BufferPool.getDoubleScratch(1, length);
+		double[] suffix = BufferPool.getDoubleScratch(2, length);
+
+		// Filter the rows of the padded map in place, keeping the first width columns
+		for(int y = 0; y < paddedHeight; y++)
+		{
+			int row = paddedMap.getIndex(0, y);
+			for(int x = 0; x < paddedWidth; x++)
+			{
+				line[x] = paddedMap.get(row + x, 0);
+			}
+
+			filterLine(line, paddedWidth, patchSize, minimum, prefix, suffix);
+
+			for(int x = 0; x < width; x++)
+			{
+				paddedMap.set(row + x, 0, line[x]);
+			}
+		}
+
+		// Filter the columns of the padded map into the processed map
+		for(int x = 0; x < width; x++)
+		{
+			for(int y = 0; y < paddedHeight; y++)
+			{
+				line[y] = paddedMap.get(paddedMap.getIndex(x, y), 0);
+			}
+
+			filterLine(line, paddedHeight, patchSize, minimum, prefix, suffix);
+
+			for(int y = 0; y < height; y++)
+			{
+				processedMap.set(processedMap.getIndex(x, y), 0, line[y]);
+			}
+		}
+
+		paddedMap.release();
+	}
+
+
+	/**
+	 * Find the minimum or maximum of every window of a line, in place
+	 * Afterwards line[i] holds the extremum of line[i] to line[i + windowSize - 1], for the first length - windowSize + 1 samples
+	 * @param line the samples of the line
+	 * @param length the number of samples
+	 * @param windowSize the number of samples of a window
+	 * @param minimum true for the minimum, false for the maximum
+	 * @param prefix an array of at least length samples to store the running extrema from the start of every block
+	 * @param suffix an array of at least length samples to store the running extrema from the end of every block
+	 */
+	private static void filterLine(double[] line, int length, int windowSize, boolean minimum, double[] prefix, double[] suffix)
+	{
+		// Running extrema from the start of every block
+		for(int i = 0; i < length; i++)
+		{
+			prefix[i] = i % windowSize == 0 ? line[i] : extremum(prefix[i - 1], line[i], minimum);
+		}
+
+		// Running extrema from the end of every block
+		for(int i = length - 1; i >= 0; i--)
+		{
+			suffix[i] = i % windowSize == windowSize - 1 || i == length - 1 ? line[i] : extremum(suffix[i + 1], line[i], minimum);
+		}
+
+		// A window starting at i covers the end of the block of i and the start of the block of i + windowSize - 1
+		for(int i = 0; i + windowSize - 1 < length; i++)
+		{
+			line[i] = extremum(suffix[i], prefix[i + windowSize - 1], minimum);
+		}
+	}
+
+
+	private static double extremum(double a, double b, boolean minimum)
+	{
+		return minimum ? Math.min(a, b) : Math.max(a, b);
+	}
+}
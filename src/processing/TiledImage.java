@@ -0,0 +1,269 @@
+package processing;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+public class TiledImage
+{
+	public static final int DEFAULT_TILE_SIZE = 256;
+	
+	private ImageStore store;
+	private int tileWidth;
+	private int tileHeight;
+	private BorderMode borderMode;
+	
+	
+	/**
+	 * Class constructor
+	 * The halos of the tiles are clipped at the image's edges
+	 * @param store the storage of the whole image
+	 * @param tileWidth the width of every tile (the tiles in the last column may be narrower)
+	 * @param tileHeight the height of every tile (the tiles in the last row may be shorter)
+	 */
+	public TiledImage(ImageStore store, int tileWidth, int tileHeight)
+	{
+		this(store, tileWidth, tileHeight, null);
+	}
+	
+	
+	/**
+	 * Class constructor
+	 * @param store the storage of the whole image
+	 * @param tileWidth the width of every tile (the tiles in the last column may be narrower)
+	 * @param tileHeight the height of every tile (the tiles in the last row may be shorter)
+	 * @param borderMode the way the halos are filled beyond the image's edges, or null to clip the halos at the image's edges
+	 */
+	public TiledImage(ImageStore store, int tileWidth, int tileHeight, BorderMode borderMode)
+	{
+		if(tileWidth <= 0 || tileHeight <= 0)
+		{
+			throw new IllegalArgumentException("Invalid tile size " + tileWidth + " x " + tileHeight);
+		}
+		
+		this.store = store;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.borderMode = borderMode;
+	}
+	
+	
+	public ImageStore getStore()
+	{
+		return this.store;
+	}
+	
+	
+	public int getNumXTiles()
+	{
+		return (this.store.getWidth() + this.tileWidth - 1) / this.tileWidth;
+	}
+	
+	
+	public int getNumYTiles()
+	{
+		return (this.store.getHeight() + this.tileHeight - 1) / this.tileHeight;
+	}
+	
+	
+	public int getTileCount()
+	{
+		return getNumXTiles() * getNumYTiles();
+	}
+	
+	
+	/**
+	 * Read a tile together with the surrounding halo of pixels a neighborhood operator needs
+	 * Without a border mode the halo is clipped at the image's edges, so the tile pixels never extend outside the image
+	 * With a border mode the halo always has its full size, and its pixels outside the image are filled by the border mode,
+	 * so that an operator padding the tile by the same border mode gives the same result as on the whole image
+	 * The pixels are taken from the buffer pool, the caller may give them back with BufferPool.release once done
+	 * @param index the index of the tile, counted row by row
+	 * @param haloX the number of extra columns read on each side of the tile
+	 * @param haloY the number of extra rows read on each side of the tile
+	 * @return the tile
+	 */
+	public Tile getTile(int index, int haloX, int haloY)
+	{
+		// Find the area of the tile in the image
+		int x = (index % getNumXTiles()) * this.tileWidth;
+		int y = (index / getNumXTiles()) * this.tileHeight;
+		int width = Math.min(this.tileWidth, this.store.getWidth() - x);
+		int height = Math.min(this.tileHeight, this.store.getHeight() - y);
+		
+		if(this.borderMode != null)
+		{
+			// Extend the area by the full halo, filling it beyond the image's edges
+			PlanarImage pixels = BufferPool.acquire(width + haloX * 2, height + haloY * 2, this.store.getBands());
+			this.store.read(pixels, x - haloX, y - haloY, this.borderMode);
+			
+			return new Tile(x, y, width, height, haloX, haloY, pixels);
+		}
+		
+		// Extend the area by the halo, without crossing the image's edges
+		int minX = Math.max(0, x - haloX);
+		int minY = Math.max(0, y - haloY);
+		int maxX = Math.min(this.store.getWidth(), x + width + haloX);
+		int maxY = Math.min(this.store.getHeight(), y + height + haloY);
+		
+		PlanarImage pixels = BufferPool.acquire(maxX - minX, maxY - minY, this.store.getBands());
+		this.store.read(pixels, minX, minY);
+		
+		return new Tile(x, y, width, height, x - minX, y - minY, pixels);
+	}
+	
+	
+	/**
+	 * Perform an action on every tile, processing several tiles in parallel
+	 * At most one tile per worker thread is held in memory at a time
+	 * The pixels of a tile go back to the buffer pool after the action, so the action must not keep them
+	 * @param haloX the number of extra columns read on each side of a tile
+	 * @param haloY the number of extra rows read on each side of a tile
+	 * @param action the action to be performed
+	 */
+	public void forEachTile(int haloX, int haloY, Consumer<Tile> action)
+	{
+		IntStream.range(0, getTileCount()).parallel().forEach(index -> 
+		{
+			Tile tile = getTile(index, haloX, haloY);
+			action.accept(tile);
+			BufferPool.release(tile.getPixels());
+		});
+	}
+	
+	
+	/**
+	 * Process the image tile by tile and store the result in the destination
+	 * The operator receives each tile with its halo and must return an image of the same size
+	 * Only the part of the result that corresponds to the tile itself is stored
+	 * @param destination the storage of the processed image, with the same size as this image
+	 * @param haloX the number of extra columns the operator needs on each side of a pixel
+	 * @param haloY the number of extra rows the operator needs on each side of a pixel
+	 * @param operator the operation to be applied on every tile
+	 */
+	public void process(ImageStore destination, int haloX, int haloY, UnaryOperator<PlanarImage> operator)
+	{
+		forEachTile(haloX, haloY, tile -> tile.write(destination, operator.apply(tile.getPixels())));
+	}
+	
+	
+	/**
+	 * Process the image tile by tile and store the result in the destination
+	 * The operator receives each tile with its halo and a pooled image of the same size to write its result to,
+	 * so that no pixels are allocated per tile once the pool is warm
+	 * Only the part of the result that corresponds to the tile itself is stored
+	 * @param destination the storage of the processed image, with the same size as this image
+	 * @param haloX the number of extra columns the operator needs on each side of a pixel
+	 * @param haloY the number of extra rows the operator needs on each side of a pixel
+	 * @param operator the operation to be applied on every tile, taking the tile's pixels and the image to write to
+	 */
+	public void process(ImageStore destination, int haloX, int haloY, BiConsumer<PlanarImage, PlanarImage> operator)
+	{
+		forEachTile(haloX, haloY, tile -> 
+		{
+			PlanarImage processedPixels = BufferPool.acquireCompatible(tile.getPixels());
+			operator.accept(tile.getPixels(), processedPixels);
+			tile.write(destination, processedPixels);
+			BufferPool.release(processedPixels);
+		});
+	}
+	
+	
+	/**
+	 * Copy a stored image to another storage tile by tile, such as loading a mapped file into a BufferedImage
+	 * @param source the storage of the image to be copied
+	 * @param destination the storage to be written, with the same size as the source
+	 */
+	public static void copy(ImageStore source, ImageStore destination)
+	{
+		new TiledImage(source, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE).process(destination, 0, 0, tile -> tile);
+	}
+	
+	
+	public static class Tile
+	{
+		private int x;
+		private int y;
+		private int width;
+		private int height;
+		private int offsetX;
+		private int offsetY;
+		private PlanarImage pixels;
+		
+		
+		/**
+		 * Class constructor
+		 * @param x the x-coordinate of the tile in the image
+		 * @param y the y-coordinate of the tile in the image
+		 * @param width the width of the tile
+		 * @param height the height of the tile
+		 * @param offsetX the x-coordinate of the tile in its pixels (the width of the left halo)
+		 * @param offsetY the y-coordinate of the tile in its pixels (the height of the top halo)
+		 * @param pixels the pixels of the tile and its halo
+		 */
+		public Tile(int x, int y, int width, int height, int offsetX, int offsetY, PlanarImage pixels)
+		{
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.pixels = pixels;
+		}
+		
+		
+		public int getX()
+		{
+			return this.x;
+		}
+		
+		
+		public int getY()
+		{
+			return this.y;
+		}
+		
+		
+		public int getWidth()
+		{
+			return this.width;
+		}
+		
+		
+		public int getHeight()
+		{
+			return this.height;
+		}
+		
+		
+		public int getOffsetX()
+		{
+			return this.offsetX;
+		}
+		
+		
+		public int getOffsetY()
+		{
+			return this.offsetY;
+		}
+		
+		
+		public PlanarImage getPixels()
+		{
+			return this.pixels;
+		}
+		
+		
+		/**
+		 * Store the part of a processed tile that corresponds to the tile itself, leaving out the halo
+		 * @param destination the storage of the processed image
+		 * @param processedPixels the processed pixels, with the same size as the tile's pixels
+		 */
+		public void write(ImageStore destination, PlanarImage processedPixels)
+		{
+			destination.write(processedPixels, this.offsetX, this.offsetY, this.width, this.height, this.x, this.y);
+		}
+	}
+}